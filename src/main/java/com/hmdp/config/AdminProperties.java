@@ -0,0 +1,26 @@
+package com.hmdp.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * 运维接口权限配置，对应 application.yaml 中的 hmdp.admin
+ *
+ * @className: AdminProperties
+ * @author: sutianyu
+ * @date: 2023-03-06 10:00
+ **/
+@Data
+@Component
+@ConfigurationProperties(prefix = "hmdp.admin")
+public class AdminProperties {
+
+    /**
+     * 允许访问 /admin/** 的用户id，为空时所有用户都不能访问
+     */
+    private Set<Long> userIds = new LinkedHashSet<>();
+}
@@ -0,0 +1,282 @@
+package com.hmdp.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 缓存相关配置，对应 application.yaml 中的 hmdp.cache
+ *
+ * @className: CacheProperties
+ * @author: sutianyu
+ * @date: 2023-02-06 11:05
+ **/
+@Data
+@Component
+@ConfigurationProperties(prefix = "hmdp.cache")
+public class CacheProperties {
+
+    /**
+     * 进程内一级缓存
+     */
+    private Local local = new Local();
+
+    /**
+     * 布隆过滤器（防缓存穿透）
+     */
+    private Bloom bloom = new Bloom();
+
+    /**
+     * 概率提前过期（XFetch）
+     */
+    private Xfetch xfetch = new Xfetch();
+
+    /**
+     * TTL随机化，防止缓存雪崩
+     */
+    private Jitter jitter = new Jitter();
+
+    /**
+     * 热点key探测
+     */
+    private HotKey hotKey = new HotKey();
+
+    /**
+     * 缓存重建线程池
+     */
+    private Rebuild rebuild = new Rebuild();
+
+    /**
+     * 缓存数据分片
+     */
+    private Sharding sharding = new Sharding();
+
+    /**
+     * 数据库异常时返回兜底数据，并对数据库查询熔断
+     */
+    private StaleIfError staleIfError = new StaleIfError();
+
+    /**
+     * 空值缓存（不存在的id）存储方式
+     */
+    private Negative negative = new Negative();
+
+    /**
+     * 异步查询
+     */
+    private Async async = new Async();
+
+    /**
+     * 缓存值编码格式：json / binary
+     */
+    private CodecType codec = CodecType.JSON;
+
+    /**
+     * 商铺详情是否直接透传缓存中的 JSON 字节，跳过反序列化与再序列化
+     * 开启后缓存中写入带标记的透传格式，旧版本实例无法读取，必须在全部实例升级后开启
+     */
+    private boolean rawResponse = false;
+
+    @Data
+    public static class Local {
+        /**
+         * 是否启用一级缓存
+         */
+        private boolean enabled = false;
+        /**
+         * 最大条目数
+         */
+        private int maximumSize = 1000;
+        /**
+         * 条目存活时间（秒），兜底跨实例失效消息丢失的情况
+         */
+        private long ttlSeconds = 60;
+    }
+
+    @Data
+    public static class Bloom {
+        /**
+         * 是否启用布隆过滤器
+         */
+        private boolean enabled = false;
+        /**
+         * 预计数据量
+         */
+        private long expectedInsertions = 100000;
+        /**
+         * 期望误判率
+         */
+        private double fpp = 0.01;
+    }
+
+    @Data
+    public static class Xfetch {
+        /**
+         * 提前刷新的激进程度，大于1更早刷新，小于1更晚刷新
+         */
+        private double beta = 1.0;
+    }
+
+    @Data
+    public static class Jitter {
+        /**
+         * none：不随机；uniform：固定区间随机；proportional：按TTL比例随机
+         */
+        private JitterMode mode = JitterMode.NONE;
+        /**
+         * uniform 模式下追加的最大随机秒数
+         */
+        private long maxSeconds = 300;
+        /**
+         * proportional 模式下追加的最大比例
+         */
+        private double ratio = 0.1;
+    }
+
+    @Data
+    public static class HotKey {
+        /**
+         * 是否启用热点key探测，晋升后写入逻辑过期格式，旧版本实例无法读取，必须在全部实例升级后开启
+         */
+        private boolean enabled = false;
+        /**
+         * 晋升阈值：估算访问频率达到该值的key视为热点
+         */
+        private int threshold = 50;
+        /**
+         * 同时存在的热点key上限
+         */
+        private int maxKeys = 100;
+        /**
+         * 频率统计的key容量
+         */
+        private int expectedKeys = 10000;
+        /**
+         * 衰减周期（毫秒）：每个周期频率减半，并降级频率低于阈值一半的热点key
+         */
+        private long decayIntervalMs = 10000;
+        /**
+         * 热点数据在本地固定缓存后，重新检查Redis的间隔（秒）
+         */
+        private long pinSeconds = 5;
+        /**
+         * 降级后为逻辑过期数据补设的TTL（秒）
+         */
+        private long demoteTtlSeconds = 1800;
+    }
+
+    @Data
+    public static class Rebuild {
+        /**
+         * 重建线程数
+         */
+        private int threads = 10;
+        /**
+         * 排队任务上限
+         */
+        private int queueCapacity = 1000;
+        /**
+         * 队列已满时的处理方式：stale 放弃重建继续返回旧数据；caller_runs 由请求线程同步重建
+         */
+        private RejectPolicy rejectPolicy = RejectPolicy.STALE;
+    }
+
+    @Data
+    public static class Sharding {
+        /**
+         * 是否启用分片，未启用时缓存数据使用 spring.redis 配置的节点
+         */
+        private boolean enabled = false;
+        /**
+         * 每个节点的虚拟节点数
+         */
+        private int virtualNodes = 160;
+        /**
+         * 分片节点
+         */
+        private List<Node> nodes = new ArrayList<>();
+        /**
+         * 扩容前的节点名称列表，非空时开启迁移模式（新节点未命中时回读旧节点），迁移完成后清空
+         */
+        private List<String> previousNodes = new ArrayList<>();
+    }
+
+    @Data
+    public static class Node {
+        /**
+         * 节点名称，决定在哈希环上的位置，更换地址时保持不变即可不迁移数据
+         */
+        private String name;
+        private String host = "localhost";
+        private int port = 6379;
+        private String password;
+        private int database = 0;
+    }
+
+    @Data
+    public static class StaleIfError {
+        /**
+         * 是否启用
+         */
+        private boolean enabled = false;
+        /**
+         * 兜底副本的存活时间（秒），远大于正常TTL
+         */
+        private long graceSeconds = 86400;
+        /**
+         * 连续失败多少次后熔断
+         */
+        private int failureThreshold = 5;
+        /**
+         * 熔断后多久开始探测（毫秒）
+         */
+        private long openMillis = 10000;
+        /**
+         * 超过该耗时的查询按失败计（毫秒），0表示不统计慢查询
+         */
+        private long slowCallMillis = 2000;
+    }
+
+    @Data
+    public static class Negative {
+        /**
+         * 是否使用分桶集合存储不存在的id，未启用时每个id写一个空字符串key
+         */
+        private boolean enabled = false;
+        /**
+         * 时间桶长度（秒），id在集合中存活 1~2 个桶长
+         */
+        private long bucketSeconds = 60;
+        /**
+         * 每个时间桶拆分的集合数，控制单个集合的大小
+         */
+        private int stripes = 16;
+    }
+
+    @Data
+    public static class Async {
+        /**
+         * 异步查询中执行数据库查询的线程数
+         */
+        private int dbThreads = 20;
+        /**
+         * 排队任务上限，超出时查询直接失败
+         */
+        private int queueCapacity = 500;
+    }
+
+    public enum RejectPolicy {
+        STALE, CALLER_RUNS
+    }
+
+    public enum JitterMode {
+        NONE, UNIFORM, PROPORTIONAL
+    }
+
+    public enum CodecType {
+        JSON, BINARY
+    }
+}
@@ -0,0 +1,37 @@
+package com.hmdp.config;
+
+import com.hmdp.utils.CacheStaleHolder;
+import org.springframework.core.MethodParameter;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.http.server.ServerHttpResponse;
+import org.springframework.web.bind.annotation.RestControllerAdvice;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyAdvice;
+
+/**
+ * 返回了过期兜底数据的请求，在响应头中标记 X-Cache-Stale: true
+ *
+ * @className: CacheStaleAdvice
+ * @author: sutianyu
+ * @date: 2023-02-23 10:45
+ **/
+@RestControllerAdvice
+public class CacheStaleAdvice implements ResponseBodyAdvice<Object> {
+
+    @Override
+    public boolean supports(MethodParameter returnType, Class<? extends HttpMessageConverter<?>> converterType) {
+        return true;
+    }
+
+    @Override
+    public Object beforeBodyWrite(Object body, MethodParameter returnType, MediaType selectedContentType,
+                                  Class<? extends HttpMessageConverter<?>> selectedConverterType,
+                                  ServerHttpRequest request, ServerHttpResponse response) {
+        if (CacheStaleHolder.isStale()) {
+            response.getHeaders().set(CacheStaleHolder.STALE_HEADER, "true");
+        }
+        CacheStaleHolder.remove();
+        return body;
+    }
+}
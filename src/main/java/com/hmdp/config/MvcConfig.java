@@ -1,6 +1,9 @@
 package com.hmdp.config;
 
+import com.hmdp.utils.AdminInterceptor;
 import com.hmdp.utils.LoginInterceptor;
+import com.hmdp.utils.RateLimitInterceptor;
+import com.hmdp.utils.RateLimiter;
 import com.hmdp.utils.RefreshTokenInterceptor;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Configuration;
@@ -21,6 +24,14 @@ public class MvcConfig implements WebMvcConfigurer {
     @Autowired
     private StringRedisTemplate stringRedisTemplate;
 
+    @Autowired
+    private RateLimiter rateLimiter;
+
+    @Autowired
+    private RateLimitProperties rateLimitProperties;
+
+    @Autowired
+    private AdminProperties adminProperties;
 
     @Override
     public void addInterceptors(InterceptorRegistry registry) {
@@ -34,7 +45,11 @@ public class MvcConfig implements WebMvcConfigurer {
                         "/blog/hot",
                         "/user/code",
                         "/user/login"
-                ).order(1);
+                ).order(2);
+        // 运维接口只允许配置的管理员访问
+        registry.addInterceptor(new AdminInterceptor(adminProperties)).addPathPatterns("/admin/**").order(3);
+        // 限流拦截器，在刷新令牌之后执行（按用户限流需要登录用户），超过限制的请求不再进入后续拦截器
+        registry.addInterceptor(new RateLimitInterceptor(rateLimiter, rateLimitProperties)).order(1);
         //刷新令牌拦截器，设置order=0 使此拦截器第一个执行
         registry.addInterceptor(new RefreshTokenInterceptor(stringRedisTemplate)).order(0);
     }
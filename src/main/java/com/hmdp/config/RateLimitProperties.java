@@ -0,0 +1,64 @@
+package com.hmdp.config;
+
+import com.hmdp.utils.RateLimit;
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 接口限流配置，对应 application.yaml 中的 hmdp.rate-limit
+ *
+ * @className: RateLimitProperties
+ * @author: sutianyu
+ * @date: 2023-03-02 09:40
+ **/
+@Data
+@Component
+@ConfigurationProperties(prefix = "hmdp.rate-limit")
+public class RateLimitProperties {
+
+    /**
+     * 是否启用
+     */
+    private boolean enabled = true;
+
+    /**
+     * 本地令牌桶预过滤：本实例内已经超过限制的请求不再访问Redis
+     */
+    private boolean localPrefilter = true;
+
+    /**
+     * 本地令牌桶最多保存的key数量
+     */
+    private int localMaxKeys = 100000;
+
+    /**
+     * 部署的实例数：按接口整体限流的规则在各实例本地执行，每个实例放行 permits / instances
+     */
+    private int instances = 1;
+
+    /**
+     * 是否信任 X-Forwarded-For 请求头取客户端IP，只有部署在可信的反向代理之后才能开启
+     */
+    private boolean trustForwardedFor = false;
+
+    /**
+     * 覆盖注解中的限流参数，key 为 {name}-{dimension}，如 seckill-user
+     */
+    private Map<String, Rule> rules = new LinkedHashMap<>();
+
+    @Data
+    public static class Rule {
+        /**
+         * 为false时不限流
+         */
+        private boolean enabled = true;
+        private RateLimit.Algorithm algorithm;
+        private Long permits;
+        private Long periodMillis;
+        private Long burst;
+    }
+}
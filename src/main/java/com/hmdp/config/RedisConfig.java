@@ -0,0 +1,50 @@
+package com.hmdp.config;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.data.redis.serializer.RedisSerializer;
+
+/**
+ * Redis 相关配置
+ *
+ * @className: RedisConfig
+ * @author: sutianyu
+ * @date: 2023-02-06 11:10
+ **/
+@Configuration
+public class RedisConfig {
+
+    /**
+     * Redis 发布订阅监听容器，各组件在初始化时自行注册所需的频道
+     */
+    @Bean
+    public RedisMessageListenerContainer redisMessageListenerContainer(RedisConnectionFactory connectionFactory) {
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(connectionFactory);
+        return container;
+    }
+
+    /**
+     * 缓存数据模板：key为字符串，value为原始字节，编解码由 CacheCodecRegistry 负责
+     */
+    @Bean
+    public RedisTemplate<String, byte[]> cacheRedisTemplate(RedisConnectionFactory connectionFactory) {
+        return createCacheTemplate(connectionFactory);
+    }
+
+    /**
+     * 创建缓存数据模板，缓存分片的各个节点也使用同样的序列化方式
+     */
+    public static RedisTemplate<String, byte[]> createCacheTemplate(RedisConnectionFactory connectionFactory) {
+        RedisTemplate<String, byte[]> template = new RedisTemplate<>();
+        template.setConnectionFactory(connectionFactory);
+        template.setKeySerializer(RedisSerializer.string());
+        template.setValueSerializer(RedisSerializer.byteArray());
+        template.setHashKeySerializer(RedisSerializer.string());
+        template.setHashValueSerializer(RedisSerializer.byteArray());
+        return template;
+    }
+}
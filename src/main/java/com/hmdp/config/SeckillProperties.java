@@ -0,0 +1,208 @@
+package com.hmdp.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * 秒杀相关配置，对应 application.yaml 中的 hmdp.seckill
+ *
+ * @className: SeckillProperties
+ * @author: sutianyu
+ * @date: 2023-02-13 09:40
+ **/
+@Data
+@Component
+@ConfigurationProperties(prefix = "hmdp.seckill")
+public class SeckillProperties {
+
+    /**
+     * 下单资格判断方式：db 查库加锁判断；redis 由Lua脚本在Redis中原子判断并扣减库存
+     */
+    private Mode mode = Mode.DB;
+
+    /**
+     * 订单消息队列（Redis Stream），仅 redis 模式下生效
+     */
+    private OrderStream orderStream = new OrderStream();
+
+    /**
+     * 订单批量写入，仅启用订单消息队列时生效
+     */
+    private BatchWriter batchWriter = new BatchWriter();
+
+    /**
+     * 分段库存，仅 redis 模式下生效
+     */
+    private Segment segment = new Segment();
+
+    /**
+     * 本地闸门：售罄、未开始、已结束的秒杀券在本地直接拒绝
+     */
+    private Gate gate = new Gate();
+
+    /**
+     * 开售日历：秒杀券元数据缓存与开售前预热
+     */
+    private Calendar calendar = new Calendar();
+
+    /**
+     * 排队：超大库存的秒杀券先排队，按批放行后凭购买凭证下单
+     */
+    private WaitingRoom waitingRoom = new WaitingRoom();
+
+    @Data
+    public static class OrderStream {
+        /**
+         * 是否启用：启用后获得资格即返回订单id，订单由后台消费者异步写入数据库
+         */
+        private boolean enabled = false;
+        /**
+         * 消息队列key
+         */
+        private String key = "stream.orders";
+        /**
+         * 消费者组
+         */
+        private String group = "g1";
+        /**
+         * 消费线程数
+         */
+        private int workers = 1;
+        /**
+         * 每次读取的消息数
+         */
+        private int batchSize = 10;
+        /**
+         * 没有消息时阻塞等待的时间（毫秒）
+         */
+        private long blockMillis = 2000;
+        /**
+         * 消息投递后超过该时间未确认，视为消费者宕机或处理失败，由其它消费者认领重试（毫秒）
+         */
+        private long claimIdleMillis = 30000;
+        /**
+         * 最大投递次数，超过后转入死信队列等待人工处理
+         */
+        private int maxDeliveries = 5;
+        /**
+         * 死信队列key
+         */
+        private String deadLetterKey = "stream.orders.dlq";
+    }
+
+    @Data
+    public static class Segment {
+        /**
+         * 是否启用：库存不少于 minStock 的秒杀券在预热时拆分为多个分段
+         */
+        private boolean enabled = false;
+        /**
+         * 分段数
+         */
+        private int segments = 8;
+        /**
+         * 启用分段的最小库存
+         */
+        private int minStock = 1000;
+        /**
+         * 分段售空后本地标记的有效时间（毫秒），期间跨分段扣减时最后才尝试该分段
+         */
+        private long emptyHintMillis = 1000;
+    }
+
+    @Data
+    public static class Gate {
+        /**
+         * 是否启用
+         */
+        private boolean enabled = false;
+        /**
+         * 售罄标记的有效期（毫秒），到期后放行请求重新判断，兜底丢失的开放广播
+         */
+        private long soldOutTtlMillis = 30000;
+        /**
+         * 不知道开始时间时，未开始标记的有效期（毫秒）
+         */
+        private long notStartedRecheckMillis = 1000;
+        /**
+         * 已结束标记在结束时间之后保留的时间（毫秒），到期后清理
+         */
+        private long endedRetainMillis = 3600000;
+    }
+
+    @Data
+    public static class Calendar {
+        /**
+         * 在开始前多久预热库存（毫秒）
+         */
+        private long aheadMillis = 60000;
+        /**
+         * 只安排该时间范围内开始的秒杀券（毫秒），更远的由之后的扫描安排
+         */
+        private long horizonMillis = 86400000;
+        /**
+         * 已结束的秒杀券元数据在本地保留的时间（毫秒）
+         */
+        private long retainEndedMillis = 3600000;
+    }
+
+    @Data
+    public static class WaitingRoom {
+        /**
+         * 是否启用
+         */
+        private boolean enabled = false;
+        /**
+         * 库存不少于该值的秒杀券需要排队
+         */
+        private int minStock = 10000;
+        /**
+         * 放行间隔（毫秒），所有实例合计每个间隔最多放行一批
+         */
+        private long admitIntervalMillis = 1000;
+        /**
+         * 每批放行的人数
+         */
+        private int batchSize = 500;
+        /**
+         * 购买凭证有效期（毫秒），过期未下单需要重新排队
+         */
+        private long tokenTtlMillis = 60000;
+        /**
+         * 购买凭证签名密钥，所有实例必须一致；启用排队时必须配置，为空时启动失败
+         */
+        private String tokenSecret;
+
+        /**
+         * 秒杀券是否需要排队
+         */
+        public boolean appliesTo(Integer stock) {
+            return enabled && stock != null && stock >= minStock;
+        }
+    }
+
+    @Data
+    public static class BatchWriter {
+        /**
+         * 是否启用：启用后订单先进入内存队列，攒批后在一个事务中写入
+         */
+        private boolean enabled = false;
+        /**
+         * 每批最多写入的订单数
+         */
+        private int maxBatchSize = 200;
+        /**
+         * 收到一批中第一个订单后最多等待的时间（毫秒），达到批量或超时即写入
+         */
+        private long maxDelayMillis = 20;
+        /**
+         * 内存队列容量，队列已满时消息留在待确认列表中稍后重试
+         */
+        private int queueCapacity = 10000;
+    }
+
+    public enum Mode {
+        DB, REDIS
+    }
+}
@@ -0,0 +1,159 @@
+package com.hmdp.controller;
+
+import com.hmdp.dto.Result;
+import com.hmdp.utils.BloomFilterManager;
+import com.hmdp.utils.CacheClient;
+import com.hmdp.utils.CacheMetrics;
+import com.hmdp.utils.CacheRebuildExecutor;
+import com.hmdp.utils.CacheShardRouter;
+import com.hmdp.utils.ReferenceDataManager;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import javax.annotation.Resource;
+
+/**
+ * 缓存运维接口
+ *
+ * @className: CacheAdminController
+ * @author: sutianyu
+ * @date: 2023-02-07 11:20
+ **/
+@RestController
+@RequestMapping("/admin/cache")
+public class CacheAdminController {
+
+    /**
+     * 过期时间分布最多的时间段个数
+     */
+    private static final int MAX_EXPIRY_BUCKETS = 1440;
+
+    /**
+     * 过期时间分布最多采样的key数量
+     */
+    private static final int MAX_EXPIRY_KEYS = 100000;
+
+    @Resource
+    private BloomFilterManager bloomFilterManager;
+
+    @Resource
+    private CacheClient cacheClient;
+
+    @Resource
+    private CacheRebuildExecutor cacheRebuildExecutor;
+
+    @Resource
+    private CacheMetrics cacheMetrics;
+
+    @Resource
+    private CacheShardRouter cacheShardRouter;
+
+    @Resource
+    private ReferenceDataManager referenceDataManager;
+
+    /**
+     * 布隆过滤器状态：拦截次数、误判次数等
+     */
+    @GetMapping("/bloom")
+    public Result bloomStats() {
+        return Result.ok(bloomFilterManager.stats());
+    }
+
+    /**
+     * 过期时间分布：某个前缀下的key在未来各时间段内的过期数量
+     * @param prefix 缓存key前缀，例如 cache:shop:
+     * @param bucketSeconds 每个时间段的秒数
+     * @param buckets 时间段个数，最多 1440 个
+     * @param maxKeys 最多采样的key数量，最多 100000 个
+     */
+    @GetMapping("/expiry")
+    public Result expiryHistogram(
+            @RequestParam("prefix") String prefix,
+            @RequestParam(value = "bucketSeconds", defaultValue = "60") Long bucketSeconds,
+            @RequestParam(value = "buckets", defaultValue = "60") Integer buckets,
+            @RequestParam(value = "maxKeys", defaultValue = "10000") Integer maxKeys
+    ) {
+        if (bucketSeconds <= 0) {
+            return Result.fail("bucketSeconds必须大于0");
+        }
+        if (buckets <= 0 || buckets > MAX_EXPIRY_BUCKETS) {
+            return Result.fail("buckets必须在1到" + MAX_EXPIRY_BUCKETS + "之间");
+        }
+        if (maxKeys <= 0 || maxKeys > MAX_EXPIRY_KEYS) {
+            return Result.fail("maxKeys必须在1到" + MAX_EXPIRY_KEYS + "之间");
+        }
+        return Result.ok(cacheClient.expiryHistogram(prefix, bucketSeconds, buckets, maxKeys));
+    }
+
+    /**
+     * 当前热点key，按访问频率从高到低排列
+     */
+    @GetMapping("/hot-keys")
+    public Result hotKeys() {
+        return Result.ok(cacheClient.hotKeys());
+    }
+
+    /**
+     * 缓存重建线程池状态：排队数、去重/拒绝/失败次数、等待与执行耗时
+     */
+    @GetMapping("/rebuild")
+    public Result rebuildStats() {
+        return Result.ok(cacheRebuildExecutor.stats());
+    }
+
+    /**
+     * 各缓存前缀的命中、未命中、空值命中、旧数据返回、抢锁失败次数，以及查库与编解码耗时分布
+     */
+    @GetMapping("/metrics")
+    public Result metrics() {
+        return Result.ok(cacheMetrics.snapshot());
+    }
+
+    /**
+     * 清空缓存指标，调整配置后重新观察
+     */
+    @DeleteMapping("/metrics")
+    public Result resetMetrics() {
+        cacheMetrics.reset();
+        return Result.ok();
+    }
+
+    /**
+     * 缓存分片状态：各节点key数量、是否处于迁移模式、已迁移的key数量
+     */
+    @GetMapping("/shards")
+    public Result shardStats() {
+        return Result.ok(cacheShardRouter.stats());
+    }
+
+    /**
+     * 数据库熔断器状态
+     */
+    @GetMapping("/breaker")
+    public Result breakerStats() {
+        return Result.ok(cacheClient.breakerStats());
+    }
+
+    /**
+     * 参考数据快照状态：版本号、条目数、加载时间
+     */
+    @GetMapping("/reference")
+    public Result referenceStats() {
+        return Result.ok(referenceDataManager.stats());
+    }
+
+    /**
+     * 参考数据变更后从数据库重建，并通知所有实例替换快照
+     * @param name 参考数据名称，例如 typeList
+     */
+    @PostMapping("/reference/{name}/refresh")
+    public Result refreshReference(@PathVariable("name") String name) {
+        referenceDataManager.refresh(name);
+        return Result.ok();
+    }
+}
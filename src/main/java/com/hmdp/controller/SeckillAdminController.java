@@ -0,0 +1,126 @@
+package com.hmdp.controller;
+
+import com.hmdp.dto.Result;
+import com.hmdp.utils.RateLimiter;
+import com.hmdp.utils.SeckillAdmission;
+import com.hmdp.utils.SeckillGate;
+import com.hmdp.utils.SeckillOrderBatchWriter;
+import com.hmdp.utils.SeckillOrderConsumer;
+import com.hmdp.utils.SeckillVoucherCache;
+import com.hmdp.utils.SeckillWaitingRoom;
+import com.hmdp.utils.SegmentedStock;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import javax.annotation.Resource;
+
+/**
+ * 秒杀运维接口
+ *
+ * @className: SeckillAdminController
+ * @author: sutianyu
+ * @date: 2023-02-24 11:20
+ **/
+@RestController
+@RequestMapping("/admin/seckill")
+public class SeckillAdminController {
+
+    @Resource
+    private SeckillOrderConsumer seckillOrderConsumer;
+
+    @Resource
+    private SeckillOrderBatchWriter seckillOrderBatchWriter;
+
+    @Resource
+    private SeckillAdmission seckillAdmission;
+
+    @Resource
+    private SegmentedStock segmentedStock;
+
+    @Resource
+    private SeckillGate seckillGate;
+
+    @Resource
+    private SeckillVoucherCache seckillVoucherCache;
+
+    @Resource
+    private RateLimiter rateLimiter;
+
+    @Resource
+    private SeckillWaitingRoom seckillWaitingRoom;
+
+    /**
+     * 订单消息队列状态：积压与待确认数量、最早消息的等待时间、处理速度、重试与死信次数
+     */
+    @GetMapping("/stream")
+    public Result streamStats() {
+        return Result.ok(seckillOrderConsumer.stats());
+    }
+
+    /**
+     * 订单批量写入状态：排队数、批次数、平均批量、写入速度、提交耗时分布
+     */
+    @GetMapping("/writer")
+    public Result writerStats() {
+        return Result.ok(seckillOrderBatchWriter.stats());
+    }
+
+    /**
+     * Redis中的剩余库存，分段库存为各分段之和
+     * @param voucherId 秒杀券id
+     */
+    @GetMapping("/stock/{voucherId}")
+    public Result stock(@PathVariable("voucherId") Long voucherId) {
+        return Result.ok(seckillAdmission.stock(voucherId));
+    }
+
+    /**
+     * 分段库存状态：进行中的秒杀券、跨分段扣减次数、重新分配次数与挪动的库存数
+     */
+    @GetMapping("/segments")
+    public Result segmentStats() {
+        return Result.ok(segmentedStock.stats());
+    }
+
+    /**
+     * 本地闸门状态：被拦截的秒杀券及原因、拦截次数
+     */
+    @GetMapping("/gate")
+    public Result gateStats() {
+        return Result.ok(seckillGate.stats());
+    }
+
+    /**
+     * 开售日历状态：本地缓存的秒杀券数量、等待执行的预热任务数、已预热次数
+     */
+    @GetMapping("/calendar")
+    public Result calendarStats() {
+        return Result.ok(seckillVoucherCache.stats());
+    }
+
+    /**
+     * 接口限流状态：各规则的放行、本地拒绝、Redis拒绝次数
+     */
+    @GetMapping("/rate-limit")
+    public Result rateLimitStats() {
+        return Result.ok(rateLimiter.stats());
+    }
+
+    /**
+     * 排队状态：入队、放行人数与凭证校验失败次数
+     */
+    @GetMapping("/waiting-room")
+    public Result waitingRoomStats() {
+        return Result.ok(seckillWaitingRoom.stats());
+    }
+
+    /**
+     * 单个秒杀券的排队状态：队列长度、持有凭证人数、累计放行人数
+     */
+    @GetMapping("/waiting-room/{voucherId}")
+    public Result waitingRoomStats(@PathVariable("voucherId") Long voucherId) {
+        return Result.ok(seckillWaitingRoom.stats(voucherId));
+    }
+}
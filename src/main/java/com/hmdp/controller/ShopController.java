@@ -3,13 +3,20 @@ package com.hmdp.controller;
 
 import cn.hutool.core.util.StrUtil;
 import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
+import com.hmdp.config.CacheProperties;
 import com.hmdp.dto.Result;
 import com.hmdp.entity.Shop;
 import com.hmdp.service.IShopService;
+import com.hmdp.utils.RawResultWriter;
 import com.hmdp.utils.SystemConstants;
+import com.hmdp.utils.codec.RawJson;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
 import javax.annotation.Resource;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * <p>
@@ -26,14 +33,62 @@ public class ShopController {
     @Resource
     public IShopService shopService;
 
+    @Resource
+    private CacheProperties cacheProperties;
+
     /**
      * 根据id查询商铺信息
+     * 透传模式下命中缓存时直接把缓存中的JSON作为响应体，不经过反序列化与再序列化
      * @param id 商铺id
      * @return 商铺详情数据
      */
     @GetMapping("/{id}")
-    public Result queryShopById(@PathVariable("id") Long id) {
-        return shopService.queryShopById(id);
+    public ResponseEntity<?> queryShopById(@PathVariable("id") Long id) {
+        if (!cacheProperties.isRawResponse()) {
+            return ResponseEntity.ok(shopService.queryShopById(id));
+        }
+        RawJson shop = shopService.queryShopRawById(id);
+        if (shop == null) {
+            return ResponseEntity.ok(Result.fail("商户不存在！"));
+        }
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).body(RawResultWriter.ok(shop));
+    }
+
+    /**
+     * 根据id异步查询商铺信息，请求线程在redis与数据库查询期间被释放
+     * @param id 商铺id
+     * @return 商铺详情数据
+     */
+    @GetMapping("/async/{id}")
+    public CompletableFuture<Result> queryShopByIdAsync(@PathVariable("id") Long id) {
+        return shopService.queryShopByIdAsync(id);
+    }
+
+    /**
+     * 根据id批量查询商铺信息
+     * @param ids 商铺id列表，逗号分隔
+     * @return 商铺详情列表，不存在的id不返回
+     */
+    @GetMapping("/batch")
+    public Result queryShopByIds(@RequestParam("ids") List<Long> ids) {
+        if (ids.size() > SystemConstants.MAX_BATCH_SIZE) {
+            return Result.fail("单次最多查询" + SystemConstants.MAX_BATCH_SIZE + "个商铺");
+        }
+        return shopService.queryShopByIds(ids);
+    }
+
+    /**
+     * 根据id异步批量查询商铺信息
+     * @param ids 商铺id列表，逗号分隔
+     * @return 商铺详情列表，不存在的id不返回
+     */
+    @GetMapping("/batch/async")
+    public CompletableFuture<Result> queryShopByIdsAsync(@RequestParam("ids") List<Long> ids) {
+        if (ids.size() > SystemConstants.MAX_BATCH_SIZE) {
+            return CompletableFuture.completedFuture(
+                    Result.fail("单次最多查询" + SystemConstants.MAX_BATCH_SIZE + "个商铺"));
+        }
+        return shopService.queryShopByIdsAsync(ids);
     }
 
     /**
@@ -43,10 +98,8 @@ public class ShopController {
      */
     @PostMapping
     public Result saveShop(@RequestBody Shop shop) {
-        // 写入数据库
-        shopService.save(shop);
-        // 返回店铺id
-        return Result.ok(shop.getId());
+        // 写入数据库，并加入布隆过滤器
+        return shopService.saveShop(shop);
     }
 
     /**
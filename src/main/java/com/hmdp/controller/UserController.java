@@ -7,6 +7,7 @@ import com.hmdp.dto.UserDTO;
 import com.hmdp.entity.UserInfo;
 import com.hmdp.service.IUserInfoService;
 import com.hmdp.service.IUserService;
+import com.hmdp.utils.RateLimit;
 import com.hmdp.utils.UserHolder;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.web.bind.annotation.*;
@@ -36,6 +37,8 @@ public class UserController {
     /**
      * 发送手机验证码
      */
+    @RateLimit(name = "sms-code", dimension = RateLimit.Dimension.IP,
+            algorithm = RateLimit.Algorithm.SLIDING_WINDOW, permits = 5, periodMillis = 60000)
     @PostMapping("code")
     public Result sendCode(@RequestParam("phone") String phone, HttpSession session) {
         //发送短信验证码并保存验证码
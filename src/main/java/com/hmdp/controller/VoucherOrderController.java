@@ -5,9 +5,14 @@ import com.hmdp.dto.Result;
 import com.hmdp.service.IVoucherOrderService;
 import com.hmdp.service.IVoucherService;
 import com.hmdp.service.impl.VoucherServiceImpl;
+import com.hmdp.utils.RateLimit;
+import com.hmdp.utils.SeckillWaitingRoom;
+import com.hmdp.utils.UserHolder;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 
@@ -25,9 +30,39 @@ public class VoucherOrderController {
     
     @Autowired
     IVoucherOrderService voucherOrderService;
+
+    @Autowired
+    SeckillWaitingRoom seckillWaitingRoom;
     
+    @RateLimit(name = "seckill", dimension = RateLimit.Dimension.USER,
+            algorithm = RateLimit.Algorithm.SLIDING_WINDOW, permits = 5, periodMillis = 1000)
+    @RateLimit(name = "seckill", dimension = RateLimit.Dimension.IP, permits = 20, periodMillis = 1000, burst = 40)
+    @RateLimit(name = "seckill", dimension = RateLimit.Dimension.RESOURCE, permits = 5000, periodMillis = 1000, burst = 10000)
     @PostMapping("seckill/{id}")
-    public Result seckillVoucher(@PathVariable("id") Long voucherId) {
-        return voucherOrderService.seckillVoucher(voucherId);
+    public Result seckillVoucher(@PathVariable("id") Long voucherId,
+                                 @RequestHeader(value = "X-Seckill-Token", required = false) String passToken) {
+        return voucherOrderService.seckillVoucher(voucherId, passToken);
+    }
+
+    /**
+     * 加入排队，返回排队位置；已放行时返回购买凭证
+     */
+    @RateLimit(name = "seckill-queue", dimension = RateLimit.Dimension.USER, permits = 1, periodMillis = 1000, burst = 3)
+    @PostMapping("seckill/{id}/queue")
+    public Result enqueue(@PathVariable("id") Long voucherId) {
+        SeckillWaitingRoom.Ticket ticket = seckillWaitingRoom.enqueue(voucherId, UserHolder.getUser().getId());
+        if (ticket.getStatus() == SeckillWaitingRoom.Status.NONE) {
+            return Result.fail("该秒杀券无需排队");
+        }
+        return Result.ok(ticket);
+    }
+
+    /**
+     * 轮询排队状态：排队中返回位置与预计等待时间，已放行返回购买凭证
+     */
+    @RateLimit(name = "seckill-queue-poll", dimension = RateLimit.Dimension.USER, permits = 1, periodMillis = 1000, burst = 3)
+    @GetMapping("seckill/{id}/queue")
+    public Result queuePosition(@PathVariable("id") Long voucherId) {
+        return Result.ok(seckillWaitingRoom.poll(voucherId, UserHolder.getUser().getId()));
     }
 }
@@ -2,8 +2,12 @@ package com.hmdp.service;
 
 import com.hmdp.dto.Result;
 import com.hmdp.entity.Shop;
+import com.hmdp.utils.codec.RawJson;
 import com.baomidou.mybatisplus.extension.service.IService;
 
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
 /**
  * <p>
  *  服务类
@@ -17,6 +21,21 @@ public interface IShopService extends IService<Shop> {
     //根据id查询商铺信息
     Result queryShopById(Long id);
 
+    //根据id查询商铺信息，返回缓存中的响应格式JSON，不存在时返回null
+    RawJson queryShopRawById(Long id);
+
+    //根据id异步查询商铺信息，等待redis与数据库期间不占用请求线程
+    CompletableFuture<Result> queryShopByIdAsync(Long id);
+
+    //根据id批量查询商铺信息
+    Result queryShopByIds(List<Long> ids);
+
+    //根据id异步批量查询商铺信息
+    CompletableFuture<Result> queryShopByIdsAsync(List<Long> ids);
+
+    //新增商铺信息
+    Result saveShop(Shop shop);
+
     //更新商铺信息
     Result update(Shop shop);
 }
@@ -5,6 +5,8 @@ import com.hmdp.entity.VoucherOrder;
 import com.baomidou.mybatisplus.extension.service.IService;
 import org.springframework.web.bind.annotation.PathVariable;
 
+import java.util.List;
+
 /**
  * <p>
  *  服务类
@@ -17,5 +19,17 @@ public interface IVoucherOrderService extends IService<VoucherOrder> {
 
     Result seckillVoucher(Long voucherId);
 
+    //需要排队的秒杀券，下单时校验排队放行后获得的购买凭证
+    Result seckillVoucher(Long voucherId, String passToken);
+
     Result createVoucherOrder(Long voucherId);
+
+    //为已在Redis中获得购买资格的用户扣减数据库库存并创建订单
+    Result createAdmittedOrder(Long voucherId, Long userId, Long orderId);
+
+    //写入订单消息队列中的订单，重复消息不会重复创建；数据库库存不足时返回false
+    boolean saveAdmittedOrder(VoucherOrder voucherOrder);
+
+    //在一个事务中批量写入订单，按优惠券合并扣减库存；返回因数据库库存不足未写入的订单
+    List<VoucherOrder> saveAdmittedOrders(List<VoucherOrder> voucherOrders);
 }
@@ -1,25 +1,26 @@
 package com.hmdp.service.impl;
 
-import cn.hutool.core.util.BooleanUtil;
-import cn.hutool.core.util.StrUtil;
-import cn.hutool.json.JSONObject;
-import cn.hutool.json.JSONUtil;
 import com.hmdp.dto.Result;
 import com.hmdp.entity.Shop;
 import com.hmdp.mapper.ShopMapper;
 import com.hmdp.service.IShopService;
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
+import com.hmdp.utils.BloomFilterManager;
 import com.hmdp.utils.CacheClient;
-import com.hmdp.utils.RedisData;
-import org.springframework.data.redis.core.StringRedisTemplate;
+import com.hmdp.utils.codec.RawJson;
 import org.springframework.stereotype.Service;
 
+import javax.annotation.PostConstruct;
 import javax.annotation.Resource;
 
-import java.time.LocalDateTime;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 import static com.hmdp.utils.RedisConstants.*;
 
@@ -35,17 +36,27 @@ import static com.hmdp.utils.RedisConstants.*;
 public class ShopServiceImpl extends ServiceImpl<ShopMapper, Shop> implements IShopService {
 
     @Resource
-    private StringRedisTemplate stringRedisTemplate;
+    private CacheClient cacheClient;
 
     @Resource
-    private CacheClient cacheClient;
+    private BloomFilterManager bloomFilterManager;
+
+    @PostConstruct
+    private void initBloomFilter() {
+        //以全量商铺id初始化布隆过滤器
+        bloomFilterManager.register(CACHE_SHOP_KEY, () -> listObjs(new QueryWrapper<Shop>().select("id")));
+    }
 
     @Override
     public Result queryShopById(Long id) {
         Shop shop = null;
-        //解决缓存穿透
+        //按热度自动选择：普通key解决缓存穿透，热点key晋升为逻辑过期解决缓存击穿
         shop = cacheClient
-                .queryWithPassThrough(CACHE_SHOP_KEY, id, Shop.class, this::getById, CACHE_SHOP_TTL, TimeUnit.MINUTES);
+                .queryWithHotKey(CACHE_SHOP_KEY, id, Shop.class, this::getById, CACHE_SHOP_TTL, TimeUnit.MINUTES);
+
+        //解决缓存穿透
+        // shop = cacheClient
+        //         .queryWithPassThrough(CACHE_SHOP_KEY, id, Shop.class, this::getById, CACHE_SHOP_TTL, TimeUnit.MINUTES);
 
         //互斥锁解决缓存击穿
         // shop = cacheClient
@@ -55,6 +66,10 @@ public class ShopServiceImpl extends ServiceImpl<ShopMapper, Shop> implements IS
         // shop = cacheClient
         //         .queryWithLogicalExpire(CACHE_SHOP_KEY, id, Shop.class, this::getById, 20L, TimeUnit.SECONDS);
 
+        //概率提前过期（XFetch），热点key在过期前被平滑刷新
+        // shop = cacheClient
+        //         .queryWithEarlyExpire(CACHE_SHOP_KEY, id, Shop.class, this::getById, CACHE_SHOP_TTL, TimeUnit.MINUTES);
+
         //返回信息
         if (shop == null){
             return Result.fail("商户不存在！");
@@ -62,155 +77,82 @@ public class ShopServiceImpl extends ServiceImpl<ShopMapper, Shop> implements IS
         return Result.ok(shop);
     }
 
-    /**
-     * 解决缓存穿透
-     * */
-    public Shop queryWithPassThrough(Long id){
-        String key = CACHE_SHOP_KEY + id;
-        //0.从redis中查询商铺缓存 (是以string类型json格式存储的)
-        String shopJson = stringRedisTemplate.opsForValue().get(key);
-        //1.判断是否存在
-        if (shopJson != null && !"".equals(shopJson)){
-            //2.缓存中存在，直接返回
-            return JSONUtil.toBean(shopJson, Shop.class);
-        }
-        if ("".equals(shopJson)){
-            //解决缓存穿透-- 2.缓存的是空值，返回null
-            return null;
-        }
-        //3.缓存中不存在，查询数据库
-        Shop shop = getById(id);
-        //4.数据库中不存在，报错
-        if (shop==null){
-            //解决缓存穿透-- 1.数据库中不存在，缓存空值
-            stringRedisTemplate.opsForValue().set(key, "", CACHE_NULL_TTL, TimeUnit.MINUTES);
-            //返回null
-            return null;
-        }
-        //5.数据库中存在，查询出来缓存到redis中 (是以string类型json格式存储的)
-        stringRedisTemplate.opsForValue().set(key, JSONUtil.toJsonStr(shop), CACHE_SHOP_TTL, TimeUnit.MINUTES);
-        //6.返回信息
-        return shop;
+    @Override
+    public RawJson queryShopRawById(Long id) {
+        //透传模式：命中时直接返回缓存中的JSON字节，热点key同样晋升为逻辑过期
+        return cacheClient
+                .queryRawWithHotKey(CACHE_SHOP_KEY, id, Shop.class, this::getById, CACHE_SHOP_TTL, TimeUnit.MINUTES);
     }
 
-    /** 互斥锁解决缓存击穿 begin */
-    public Shop queryWithMutex(Long id){
-        String key = CACHE_SHOP_KEY + id;
-        //0.从redis中查询商铺缓存 (是以string类型json格式存储的)
-        String shopJson = stringRedisTemplate.opsForValue().get(key);
-        //1.判断是否存在
-        if (shopJson != null && !"".equals(shopJson)){
-            //2.缓存中存在，直接返回
-            return JSONUtil.toBean(shopJson, Shop.class);
-        }
-        if ("".equals(shopJson)){
-            //解决缓存穿透-- 2.缓存的是空值，返回null
-            return null;
-        }
-        //3 缓存中不存在,实现缓存重构
-        String lockKey = "lock:shop:" + id;
-        Shop shop = null;
-        try{
-            //3.1 尝试获取互斥锁
-            boolean islock = tryLock(lockKey);
-            if (!islock){
-                //3.2 未取到锁，休眠一段时间后重试
-                Thread.sleep(50);
-                return queryWithMutex(id);
-            }
-            //3.3 成功获取锁，查询数据库
-            shop = getById(id);
-            //4.数据库中不存在，报错
-            if (shop == null){
-                //解决缓存穿透-- 1.数据库中不存在，缓存空值
-                stringRedisTemplate.opsForValue().set(key, "", CACHE_NULL_TTL, TimeUnit.MINUTES);
-                //返回null
-                return null;
-            }
-            //5.数据库中存在，查询出来缓存到redis中 (是以string类型json格式存储的)
-            stringRedisTemplate.opsForValue().set(key, JSONUtil.toJsonStr(shop), CACHE_SHOP_TTL, TimeUnit.MINUTES);
-        }catch(Exception e){
-            throw new RuntimeException(e);
-        }finally{
-            unlock(lockKey);
-        }
-        //6.返回信息
-        return shop;
+    @Override
+    public CompletableFuture<Result> queryShopByIdAsync(Long id) {
+        //异步解决缓存穿透
+        return cacheClient
+                .queryWithPassThroughAsync(CACHE_SHOP_KEY, id, Shop.class, this::getById, CACHE_SHOP_TTL, TimeUnit.MINUTES)
+                .thenApply(shop -> shop == null ? Result.fail("商户不存在！") : Result.ok(shop));
     }
 
-    //获取锁
-    private boolean tryLock(String key) {
-        Boolean flag = stringRedisTemplate.opsForValue().setIfAbsent(key, "1", 10, TimeUnit.SECONDS);
-        return BooleanUtil.isTrue(flag);
+    @Override
+    public CompletableFuture<Result> queryShopByIdsAsync(List<Long> ids) {
+        return cacheClient.queryBatchAsync(CACHE_SHOP_KEY, ids, Shop.class,
+                missIds -> listByIds(missIds).stream().collect(Collectors.toMap(Shop::getId, Function.identity())),
+                CACHE_SHOP_TTL, TimeUnit.MINUTES)
+                .thenApply(shops -> Result.ok(new ArrayList<>(shops.values())));
     }
-    //释放锁
-    private void unlock(String key) {
-        stringRedisTemplate.delete(key);
+
+    @Override
+    public Result queryShopByIds(List<Long> ids) {
+        //1.批量查询，未命中的id合并为一次数据库查询
+        Map<Long, Shop> shops = cacheClient.queryBatch(CACHE_SHOP_KEY, ids, Shop.class,
+                missIds -> listByIds(missIds).stream().collect(Collectors.toMap(Shop::getId, Function.identity())),
+                CACHE_SHOP_TTL, TimeUnit.MINUTES);
+        //2.按传入顺序返回存在的商铺
+        return Result.ok(new ArrayList<>(shops.values()));
     }
-    /** 互斥锁解决缓存击穿 end */
 
+    /**
+     * 解决缓存穿透
+     * 缓存值的编解码统一由 CacheClient 处理，这里直接委托
+     * */
+    public Shop queryWithPassThrough(Long id){
+        return cacheClient
+                .queryWithPassThrough(CACHE_SHOP_KEY, id, Shop.class, this::getById, CACHE_SHOP_TTL, TimeUnit.MINUTES);
+    }
 
-    /** 逻辑过期解决缓存击穿 begin */
-    //创建线程池
-    private static final ExecutorService CACHE_REBUILD_EXECUTOR = Executors.newFixedThreadPool(10);
+    /** 互斥锁解决缓存击穿 */
+    public Shop queryWithMutex(Long id){
+        return cacheClient
+                .queryWithMutex(CACHE_SHOP_KEY, id, Shop.class, this::getById, CACHE_SHOP_TTL, TimeUnit.MINUTES);
+    }
 
+    /** 逻辑过期解决缓存击穿 */
     public Shop queryWithLogicalExpire( Long id ) {
-        String key = CACHE_SHOP_KEY + id;
-        //1.从redis中查询商铺缓存 (是以string类型json格式存储的)
-        String json = stringRedisTemplate.opsForValue().get(key);
-        //2.判断是否存在
-        if (StrUtil.isBlank(json)){
-            //3.不存在，返回null
-            return null;
-        }
-        //4.命中，先把json反序列化为对象
-        RedisData redisData = JSONUtil.toBean(json, RedisData.class);
-        Shop shop = JSONUtil.toBean((JSONObject) redisData.getData(), Shop.class);
-        LocalDateTime expireTime = redisData.getExpireTime();
-        //5.判断是否逻辑过期
-        if (expireTime.isAfter(LocalDateTime.now())){
-            //5.1 未过期，返回商铺信息
-            return shop;
-        }
-        //5.2 已过期，需要缓存重建
-        //6.缓存重建
-        //6.1 获取互斥锁
-        String lockKey = LOCK_SHOP_KEY + id;
-        boolean isLock = tryLock(lockKey);
-        //6.2 判断是否获取成功
-        if (isLock){
-            //6.3 获取成功, 开启独立线程重建缓存
-            CACHE_REBUILD_EXECUTOR.submit(() -> {
-                try {
-                    //缓存重建
-                    this.saveShop2Redis(id,200L);
-                }catch(Exception e){
-                    throw new RuntimeException(e);
-                }finally {
-                    unlock(lockKey);
-                }
-            });
-        }
-        //7.返回过期的商铺信息
-        return shop;
+        return cacheClient
+                .queryWithLogicalExpire(CACHE_SHOP_KEY, id, Shop.class, this::getById, 200L, TimeUnit.SECONDS);
     }
 
-
     //新增此方法，利用单元测试进行缓存预热
     public void saveShop2Redis(Long id, Long expireSeconds){
         //1.查询商户数据
         Shop shop = getById(id);
-        //2.封装逻辑过期时间
-        RedisData redisData = new RedisData();
-        redisData.setData(shop);
-        redisData.setExpireTime(LocalDateTime.now().plusSeconds(expireSeconds));
-        //3.存入redis
-        stringRedisTemplate.opsForValue().set(CACHE_SHOP_KEY + id, JSONUtil.toJsonStr(redisData));
+        //2.封装逻辑过期时间并存入redis
+        cacheClient.setWithLogicalExpire(CACHE_SHOP_KEY + id, shop, expireSeconds, TimeUnit.SECONDS);
     }
-    /** 逻辑过期解决缓存击穿 end */
 
 
 
+    @Override
+    public Result saveShop(Shop shop) {
+        //1.写入数据库
+        save(shop);
+        //2.加入布隆过滤器
+        bloomFilterManager.put(CACHE_SHOP_KEY, shop.getId());
+        //3.清除该id可能存在的空值缓存
+        cacheClient.deleteNull(CACHE_SHOP_KEY, shop.getId());
+        //4.返回店铺id
+        return Result.ok(shop.getId());
+    }
+
     @Override
     public Result update(Shop shop) {
         Long id = shop.getId();
@@ -219,8 +161,8 @@ public class ShopServiceImpl extends ServiceImpl<ShopMapper, Shop> implements IS
         }
         //1.更新数据库
         updateById(shop);
-        //2.删除缓存
-        stringRedisTemplate.delete(CACHE_SHOP_KEY + id);
+        //2.删除缓存（同时通知各实例清理一级缓存）
+        cacheClient.delete(CACHE_SHOP_KEY + id);
         return Result.ok();
     }
 }
@@ -1,5 +1,6 @@
 package com.hmdp.service.impl;
 
+import com.hmdp.config.SeckillProperties;
 import com.hmdp.dto.Result;
 import com.hmdp.entity.SeckillVoucher;
 import com.hmdp.entity.VoucherOrder;
@@ -8,6 +9,10 @@ import com.hmdp.service.ISeckillVoucherService;
 import com.hmdp.service.IVoucherOrderService;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
 import com.hmdp.utils.RedisIdWorker;
+import com.hmdp.utils.SeckillAdmission;
+import com.hmdp.utils.SeckillGate;
+import com.hmdp.utils.SeckillVoucherCache;
+import com.hmdp.utils.SeckillWaitingRoom;
 import com.hmdp.utils.SimpleRedisLock;
 import com.hmdp.utils.UserHolder;
 import org.springframework.aop.framework.AopContext;
@@ -17,7 +22,12 @@ import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import javax.annotation.Resource;
-import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
 
 /**
  * <p>
@@ -30,6 +40,11 @@ import java.time.LocalDateTime;
 @Service
 public class VoucherOrderServiceImpl extends ServiceImpl<VoucherOrderMapper, VoucherOrder> implements IVoucherOrderService {
 
+    /**
+     * 单条INSERT语句最多插入的行数
+     */
+    private static final int MAX_INSERT_ROWS = 500;
+
     @Autowired
     ISeckillVoucherService seckillVoucherService;
 
@@ -39,27 +54,49 @@ public class VoucherOrderServiceImpl extends ServiceImpl<VoucherOrderMapper, Vou
     @Resource
     StringRedisTemplate stringRedisTemplate;
 
+    @Resource
+    SeckillAdmission seckillAdmission;
+
+    @Resource
+    SeckillProperties seckillProperties;
+
+    @Resource
+    SeckillGate seckillGate;
+
+    @Resource
+    SeckillVoucherCache seckillVoucherCache;
+
+    @Resource
+    SeckillWaitingRoom seckillWaitingRoom;
+
 
     @Override
     public Result seckillVoucher(Long voucherId) {
-        // 1.查询优惠券
-        SeckillVoucher voucher = seckillVoucherService.getById(voucherId);
-        // 2.判断秒杀是否开始
-        if (voucher.getBeginTime().isAfter(LocalDateTime.now())) {
-            // 尚未开始
-            return Result.fail("秒杀尚未开始！");
-        }
-        // 3.判断秒杀是否已经结束
-        if (voucher.getEndTime().isBefore(LocalDateTime.now())) {
-            // 尚未开始
-            return Result.fail("秒杀已经结束！");
-        }
-        // 4.判断库存是否充足
-        if (voucher.getStock() < 1) {
-            // 库存不足
-            return Result.fail("库存不足！");
-        }
+        return seckillVoucher(voucherId, null);
+    }
 
+    @Override
+    public Result seckillVoucher(Long voucherId, String passToken) {
+        // 0.本地闸门：已售罄、未开始、已结束的秒杀券直接拒绝
+        SeckillAdmission.Admission gated = seckillGate.check(voucherId);
+        if (gated != null) {
+            return Result.fail(gated.getMessage());
+        }
+        // 1.判断秒杀时间窗口：秒杀券元数据缓存在本地，只做内存比较
+        SeckillAdmission.Admission window = seckillVoucherCache.checkWindow(voucherId);
+        if (window != null) {
+            gate(voucherId, window);
+            return Result.fail(window.getMessage());
+        }
+        // 2.需要排队的秒杀券校验购买凭证，只做本地签名校验
+        if (seckillWaitingRoom.required(voucherId)
+                && !seckillWaitingRoom.verify(voucherId, UserHolder.getUser().getId(), passToken)) {
+            return Result.fail("请先排队获取购买资格");
+        }
+        if (seckillProperties.getMode() == SeckillProperties.Mode.REDIS) {
+            return seckillVoucherByRedis(voucherId);
+        }
+        // 3.库存由扣减时的 stock > 0 条件判断，不再提前查询数据库
         Long userId = UserHolder.getUser().getId();
         //创建锁对象(新增代码)
         SimpleRedisLock lock = new SimpleRedisLock("order:" + userId, stringRedisTemplate);
@@ -100,6 +137,7 @@ public class VoucherOrderServiceImpl extends ServiceImpl<VoucherOrderMapper, Vou
                 .update();
         if (!success) {
             // 扣减失败
+            seckillGate.soldOut(voucherId);
             return Result.fail("库存不足！");
         }
 
@@ -118,6 +156,166 @@ public class VoucherOrderServiceImpl extends ServiceImpl<VoucherOrderMapper, Vou
         return Result.ok(orderId);
     }
 
+    /**
+     * Redis模式：由Lua脚本原子判断时间、库存与一人一单，获得资格后再写数据库
+     */
+    private Result seckillVoucherByRedis(Long voucherId) {
+        Long userId = UserHolder.getUser().getId();
+        long orderId = redisIdWorker.nextId("order");
+        // 1.执行脚本判断购买资格
+        SeckillAdmission.Admission admission = seckillAdmission.admit(voucherId, userId, orderId);
+        // 2.尚未预热（例如启用Redis模式之前创建的秒杀券），从数据库加载后重试一次
+        if (admission == SeckillAdmission.Admission.NOT_LOADED) {
+            SeckillVoucher voucher = seckillVoucherService.getById(voucherId);
+            if (voucher == null) {
+                return Result.fail(admission.getMessage());
+            }
+            seckillAdmission.preload(voucher, false);
+            admission = seckillAdmission.admit(voucherId, userId, orderId);
+        }
+        // 3.没有资格，记录到本地闸门后返回
+        if (admission != SeckillAdmission.Admission.OK) {
+            gate(voucherId, admission);
+            return Result.fail(admission.getMessage());
+        }
+        // 4.订单消息已写入队列，由后台消费者写入数据库
+        if (seckillAdmission.isStreamEnabled()) {
+            return Result.ok(orderId);
+        }
+        // 5.获得资格，创建订单，失败时归还资格
+        IVoucherOrderService proxy = (IVoucherOrderService) AopContext.currentProxy();
+        Result result;
+        try {
+            result = proxy.createAdmittedOrder(voucherId, userId, orderId);
+        } catch (RuntimeException e) {
+            seckillAdmission.rollback(voucherId, userId);
+            throw e;
+        }
+        if (!Boolean.TRUE.equals(result.getSuccess())) {
+            seckillAdmission.rollback(voucherId, userId);
+        }
+        return result;
+    }
+
+    private void gate(Long voucherId, SeckillAdmission.Admission admission) {
+        switch (admission) {
+            case SOLD_OUT:
+                seckillGate.soldOut(voucherId);
+                break;
+            case ENDED:
+                SeckillVoucherCache.Meta ended = seckillVoucherCache.get(voucherId);
+                seckillGate.ended(voucherId, ended == null ? null : ended.getEndMillis());
+                break;
+            case NOT_STARTED:
+                SeckillVoucherCache.Meta meta = seckillVoucherCache.get(voucherId);
+                seckillGate.notStarted(voucherId, meta == null ? null : meta.getBeginMillis());
+                break;
+            default:
+                break;
+        }
+    }
+
+    @Override
+    @Transactional
+    public Result createAdmittedOrder(Long voucherId, Long userId, Long orderId) {
+        // 1.扣减库存，一人一单已由Redis保证，无需再查询订单
+        boolean success = seckillVoucherService.update()
+                .setSql("stock = stock - 1")
+                .eq("voucher_id", voucherId).gt("stock", 0)
+                .update();
+        if (!success) {
+            return Result.fail("库存不足！");
+        }
+        // 2.创建订单
+        VoucherOrder voucherOrder = new VoucherOrder();
+        voucherOrder.setId(orderId);
+        voucherOrder.setUserId(userId);
+        voucherOrder.setVoucherId(voucherId);
+        save(voucherOrder);
+        // 3.返回订单id
+        return Result.ok(orderId);
+    }
+
+    @Override
+    @Transactional
+    public boolean saveAdmittedOrder(VoucherOrder voucherOrder) {
+        // 1.消息可能重复投递，订单已存在时直接返回
+        if (getById(voucherOrder.getId()) != null) {
+            return true;
+        }
+        // 2.扣减库存
+        boolean success = seckillVoucherService.update()
+                .setSql("stock = stock - 1")
+                .eq("voucher_id", voucherOrder.getVoucherId()).gt("stock", 0)
+                .update();
+        if (!success) {
+            return false;
+        }
+        // 3.创建订单
+        save(voucherOrder);
+        return true;
+    }
+
+    @Override
+    @Transactional
+    public List<VoucherOrder> saveAdmittedOrders(List<VoucherOrder> voucherOrders) {
+        if (voucherOrders.isEmpty()) {
+            return Collections.emptyList();
+        }
+        // 1.去掉重复投递的订单（批内重复与数据库中已存在的）
+        Map<Long, VoucherOrder> orderMap = new LinkedHashMap<>();
+        for (VoucherOrder voucherOrder : voucherOrders) {
+            orderMap.putIfAbsent(voucherOrder.getId(), voucherOrder);
+        }
+        for (VoucherOrder existing : listByIds(orderMap.keySet())) {
+            orderMap.remove(existing.getId());
+        }
+        // 2.按优惠券分组
+        Map<Long, List<VoucherOrder>> byVoucher = orderMap.values().stream()
+                .collect(Collectors.groupingBy(VoucherOrder::getVoucherId, LinkedHashMap::new, Collectors.toList()));
+        List<VoucherOrder> accepted = new ArrayList<>(orderMap.size());
+        List<VoucherOrder> rejected = new ArrayList<>();
+        for (Map.Entry<Long, List<VoucherOrder>> entry : byVoucher.entrySet()) {
+            List<VoucherOrder> orders = entry.getValue();
+            // 3.每个优惠券只扣减一次库存
+            int granted = deductStock(entry.getKey(), orders.size());
+            accepted.addAll(orders.subList(0, granted));
+            rejected.addAll(orders.subList(granted, orders.size()));
+        }
+        // 4.多行插入订单
+        for (int from = 0; from < accepted.size(); from += MAX_INSERT_ROWS) {
+            getBaseMapper().insertBatch(accepted.subList(from, Math.min(from + MAX_INSERT_ROWS, accepted.size())));
+        }
+        return rejected;
+    }
+
+    /**
+     * 扣减n个库存，库存不足n个时扣减剩余的全部库存
+     *
+     * @return 实际扣减的数量
+     */
+    private int deductStock(Long voucherId, int n) {
+        // 1.库存充足，一次扣减
+        boolean success = seckillVoucherService.update()
+                .setSql("stock = stock - " + n)
+                .eq("voucher_id", voucherId).ge("stock", n)
+                .update();
+        if (success) {
+            return n;
+        }
+        // 2.库存不足，锁定当前库存后扣减剩余部分
+        SeckillVoucher voucher = seckillVoucherService.query()
+                .eq("voucher_id", voucherId).last("for update").one();
+        int granted = voucher == null ? 0 : Math.max(0, Math.min(voucher.getStock(), n));
+        if (granted > 0) {
+            seckillVoucherService.update()
+                    .setSql("stock = stock - " + granted)
+                    .eq("voucher_id", voucherId)
+                    .update();
+        }
+        return granted;
+    }
+
 
 
 
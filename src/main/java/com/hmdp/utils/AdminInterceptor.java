@@ -0,0 +1,40 @@
+package com.hmdp.utils;
+
+import com.hmdp.config.AdminProperties;
+import com.hmdp.dto.UserDTO;
+import org.springframework.web.servlet.HandlerInterceptor;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * 运维接口拦截器
+ * 只允许配置的管理员访问 /admin/**，需要在登录拦截器之后执行
+ *
+ * @className: AdminInterceptor
+ * @author: sutianyu
+ * @date: 2023-03-06 10:10
+ **/
+public class AdminInterceptor implements HandlerInterceptor {
+
+    private final AdminProperties properties;
+
+    public AdminInterceptor(AdminProperties properties) {
+        this.properties = properties;
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) throws Exception {
+        UserDTO user = UserHolder.getUser();
+        if (user == null) {
+            response.setStatus(401);
+            return false;
+        }
+        // 不是管理员，设置403状态码，拦截
+        if (!properties.getUserIds().contains(user.getId())) {
+            response.setStatus(403);
+            return false;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,171 @@
+package com.hmdp.utils;
+
+import com.hmdp.config.CacheProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+import static com.hmdp.utils.RedisConstants.BLOOM_ADD_CHANNEL;
+import static com.hmdp.utils.RedisConstants.BLOOM_KEY;
+
+/**
+ * 布隆过滤器管理：按缓存key前缀注册，负责初始化、跨实例同步与定期重建
+ *
+ * @className: BloomFilterManager
+ * @author: sutianyu
+ * @date: 2023-02-07 10:15
+ **/
+@Slf4j
+@Component
+public class BloomFilterManager {
+
+    private final StringRedisTemplate stringRedisTemplate;
+
+    private final RedisMessageListenerContainer listenerContainer;
+
+    private final CacheProperties.Bloom properties;
+
+    private final Map<String, RedisBloomFilter> filters = new ConcurrentHashMap<>();
+
+    private final Map<String, Supplier<? extends Iterable<?>>> idSources = new ConcurrentHashMap<>();
+
+    public BloomFilterManager(StringRedisTemplate stringRedisTemplate,
+                              RedisMessageListenerContainer listenerContainer,
+                              CacheProperties cacheProperties) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.listenerContainer = listenerContainer;
+        this.properties = cacheProperties.getBloom();
+    }
+
+    @PostConstruct
+    private void subscribe() {
+        if (!properties.isEnabled()) {
+            return;
+        }
+        // 其它实例新增数据时同步本地镜像，消息格式：keyPrefix|id
+        listenerContainer.addMessageListener((message, pattern) -> {
+            String body = new String(message.getBody(), StandardCharsets.UTF_8);
+            int index = body.lastIndexOf('|');
+            RedisBloomFilter filter = filters.get(body.substring(0, index));
+            if (filter != null) {
+                filter.putLocal(body.substring(index + 1));
+            }
+        }, new ChannelTopic(BLOOM_ADD_CHANNEL));
+    }
+
+    /**
+     * 为某个缓存前缀注册布隆过滤器
+     *
+     * @param keyPrefix 缓存key前缀
+     * @param idSource  全量id来源，用于初始化与定期重建
+     */
+    public void register(String keyPrefix, Supplier<? extends Iterable<?>> idSource) {
+        if (!properties.isEnabled()) {
+            return;
+        }
+        RedisBloomFilter filter = new RedisBloomFilter(BLOOM_KEY + keyPrefix,
+                properties.getExpectedInsertions(), properties.getFpp(), stringRedisTemplate);
+        filters.put(keyPrefix, filter);
+        idSources.put(keyPrefix, idSource);
+        try {
+            // 其它实例已经建好位图则直接加载，否则从数据库初始化
+            if (!filter.reload()) {
+                rebuild(keyPrefix);
+            }
+        } catch (Exception e) {
+            // 初始化失败时过滤器保持放行状态，等待下次定时重建
+            log.error("布隆过滤器初始化失败, prefix={}", keyPrefix, e);
+        }
+    }
+
+    public RedisBloomFilter get(String keyPrefix) {
+        return filters.get(keyPrefix);
+    }
+
+    /**
+     * 新增数据时调用，写入布隆过滤器并广播给其它实例
+     */
+    public void put(String keyPrefix, Object id) {
+        RedisBloomFilter filter = filters.get(keyPrefix);
+        if (filter == null) {
+            return;
+        }
+        filter.put(id);
+        stringRedisTemplate.convertAndSend(BLOOM_ADD_CHANNEL, keyPrefix + "|" + id);
+    }
+
+    /**
+     * 定期重建，清理已删除的数据并修正位图
+     * 同一时刻只有一个实例执行重建，其它实例重新加载镜像
+     */
+    @Scheduled(initialDelayString = "${hmdp.cache.bloom.rebuild-interval-ms:3600000}",
+            fixedDelayString = "${hmdp.cache.bloom.rebuild-interval-ms:3600000}")
+    public void rebuildAll() {
+        for (String keyPrefix : filters.keySet()) {
+            try {
+                rebuild(keyPrefix);
+            } catch (Exception e) {
+                log.error("布隆过滤器重建失败, prefix={}", keyPrefix, e);
+            }
+        }
+    }
+
+    /**
+     * 定期从Redis重新加载本地镜像，弥补丢失的广播消息
+     */
+    @Scheduled(initialDelayString = "${hmdp.cache.bloom.reload-interval-ms:300000}",
+            fixedDelayString = "${hmdp.cache.bloom.reload-interval-ms:300000}")
+    public void reloadAll() {
+        filters.forEach((keyPrefix, filter) -> {
+            try {
+                filter.reload();
+            } catch (Exception e) {
+                log.error("布隆过滤器加载失败, prefix={}", keyPrefix, e);
+            }
+        });
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        filters.forEach((keyPrefix, filter) -> {
+            Map<String, Object> item = new LinkedHashMap<>();
+            item.put("ready", filter.isReady());
+            item.put("bits", filter.getNumBits());
+            item.put("hashes", filter.getNumHashes());
+            item.put("rejects", filter.getRejects());
+            item.put("falsePositives", filter.getFalsePositives());
+            stats.put(keyPrefix, item);
+        });
+        return stats;
+    }
+
+    private void rebuild(String keyPrefix) {
+        RedisBloomFilter filter = filters.get(keyPrefix);
+        SimpleRedisLock lock = new SimpleRedisLock("bloom:" + keyPrefix, stringRedisTemplate);
+        if (!lock.tryLock(60)) {
+            // 其它实例正在重建
+            filter.reload();
+            return;
+        }
+        try {
+            List<Object> ids = new ArrayList<>();
+            idSources.get(keyPrefix).get().forEach(ids::add);
+            filter.rebuild(ids);
+            log.debug("布隆过滤器重建完成, prefix={}, size={}", keyPrefix, ids.size());
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -1,21 +1,54 @@
 package com.hmdp.utils;
 
 import cn.hutool.core.util.BooleanUtil;
-import cn.hutool.core.util.StrUtil;
 import cn.hutool.json.JSONObject;
 import cn.hutool.json.JSONUtil;
+import com.hmdp.config.CacheProperties;
+import com.hmdp.utils.codec.CacheCodecRegistry;
+import com.hmdp.utils.codec.CacheEnvelope;
+import com.hmdp.utils.codec.RawJson;
+import io.lettuce.core.cluster.api.async.RedisClusterAsyncCommands;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.ScanOptions;
 import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDateTime;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Function;
+import java.util.stream.Collectors;
 
+import static com.hmdp.utils.RedisConstants.CACHE_INVALIDATE_CHANNEL;
+import static com.hmdp.utils.RedisConstants.CACHE_NULL_KEY;
 import static com.hmdp.utils.RedisConstants.CACHE_NULL_TTL;
+import static com.hmdp.utils.RedisConstants.CACHE_STALE_KEY;
 import static com.hmdp.utils.RedisConstants.LOCK_SHOP_KEY;
+import static com.hmdp.utils.RedisConstants.LOCK_SHOP_TTL;
 
 /**
  * redis工具类
@@ -29,149 +62,1348 @@ import static com.hmdp.utils.RedisConstants.LOCK_SHOP_KEY;
 public class CacheClient {
     private final StringRedisTemplate stringRedisTemplate;
 
-    private static final ExecutorService CACHE_REBUILD_EXECUTOR = Executors.newFixedThreadPool(10);
+    /**
+     * 缓存数据读写，value为编码后的字节，按key路由到各分片
+     */
+    private final CacheShardRouter shardRouter;
 
-    public CacheClient(StringRedisTemplate stringRedisTemplate) {
+    private final CacheCodecRegistry codecRegistry;
+
+    /**
+     * 空值标记，用于解决缓存穿透
+     */
+    private static final byte[] NULL_VALUE = new byte[0];
+
+    /**
+     * 一级缓存中透传模式数据的key前缀，与对象数据分开存放
+     */
+    private static final String RAW_LOCAL_PREFIX = "raw:";
+
+    private final RedisMessageListenerContainer listenerContainer;
+
+    private final BloomFilterManager bloomFilterManager;
+
+    private final LockReleaseNotifier lockReleaseNotifier;
+
+    private final SingleFlight singleFlight = new SingleFlight();
+
+    /**
+     * 缓存重建线程池，有界队列并按key去重
+     */
+    private final CacheRebuildExecutor rebuildExecutor;
+
+    /**
+     * 异步查询中执行数据库查询等阻塞操作的线程池，有界队列
+     */
+    private final ThreadPoolExecutor dbExecutor;
+
+    /**
+     * 按key前缀统计的命中率与耗时
+     */
+    private final CacheMetrics cacheMetrics;
+
+    /**
+     * 兜底副本配置与数据库熔断器，未启用时为null
+     */
+    private final CacheProperties.StaleIfError staleIfError;
+
+    private final CircuitBreaker dbBreaker;
+
+    /**
+     * 空值缓存配置，未启用分桶集合时为null
+     */
+    private final CacheProperties.Negative negative;
+
+    private final double xfetchBeta;
+
+    private final CacheProperties.Jitter jitter;
+
+    /**
+     * 透传模式：逻辑过期数据按响应格式写入，命中后直接透传
+     */
+    private final boolean rawResponse;
+
+    /**
+     * 等待锁释放的单次最长时间
+     */
+    private static final long LOCK_WAIT_MILLIS = 500;
+
+    /**
+     * 进程内一级缓存，未启用时为null
+     */
+    private final LocalCache<Object> localCache;
+
+    /**
+     * 热点key探测，未启用时为null
+     */
+    private final HotKeyDetector hotKeyDetector;
+
+    private final CacheProperties.HotKey hotKeyProperties;
+
+    /**
+     * 热点key固定在本地的数据，不参与一级缓存的容量淘汰，降级时移除
+     */
+    private final Map<String, Pinned> pinned = new ConcurrentHashMap<>();
+
+    public CacheClient(StringRedisTemplate stringRedisTemplate,
+                       CacheShardRouter shardRouter,
+                       CacheCodecRegistry codecRegistry,
+                       RedisMessageListenerContainer listenerContainer,
+                       BloomFilterManager bloomFilterManager,
+                       LockReleaseNotifier lockReleaseNotifier,
+                       CacheRebuildExecutor rebuildExecutor,
+                       CacheMetrics cacheMetrics,
+                       CacheProperties cacheProperties) {
         this.stringRedisTemplate = stringRedisTemplate;
+        this.shardRouter = shardRouter;
+        this.codecRegistry = codecRegistry;
+        this.listenerContainer = listenerContainer;
+        this.bloomFilterManager = bloomFilterManager;
+        this.lockReleaseNotifier = lockReleaseNotifier;
+        this.rebuildExecutor = rebuildExecutor;
+        this.cacheMetrics = cacheMetrics;
+        this.xfetchBeta = cacheProperties.getXfetch().getBeta();
+        this.jitter = cacheProperties.getJitter();
+        this.rawResponse = cacheProperties.isRawResponse();
+        CacheProperties.Local local = cacheProperties.getLocal();
+        this.localCache = local.isEnabled()
+                ? new LocalCache<>(local.getMaximumSize(), TimeUnit.SECONDS.toMillis(local.getTtlSeconds()))
+                : null;
+        this.negative = cacheProperties.getNegative().isEnabled() ? cacheProperties.getNegative() : null;
+        CacheProperties.Async async = cacheProperties.getAsync();
+        AtomicInteger threadIndex = new AtomicInteger();
+        this.dbExecutor = new ThreadPoolExecutor(async.getDbThreads(), async.getDbThreads(),
+                0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(async.getQueueCapacity()),
+                r -> {
+                    Thread thread = new Thread(r, "cache-db-" + threadIndex.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        CacheProperties.StaleIfError stale = cacheProperties.getStaleIfError();
+        this.staleIfError = stale.isEnabled() ? stale : null;
+        this.dbBreaker = stale.isEnabled()
+                ? new CircuitBreaker("mysql", stale.getFailureThreshold(), stale.getOpenMillis(), stale.getSlowCallMillis())
+                : null;
+        this.hotKeyProperties = cacheProperties.getHotKey();
+        this.hotKeyDetector = hotKeyProperties.isEnabled()
+                ? new HotKeyDetector(hotKeyProperties.getExpectedKeys(),
+                hotKeyProperties.getThreshold(), hotKeyProperties.getMaxKeys())
+                : null;
+    }
+
+    @PreDestroy
+    private void shutdown() {
+        dbExecutor.shutdown();
+    }
+
+    @PostConstruct
+    private void subscribeInvalidation() {
+        if (localCache == null && hotKeyDetector == null) {
+            return;
+        }
+        // 订阅失效频道，任意实例删除缓存时同步清理本机一级缓存
+        listenerContainer.addMessageListener((message, pattern) ->
+                invalidateLocal(new String(message.getBody(), StandardCharsets.UTF_8)),
+                new ChannelTopic(CACHE_INVALIDATE_CHANNEL));
     }
 
     public void set(String key, Object value, Long time, TimeUnit unit) {
-        stringRedisTemplate.opsForValue().set(key, JSONUtil.toJsonStr(value), time, unit);
+        set(null, key, value, time, unit);
+    }
+
+    private void set(CacheMetrics.PrefixMetrics m, String key, Object value, Long time, TimeUnit unit) {
+        long begin = System.nanoTime();
+        byte[] bytes = codecRegistry.encode(value);
+        if (m != null) {
+            m.getEncode().recordSince(begin);
+        }
+        // TTL追加随机值，避免同一批key同时过期
+        shardRouter.set(key, bytes, jitter(unit.toMillis(time)), TimeUnit.MILLISECONDS);
+        if (m != null) {
+            setStale(key, bytes);
+        }
     }
 
     public void setWithLogicalExpire(String key, Object value, Long time, TimeUnit unit) {
-        // 设置逻辑过期
-        RedisData redisData = new RedisData();
-        redisData.setData(value);
-        redisData.setExpireTime(LocalDateTime.now().plusSeconds(unit.toSeconds(time)));
+        setWithLogicalExpire(null, key, value, time, unit);
+    }
+
+    private void setWithLogicalExpire(CacheMetrics.PrefixMetrics m, String key, Object value, Long time, TimeUnit unit) {
+        // 设置逻辑过期，过期时间写入固定头部
+        long expireAt = System.currentTimeMillis() + jitter(unit.toMillis(time));
+        long begin = System.nanoTime();
+        byte[] bytes = rawResponse
+                ? codecRegistry.encodeEnvelopeForResponse(value, expireAt, 0)
+                : codecRegistry.encodeEnvelope(value, expireAt, 0);
+        if (m != null) {
+            m.getEncode().recordSince(begin);
+        }
         // 写入Redis
-        stringRedisTemplate.opsForValue().set(key, JSONUtil.toJsonStr(redisData));
+        shardRouter.set(key, bytes);
+    }
+
+    public void setWithEarlyExpire(String key, Object value, long deltaMillis, Long time, TimeUnit unit) {
+        // 头部记录过期时间与重建耗时，Redis中同时设置真实TTL
+        long expireAt = System.currentTimeMillis() + unit.toMillis(time);
+        shardRouter.set(key, codecRegistry.encodeEnvelope(value, expireAt, deltaMillis), time, unit);
+    }
+
+    /**
+     * 删除缓存，并通知所有实例清理一级缓存
+     */
+    public void delete(String key) {
+        shardRouter.delete(key);
+        if (localCache != null || hotKeyDetector != null) {
+            invalidateLocal(key);
+            stringRedisTemplate.convertAndSend(CACHE_INVALIDATE_CHANNEL, key);
+        }
     }
 
     public <R,ID> R queryWithPassThrough(
             String keyPrefix, ID id, Class<R> type, Function<ID, R> dbFallback, Long time, TimeUnit unit){
         String key = keyPrefix + id;
+        CacheMetrics.PrefixMetrics m = cacheMetrics.of(keyPrefix);
+        // 0.布隆过滤器判断一定不存在，直接返回
+        RedisBloomFilter bloomFilter = bloomFilterManager.get(keyPrefix);
+        if (bloomFilter != null && !bloomFilter.mightContain(id)) {
+            m.getBloomReject().increment();
+            return null;
+        }
+        // 0.1.查询一级缓存
+        R local = getLocal(m, key, type);
+        if (local != null) {
+            return local;
+        }
         // 1.从redis查询商铺缓存
-        String json = stringRedisTemplate.opsForValue().get(key);
+        byte[] bytes = getWithNegative(keyPrefix, id, key);
         // 2.判断是否存在
-        if (StrUtil.isNotBlank(json)) {
+        if (bytes != null && bytes.length > 0) {
             // 3.存在，直接返回
-            return JSONUtil.toBean(json, type);
+            m.getHit().increment();
+            R r = decode(m, bytes, type);
+            putLocal(key, r);
+            return r;
         }
         // 判断命中的是否是空值
-        if (json != null) {
+        if (bytes != null) {
+            m.getNullHit().increment();
             // 返回一个错误信息
             return null;
         }
 
         // 4.不存在，根据id查询数据库
-        R r = dbFallback.apply(id);
+        m.getMiss().increment();
+        return loadAndCache(m, bloomFilter, keyPrefix, id, type, dbFallback, time, unit);
+    }
+
+    /**
+     * 缓存穿透方案未命中时查询数据库并回写缓存，同步与异步查询共用
+     */
+    private <R, ID> R loadAndCache(CacheMetrics.PrefixMetrics m, RedisBloomFilter bloomFilter,
+            String keyPrefix, ID id, Class<R> type, Function<ID, R> dbFallback, Long time, TimeUnit unit) {
+        String key = keyPrefix + id;
+        R r;
+        try {
+            r = load(m, dbFallback, id);
+        } catch (RuntimeException e) {
+            // 数据库异常，返回兜底数据
+            return decode(m, getStale(m, key, e), type);
+        }
         // 5.不存在，返回错误
         if (r == null) {
+            if (bloomFilter != null) {
+                bloomFilter.recordFalsePositive();
+            }
             // 将空值写入redis
-            stringRedisTemplate.opsForValue().set(key, "", CACHE_NULL_TTL, TimeUnit.MINUTES);
+            setNull(keyPrefix, id, key);
             // 返回错误信息
             return null;
         }
         // 6.存在，写入redis
-        this.set(key, r, time, unit);
+        this.set(m, key, r, time, unit);
+        putLocal(key, r);
         return r;
     }
 
+    /**
+     * 透传模式的缓存穿透查询：返回与接口响应格式一致的 JSON 字节
+     * 命中响应格式的数据时直接返回缓存字节，不做反序列化与再序列化；
+     * 未命中时查询数据库并以响应格式写入缓存
+     *
+     * @return 数据不存在时返回null
+     */
+    public <R, ID> RawJson queryRawWithPassThrough(
+            String keyPrefix, ID id, Class<R> type, Function<ID, R> dbFallback, Long time, TimeUnit unit) {
+        String key = keyPrefix + id;
+        CacheMetrics.PrefixMetrics m = cacheMetrics.of(keyPrefix);
+        // 0.布隆过滤器判断一定不存在，直接返回
+        RedisBloomFilter bloomFilter = bloomFilterManager.get(keyPrefix);
+        if (bloomFilter != null && !bloomFilter.mightContain(id)) {
+            m.getBloomReject().increment();
+            return null;
+        }
+        // 0.1.查询一级缓存
+        RawJson local = getLocal(m, RAW_LOCAL_PREFIX + key, RawJson.class);
+        if (local != null) {
+            return local;
+        }
+        // 1.从redis查询缓存
+        byte[] bytes = getWithNegative(keyPrefix, id, key);
+        if (CacheEnvelope.isEnvelope(bytes)) {
+            // 1.1.热点key已晋升为逻辑过期格式，透传数据部分，过期时异步重建
+            return readRawLogicalExpire(m, key, id, CacheEnvelope.wrap(bytes), type, dbFallback, time, unit);
+        }
+        if (bytes != null && bytes.length > 0) {
+            // 2.命中，直接取出响应格式的字节
+            m.getHit().increment();
+            long begin = System.nanoTime();
+            RawJson raw = codecRegistry.toResponseJson(bytes, type);
+            m.getDecode().recordSince(begin);
+            putLocal(RAW_LOCAL_PREFIX + key, raw);
+            return raw;
+        }
+        // 3.命中空值
+        if (bytes != null) {
+            m.getNullHit().increment();
+            return null;
+        }
+        // 4.未命中，查询数据库
+        m.getMiss().increment();
+        R r;
+        try {
+            r = load(m, dbFallback, id);
+        } catch (RuntimeException e) {
+            // 数据库异常，返回兜底数据
+            return codecRegistry.toResponseJson(getStale(m, key, e), type);
+        }
+        if (r == null) {
+            if (bloomFilter != null) {
+                bloomFilter.recordFalsePositive();
+            }
+            setNull(keyPrefix, id, key);
+            return null;
+        }
+        // 5.以响应格式写入redis
+        long begin = System.nanoTime();
+        byte[] encoded = codecRegistry.encodeForResponse(r);
+        m.getEncode().recordSince(begin);
+        shardRouter.set(key, encoded, jitter(unit.toMillis(time)), TimeUnit.MILLISECONDS);
+        setStale(key, encoded);
+        RawJson raw = codecRegistry.toResponseJson(encoded, type);
+        putLocal(RAW_LOCAL_PREFIX + key, raw);
+        return raw;
+    }
+
+    /**
+     * 按热度自动选择缓存策略
+     * 普通key走缓存穿透方案；访问频率达到阈值的热点key晋升为逻辑过期存储（不会因TTL到期被击穿），
+     * 并固定在本地缓存中，降温后由定时任务降级
+     */
+    public <R, ID> R queryWithHotKey(
+            String keyPrefix, ID id, Class<R> type, Function<ID, R> dbFallback, Long time, TimeUnit unit) {
+        String key = keyPrefix + id;
+        // 1.记录访问，非热点key走缓存穿透方案
+        if (hotKeyDetector == null || !hotKeyDetector.record(key)) {
+            return queryWithPassThrough(keyPrefix, id, type, dbFallback, time, unit);
+        }
+        CacheMetrics.PrefixMetrics m = cacheMetrics.of(keyPrefix);
+        // 2.布隆过滤器判断一定不存在，直接返回
+        RedisBloomFilter bloomFilter = bloomFilterManager.get(keyPrefix);
+        if (bloomFilter != null && !bloomFilter.mightContain(id)) {
+            m.getBloomReject().increment();
+            return null;
+        }
+        // 3.查询本地固定的数据，逻辑未过期且未到重新检查时间时直接返回
+        long now = System.currentTimeMillis();
+        Pinned local = pinned.get(key);
+        if (local != null && local.checkAt > now && local.expireAt > now && type.isInstance(local.value)) {
+            m.getHit().increment();
+            m.getLocalHit().increment();
+            return type.cast(local.value);
+        }
+        // 4.查询redis
+        byte[] bytes = getWithNegative(keyPrefix, id, key);
+        if (bytes != null && bytes.length == 0) {
+            // 命中空值
+            m.getNullHit().increment();
+            return null;
+        }
+        if (CacheEnvelope.isEnvelope(bytes)) {
+            // 5.已是逻辑过期格式，过期时异步重建并返回旧数据
+            m.getHit().increment();
+            CacheEnvelope envelope = CacheEnvelope.wrap(bytes);
+            if (envelope.isExpired(now)) {
+                m.getStaleServe().increment();
+                rebuildLogicalExpire(m, key, id, dbFallback, time, unit);
+            }
+            R r = decodePayload(m, envelope, type);
+            pin(key, r, envelope.getExpireAt());
+            return r;
+        }
+        // 6.尚未晋升，同一进程内合并为一次晋升
+        try {
+            return singleFlight.execute("hot:" + key, () -> promote(m, keyPrefix, key, id, bytes, type, dbFallback, time, unit));
+        } catch (RuntimeException e) {
+            // 数据库异常，返回兜底数据
+            return decode(m, getStale(m, key, e), type);
+        }
+    }
+
+    private <R, ID> R promote(CacheMetrics.PrefixMetrics m, String keyPrefix,
+            String key, ID id, byte[] bytes, Class<R> type, Function<ID, R> dbFallback, Long time, TimeUnit unit) {
+        // 1.优先使用缓存中的旧数据，未命中时查询数据库
+        R r;
+        if (bytes != null) {
+            m.getHit().increment();
+            r = decode(m, bytes, type);
+        } else {
+            m.getMiss().increment();
+            r = load(m, dbFallback, id);
+        }
+        if (r == null) {
+            setNull(keyPrefix, id, key);
+            return null;
+        }
+        // 2.改写为逻辑过期格式，不再设置TTL
+        this.setWithLogicalExpire(m, key, r, time, unit);
+        pin(key, r, System.currentTimeMillis() + unit.toMillis(time));
+        log.debug("热点key晋升为逻辑过期, key={}", key);
+        return r;
+    }
+
+    /**
+     * 透传模式的热点key查询，与 queryWithHotKey 相同的晋升与降级规则，返回与接口响应格式一致的 JSON 字节
+     * 普通key走透传的缓存穿透方案；热点key晋升为按响应格式写入的逻辑过期数据，并把响应字节固定在本地
+     */
+    public <R, ID> RawJson queryRawWithHotKey(
+            String keyPrefix, ID id, Class<R> type, Function<ID, R> dbFallback, Long time, TimeUnit unit) {
+        String key = keyPrefix + id;
+        // 1.记录访问，非热点key走透传的缓存穿透方案
+        if (hotKeyDetector == null || !hotKeyDetector.record(key)) {
+            return queryRawWithPassThrough(keyPrefix, id, type, dbFallback, time, unit);
+        }
+        CacheMetrics.PrefixMetrics m = cacheMetrics.of(keyPrefix);
+        // 2.布隆过滤器判断一定不存在，直接返回
+        RedisBloomFilter bloomFilter = bloomFilterManager.get(keyPrefix);
+        if (bloomFilter != null && !bloomFilter.mightContain(id)) {
+            m.getBloomReject().increment();
+            return null;
+        }
+        // 3.查询本地固定的响应字节，逻辑未过期且未到重新检查时间时直接返回
+        long now = System.currentTimeMillis();
+        Pinned local = pinned.get(key);
+        if (local != null && local.checkAt > now && local.expireAt > now && local.value instanceof RawJson) {
+            m.getHit().increment();
+            m.getLocalHit().increment();
+            return (RawJson) local.value;
+        }
+        // 4.查询redis
+        byte[] bytes = getWithNegative(keyPrefix, id, key);
+        if (bytes != null && bytes.length == 0) {
+            // 命中空值
+            m.getNullHit().increment();
+            return null;
+        }
+        if (CacheEnvelope.isEnvelope(bytes)) {
+            // 5.已是逻辑过期格式，过期时异步重建并返回旧数据
+            CacheEnvelope envelope = CacheEnvelope.wrap(bytes);
+            RawJson raw = readRawLogicalExpire(m, key, id, envelope, type, dbFallback, time, unit);
+            pin(key, raw, envelope.getExpireAt());
+            return raw;
+        }
+        // 6.尚未晋升，同一进程内合并为一次晋升
+        try {
+            return singleFlight.execute("raw:" + key, () -> {
+                R r = promote(m, keyPrefix, key, id, bytes, type, dbFallback, time, unit);
+                if (r == null) {
+                    return null;
+                }
+                RawJson raw = codecRegistry.toResponseJson(codecRegistry.encodeForResponse(r), type);
+                pin(key, raw, System.currentTimeMillis() + unit.toMillis(time));
+                return raw;
+            });
+        } catch (RuntimeException e) {
+            // 数据库异常，返回兜底数据
+            return codecRegistry.toResponseJson(getStale(m, key, e), type);
+        }
+    }
+
+    /**
+     * 定时衰减访问频率，并降级已降温的热点key：
+     * 移除本地固定数据，为Redis中的逻辑过期数据补设TTL，之后按普通key处理
+     */
+    @Scheduled(initialDelayString = "${hmdp.cache.hot-key.decay-interval-ms:10000}",
+            fixedDelayString = "${hmdp.cache.hot-key.decay-interval-ms:10000}")
+    public void decayHotKeys() {
+        if (hotKeyDetector == null) {
+            return;
+        }
+        for (String key : hotKeyDetector.decay()) {
+            pinned.remove(key);
+            try {
+                shardRouter.expire(key, jitter(TimeUnit.SECONDS.toMillis(hotKeyProperties.getDemoteTtlSeconds())), TimeUnit.MILLISECONDS);
+                log.debug("热点key降级, key={}", key);
+            } catch (Exception e) {
+                log.error("热点key降级失败, key={}", key, e);
+            }
+        }
+    }
+
+    /**
+     * 当前热点key：访问频率估算值、晋升时间、是否已固定在本地
+     */
+    public List<Map<String, Object>> hotKeys() {
+        if (hotKeyDetector == null) {
+            return Collections.emptyList();
+        }
+        List<Map<String, Object>> result = new ArrayList<>();
+        hotKeyDetector.getHotKeys().forEach((key, promotedAt) -> {
+            Map<String, Object> item = new LinkedHashMap<>();
+            item.put("key", key);
+            item.put("frequency", hotKeyDetector.frequency(key));
+            item.put("promotedAt", promotedAt);
+            item.put("pinned", pinned.containsKey(key));
+            result.add(item);
+        });
+        result.sort((a, b) -> Integer.compare((int) b.get("frequency"), (int) a.get("frequency")));
+        return result;
+    }
+
     public <R, ID> R queryWithLogicalExpire(
             String keyPrefix, ID id, Class<R> type, Function<ID, R> dbFallback, Long time, TimeUnit unit) {
         String key = keyPrefix + id;
+        CacheMetrics.PrefixMetrics m = cacheMetrics.of(keyPrefix);
         // 1.从redis查询商铺缓存
-        String json = stringRedisTemplate.opsForValue().get(key);
+        byte[] bytes = shardRouter.get(key);
+        return readLogicalExpire(m, key, id, bytes, type, dbFallback, time, unit, false);
+    }
+
+    /**
+     * 解析逻辑过期数据，过期时触发重建，同步与异步查询共用
+     *
+     * @param async 是否在异步回调中调用，是则把抢锁等阻塞操作转到数据库线程池
+     */
+    private <R, ID> R readLogicalExpire(CacheMetrics.PrefixMetrics m, String key, ID id, byte[] bytes,
+            Class<R> type, Function<ID, R> dbFallback, Long time, TimeUnit unit, boolean async) {
         // 2.判断是否存在
-        if (StrUtil.isBlank(json)) {
+        if (bytes == null || bytes.length == 0) {
             // 3.存在，直接返回
+            m.getMiss().increment();
             return null;
         }
-        // 4.命中，需要先把json反序列化为对象
-        RedisData redisData = JSONUtil.toBean(json, RedisData.class);
-        R r = JSONUtil.toBean((JSONObject) redisData.getData(), type);
-        LocalDateTime expireTime = redisData.getExpireTime();
-        // 5.判断是否过期
-        if(expireTime.isAfter(LocalDateTime.now())) {
-            // 5.1.未过期，直接返回店铺信息
+        m.getHit().increment();
+        // 4.命中，历史JSON格式数据按原方式解析
+        if (!CacheEnvelope.isEnvelope(bytes)) {
+            long begin = System.nanoTime();
+            RedisData redisData = JSONUtil.toBean(new String(bytes, StandardCharsets.UTF_8), RedisData.class);
+            R r = JSONUtil.toBean((JSONObject) redisData.getData(), type);
+            m.getDecode().recordSince(begin);
+            if (!redisData.getExpireTime().isAfter(LocalDateTime.now())) {
+                m.getStaleServe().increment();
+                triggerLogicalRebuild(m, key, id, dbFallback, time, unit, async);
+            }
             return r;
         }
-        // 5.2.已过期，需要缓存重建
+        // 5.只读头部判断是否过期
+        CacheEnvelope envelope = CacheEnvelope.wrap(bytes);
+        if (envelope.isExpired(System.currentTimeMillis())) {
+            // 5.2.已过期，需要缓存重建
+            m.getStaleServe().increment();
+            triggerLogicalRebuild(m, key, id, dbFallback, time, unit, async);
+        }
+        // 5.1.返回店铺信息（已过期时返回旧数据）
+        return decodePayload(m, envelope, type);
+    }
+
+    /**
+     * 逻辑过期的透传查询：返回与接口响应格式一致的 JSON 字节，数据为响应格式时直接截取，不做反序列化
+     * 过期时与 queryWithLogicalExpire 一样触发异步重建并返回旧数据
+     *
+     * @return 未命中或不是封装格式时返回null，调用方应回退到 queryWithLogicalExpire
+     */
+    public <R, ID> RawJson queryRawWithLogicalExpire(
+            String keyPrefix, ID id, Class<R> type, Function<ID, R> dbFallback, Long time, TimeUnit unit) {
+        String key = keyPrefix + id;
+        byte[] bytes = shardRouter.get(key);
+        if (!CacheEnvelope.isEnvelope(bytes)) {
+            return null;
+        }
+        return readRawLogicalExpire(cacheMetrics.of(keyPrefix), key, id, CacheEnvelope.wrap(bytes),
+                type, dbFallback, time, unit);
+    }
+
+    private <R, ID> RawJson readRawLogicalExpire(CacheMetrics.PrefixMetrics m, String key, ID id,
+            CacheEnvelope envelope, Class<R> type, Function<ID, R> dbFallback, Long time, TimeUnit unit) {
+        m.getHit().increment();
+        if (envelope.isExpired(System.currentTimeMillis())) {
+            m.getStaleServe().increment();
+            rebuildLogicalExpire(m, key, id, dbFallback, time, unit);
+        }
+        long begin = System.nanoTime();
+        RawJson raw = codecRegistry.toResponseJson(envelope, type);
+        m.getDecode().recordSince(begin);
+        return raw;
+    }
+
+    private <ID> void triggerLogicalRebuild(CacheMetrics.PrefixMetrics m,
+            String key, ID id, Function<ID, ?> dbFallback, Long time, TimeUnit unit, boolean async) {
+        if (!async) {
+            rebuildLogicalExpire(m, key, id, dbFallback, time, unit);
+            return;
+        }
+        // 异步回调运行在 Lettuce 的I/O线程上，抢锁是阻塞调用，转到数据库线程池执行
+        try {
+            dbExecutor.execute(() -> rebuildLogicalExpire(m, key, id, dbFallback, time, unit));
+        } catch (RejectedExecutionException e) {
+            log.warn("数据库线程池已满，放弃本次重建, key={}", key);
+        }
+    }
+
+    private <ID> void rebuildLogicalExpire(
+            CacheMetrics.PrefixMetrics m, String key, ID id, Function<ID, ?> dbFallback, Long time, TimeUnit unit) {
         // 6.缓存重建
         // 6.1.获取互斥锁
         String lockKey = LOCK_SHOP_KEY + id;
         boolean isLock = tryLock(lockKey);
         // 6.2.判断是否获取锁成功
-        if (isLock){
-            // 6.3.成功，开启独立线程，实现缓存重建
-            CACHE_REBUILD_EXECUTOR.submit(() -> {
+        if (!isLock) {
+            m.getLockFail().increment();
+        } else {
+            // 6.3.成功，提交到重建线程池，实现缓存重建
+            boolean accepted = rebuildExecutor.submit(key, hotness(key), () -> {
                 try {
                     // 查询数据库
-                    R newR = dbFallback.apply(id);
-                    // 重建缓存
-                    this.setWithLogicalExpire(key, newR, time, unit);
-                } catch (Exception e) {
-                    throw new RuntimeException(e);
-                }finally {
+                    Object newR = load(m, dbFallback, id);
+                    // 重建缓存，数据已不存在时删除缓存
+                    if (newR == null) {
+                        shardRouter.delete(key);
+                    } else {
+                        this.setWithLogicalExpire(m, key, newR, time, unit);
+                    }
+                    // 本地固定的旧数据失效，下次读取时重新加载
+                    pinned.remove(key);
+                } finally {
                     // 释放锁
                     unlock(lockKey);
                 }
             });
+            // 6.4.未被执行（重复或队列已满），释放锁，本次继续返回旧数据
+            if (!accepted) {
+                unlock(lockKey);
+            }
+        }
+    }
+
+    /**
+     * 批量查询：一次MGET取缓存，未命中的id合并为一次数据库查询，再通过管道批量回写
+     * 与queryWithPassThrough一致，数据库中不存在的id会缓存空值
+     *
+     * @param dbFallback 根据未命中的id批量查询数据库，返回 id -> 数据
+     * @return id -> 数据，按传入顺序排列，不存在的id不包含在结果中
+     */
+    public <R, ID> Map<ID, R> queryBatch(
+            String keyPrefix, Collection<ID> ids, Class<R> type,
+            Function<Collection<ID>, Map<ID, R>> dbFallback, Long time, TimeUnit unit) {
+        Map<ID, R> result = new LinkedHashMap<>();
+        CacheMetrics.PrefixMetrics m = cacheMetrics.of(keyPrefix);
+        // 0.布隆过滤器与一级缓存
+        RedisBloomFilter bloomFilter = bloomFilterManager.get(keyPrefix);
+        List<ID> remaining = collectLocal(m, bloomFilter, keyPrefix, ids, type, result);
+        if (remaining.isEmpty()) {
+            return result;
+        }
+        // 1.一次MGET查询redis
+        List<String> keys = remaining.stream().map(id -> keyPrefix + id).collect(Collectors.toList());
+        List<byte[]> values = shardRouter.multiGet(keys);
+        List<ID> misses = collectCached(m, remaining, keys, values, type, result);
+        if (misses.isEmpty()) {
+            return result;
+        }
+        // 4.未命中的id合并查询数据库，并批量回写
+        loadMisses(m, bloomFilter, keyPrefix, misses, dbFallback, result, time, unit);
+        return result;
+    }
+
+    /**
+     * 批量查询第0步：布隆过滤器与一级缓存，返回仍需查询redis的id
+     */
+    private <R, ID> List<ID> collectLocal(CacheMetrics.PrefixMetrics m, RedisBloomFilter bloomFilter,
+            String keyPrefix, Collection<ID> ids, Class<R> type, Map<ID, R> result) {
+        List<ID> remaining = new ArrayList<>();
+        for (ID id : new LinkedHashSet<>(ids)) {
+            if (bloomFilter != null && !bloomFilter.mightContain(id)) {
+                m.getBloomReject().increment();
+                continue;
+            }
+            R local = getLocal(m, keyPrefix + id, type);
+            result.put(id, local);
+            if (local == null) {
+                remaining.add(id);
+            }
+        }
+        return remaining;
+    }
+
+    /**
+     * 批量查询第2、3步：处理redis返回的数据，返回未命中的id
+     */
+    private <R, ID> List<ID> collectCached(CacheMetrics.PrefixMetrics m,
+            List<ID> remaining, List<String> keys, List<byte[]> values, Class<R> type, Map<ID, R> result) {
+        List<ID> misses = new ArrayList<>();
+        for (int i = 0; i < remaining.size(); i++) {
+            ID id = remaining.get(i);
+            byte[] bytes = values == null ? null : values.get(i);
+            if (bytes != null && bytes.length > 0) {
+                // 2.命中，反序列化
+                m.getHit().increment();
+                R r = decode(m, bytes, type);
+                putLocal(keys.get(i), r);
+                result.put(id, r);
+            } else if (bytes != null) {
+                // 3.命中空值
+                m.getNullHit().increment();
+                result.remove(id);
+            } else {
+                misses.add(id);
+            }
+        }
+        return misses;
+    }
+
+    /**
+     * 批量查询第4、5步：未命中的id合并查询数据库，管道批量回写，数据库中不存在的写入空值
+     */
+    private <R, ID> void loadMisses(CacheMetrics.PrefixMetrics m, RedisBloomFilter bloomFilter, String keyPrefix,
+            List<ID> misses, Function<Collection<ID>, Map<ID, R>> dbFallback, Map<ID, R> result, Long time, TimeUnit unit) {
+        // 4.1.排除空值集合中的id
+        misses = excludeNegative(m, keyPrefix, misses, result);
+        if (misses.isEmpty()) {
+            return;
+        }
+        m.getMiss().add(misses.size());
+        Map<ID, R> loaded = load(m, dbFallback, misses);
+        Map<String, ID> missKeys = new LinkedHashMap<>();
+        misses.forEach(id -> missKeys.put(keyPrefix + id, id));
+        shardRouter.executePipelined(missKeys.keySet(), (connection, key) -> {
+            ID id = missKeys.get(new String(key, StandardCharsets.UTF_8));
+            R r = loaded == null ? null : loaded.get(id);
+            if (r == null) {
+                if (bloomFilter != null) {
+                    bloomFilter.recordFalsePositive();
+                }
+                writeNull(connection, keyPrefix, id, key);
+            } else {
+                connection.pSetEx(key, jitter(unit.toMillis(time)), codecRegistry.encode(r));
+            }
+        });
+        for (ID id : misses) {
+            R r = loaded == null ? null : loaded.get(id);
+            if (r == null) {
+                result.remove(id);
+            } else {
+                putLocal(keyPrefix + id, r);
+                result.put(id, r);
+            }
+        }
+    }
+
+    /**
+     * 异步的缓存穿透查询
+     * redis命令通过 Lettuce 异步连接发出，等待期间不占用调用线程；未命中时在数据库线程池中查询并回写。
+     * 异步查询返回兜底数据时无法在响应头中标记
+     */
+    public <R, ID> CompletableFuture<R> queryWithPassThroughAsync(
+            String keyPrefix, ID id, Class<R> type, Function<ID, R> dbFallback, Long time, TimeUnit unit) {
+        String key = keyPrefix + id;
+        CacheMetrics.PrefixMetrics m = cacheMetrics.of(keyPrefix);
+        // 0.布隆过滤器判断一定不存在，直接返回
+        RedisBloomFilter bloomFilter = bloomFilterManager.get(keyPrefix);
+        if (bloomFilter != null && !bloomFilter.mightContain(id)) {
+            m.getBloomReject().increment();
+            return CompletableFuture.completedFuture(null);
+        }
+        // 0.1.查询一级缓存
+        R local = getLocal(m, key, type);
+        if (local != null) {
+            return CompletableFuture.completedFuture(local);
+        }
+        // 1.异步查询redis
+        return getWithNegativeAsync(keyPrefix, id, key).thenCompose(bytes -> {
+            if (bytes != null && bytes.length > 0) {
+                // 2.命中，反序列化
+                m.getHit().increment();
+                R r = decode(m, bytes, type);
+                putLocal(key, r);
+                return CompletableFuture.completedFuture(r);
+            }
+            if (bytes != null) {
+                // 3.命中空值
+                m.getNullHit().increment();
+                return CompletableFuture.completedFuture(null);
+            }
+            // 4.未命中，转到数据库线程池查询并回写
+            m.getMiss().increment();
+            return CompletableFuture.supplyAsync(() -> {
+                try {
+                    return loadAndCache(m, bloomFilter, keyPrefix, id, type, dbFallback, time, unit);
+                } finally {
+                    CacheStaleHolder.remove();
+                }
+            }, dbExecutor);
+        });
+    }
+
+    /**
+     * 异步的逻辑过期查询，过期时重建在数据库线程池中触发
+     */
+    public <R, ID> CompletableFuture<R> queryWithLogicalExpireAsync(
+            String keyPrefix, ID id, Class<R> type, Function<ID, R> dbFallback, Long time, TimeUnit unit) {
+        String key = keyPrefix + id;
+        CacheMetrics.PrefixMetrics m = cacheMetrics.of(keyPrefix);
+        return shardRouter.getAsync(key)
+                .thenApply(bytes -> readLogicalExpire(m, key, id, bytes, type, dbFallback, time, unit, true));
+    }
+
+    /**
+     * 异步的批量查询，各分片的MGET并行发出，未命中的id在数据库线程池中合并查询
+     */
+    public <R, ID> CompletableFuture<Map<ID, R>> queryBatchAsync(
+            String keyPrefix, Collection<ID> ids, Class<R> type,
+            Function<Collection<ID>, Map<ID, R>> dbFallback, Long time, TimeUnit unit) {
+        Map<ID, R> result = new LinkedHashMap<>();
+        CacheMetrics.PrefixMetrics m = cacheMetrics.of(keyPrefix);
+        // 0.布隆过滤器与一级缓存
+        RedisBloomFilter bloomFilter = bloomFilterManager.get(keyPrefix);
+        List<ID> remaining = collectLocal(m, bloomFilter, keyPrefix, ids, type, result);
+        if (remaining.isEmpty()) {
+            return CompletableFuture.completedFuture(result);
+        }
+        // 1.异步MGET
+        List<String> keys = remaining.stream().map(id -> keyPrefix + id).collect(Collectors.toList());
+        return shardRouter.multiGetAsync(keys).thenCompose(values -> {
+            List<ID> misses = collectCached(m, remaining, keys, values, type, result);
+            if (misses.isEmpty()) {
+                return CompletableFuture.completedFuture(result);
+            }
+            // 4.未命中的id转到数据库线程池合并查询，并批量回写
+            return CompletableFuture.supplyAsync(() -> {
+                loadMisses(m, bloomFilter, keyPrefix, misses, dbFallback, result, time, unit);
+                return result;
+            }, dbExecutor);
+        });
+    }
+
+    /**
+     * 概率提前过期（XFetch）
+     * 每次读取时以 now - delta * beta * ln(rand) >= expireTime 判断是否提前刷新，
+     * 越接近过期、重建越慢，提前刷新的概率越高，热点key在过期前就会被某个请求平滑刷新
+     */
+    public <R, ID> R queryWithEarlyExpire(
+            String keyPrefix, ID id, Class<R> type, Function<ID, R> dbFallback, Long time, TimeUnit unit) {
+        String key = keyPrefix + id;
+        CacheMetrics.PrefixMetrics m = cacheMetrics.of(keyPrefix);
+        // 1.从redis查询缓存
+        byte[] bytes = getWithNegative(keyPrefix, id, key);
+        // 2.未命中，同步重建（同一进程内合并）
+        if (bytes == null) {
+            m.getMiss().increment();
+            return singleFlight.execute("early:" + key, () -> refreshEarly(m, keyPrefix, key, id, dbFallback, time, unit));
+        }
+        // 3.命中空值
+        if (bytes.length == 0) {
+            m.getNullHit().increment();
+            return null;
+        }
+        // 4.命中，只读头部计算是否需要提前刷新
+        if (!CacheEnvelope.isEnvelope(bytes)) {
+            // 不是封装格式（历史数据），同步重建
+            m.getMiss().increment();
+            return singleFlight.execute("early:" + key, () -> refreshEarly(m, keyPrefix, key, id, dbFallback, time, unit));
+        }
+        m.getHit().increment();
+        CacheEnvelope envelope = CacheEnvelope.wrap(bytes);
+        long delta = envelope.getDelta();
+        long remaining = envelope.getExpireAt() - System.currentTimeMillis();
+        double gap = -delta * xfetchBeta * Math.log(ThreadLocalRandom.current().nextDouble());
+        if (gap >= remaining) {
+            // 5.命中提前刷新，提交到重建线程池（同一key排队中时不重复提交），当前请求直接返回旧值
+            rebuildExecutor.submit(key, hotness(key), () -> refreshEarly(m, keyPrefix, key, id, dbFallback, time, unit));
+        }
+        return decodePayload(m, envelope, type);
+    }
+
+    private <R, ID> R refreshEarly(CacheMetrics.PrefixMetrics m, String keyPrefix,
+            String key, ID id, Function<ID, R> dbFallback, Long time, TimeUnit unit) {
+        // 查询数据库并记录耗时
+        long begin = System.currentTimeMillis();
+        R r = load(m, dbFallback, id);
+        long delta = System.currentTimeMillis() - begin;
+        if (r == null) {
+            setNull(keyPrefix, id, key);
+            return null;
         }
-        // 6.4.返回过期的商铺信息
+        this.setWithEarlyExpire(key, r, delta, time, unit);
         return r;
     }
 
     public <R, ID> R queryWithMutex(
             String keyPrefix, ID id, Class<R> type, Function<ID, R> dbFallback, Long time, TimeUnit unit) {
         String key = keyPrefix + id;
+        CacheMetrics.PrefixMetrics m = cacheMetrics.of(keyPrefix);
+        // 0.查询一级缓存
+        R local = getLocal(m, key, type);
+        if (local != null) {
+            return local;
+        }
         // 1.从redis查询商铺缓存
-        String shopJson = stringRedisTemplate.opsForValue().get(key);
+        byte[] bytes = getWithNegative(keyPrefix, id, key);
         // 2.判断是否存在
-        if (StrUtil.isNotBlank(shopJson)) {
+        if (bytes != null && bytes.length > 0) {
             // 3.存在，直接返回
-            return JSONUtil.toBean(shopJson, type);
+            m.getHit().increment();
+            R r = decode(m, bytes, type);
+            putLocal(key, r);
+            return r;
         }
         // 判断命中的是否是空值
-        if (shopJson != null) {
+        if (bytes != null) {
+            m.getNullHit().increment();
             // 返回一个错误信息
             return null;
         }
 
-        // 4.实现缓存重建
-        // 4.1.获取互斥锁
-        String lockKey = LOCK_SHOP_KEY + id;
-        R r = null;
+        // 4.实现缓存重建，同一进程内对同一key的并发未命中合并为一次重建
+        m.getMiss().increment();
         try {
-            boolean isLock = tryLock(lockKey);
-            // 4.2.判断是否获取成功
-            if (!isLock) {
-                // 4.3.获取锁失败，休眠并重试
-                Thread.sleep(50);
-                return queryWithMutex(keyPrefix, id, type, dbFallback, time, unit);
-            }
-            // 4.4.获取锁成功，根据id查询数据库
-            r = dbFallback.apply(id);
-            // 5.不存在，返回错误
-            if (r == null) {
-                // 将空值写入redis
-                stringRedisTemplate.opsForValue().set(key, "", CACHE_NULL_TTL, TimeUnit.MINUTES);
-                // 返回错误信息
+            return singleFlight.execute("mutex:" + key, () -> rebuildWithMutex(m, keyPrefix, key, id, type, dbFallback, time, unit));
+        } catch (RuntimeException e) {
+            // 数据库异常或等待重建超时，返回兜底数据
+            return decode(m, getStale(m, key, e), type);
+        }
+    }
+
+    private <R, ID> R rebuildWithMutex(CacheMetrics.PrefixMetrics m, String keyPrefix,
+            String key, ID id, Class<R> type, Function<ID, R> dbFallback, Long time, TimeUnit unit) {
+        String lockKey = LOCK_SHOP_KEY + id;
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(LOCK_SHOP_TTL * 2);
+        while (true) {
+            // 4.1.先监听锁释放，再尝试获取互斥锁，避免错过释放通知
+            CompletableFuture<Void> released = lockReleaseNotifier.listen(lockKey);
+            if (tryLock(lockKey)) {
+                lockReleaseNotifier.cancel(lockKey, released);
+                try {
+                    // 4.2.获取锁成功，再次检查缓存，可能已被其它实例重建
+                    byte[] bytes = getWithNegative(keyPrefix, id, key);
+                    if (bytes != null) {
+                        return bytes.length == 0 ? null : decode(m, bytes, type);
+                    }
+                    // 4.3.根据id查询数据库
+                    R r = load(m, dbFallback, id);
+                    // 5.不存在，返回错误
+                    if (r == null) {
+                        // 将空值写入redis
+                        setNull(keyPrefix, id, key);
+                        // 返回错误信息
+                        return null;
+                    }
+                    // 6.存在，写入redis
+                    this.set(m, key, r, time, unit);
+                    putLocal(key, r);
+                    return r;
+                } finally {
+                    // 7.释放锁
+                    unlock(lockKey);
+                }
+            }
+            // 4.4.获取锁失败，检查持锁方是否已完成重建
+            m.getLockFail().increment();
+            byte[] bytes = getWithNegative(keyPrefix, id, key);
+            if (bytes != null) {
+                lockReleaseNotifier.cancel(lockKey, released);
+                return bytes.length == 0 ? null : decode(m, bytes, type);
+            }
+            if (System.currentTimeMillis() >= deadline) {
+                lockReleaseNotifier.cancel(lockKey, released);
+                throw new RuntimeException("缓存重建超时, key=" + key);
+            }
+            // 4.5.等待锁释放通知后重试；持锁方宕机时锁自动过期，超时后同样重试
+            lockReleaseNotifier.await(lockKey, released, LOCK_WAIT_MILLIS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * 统计某个前缀下的key在未来各时间段内的过期数量，用于确认TTL是否足够分散
+     * 使用SCAN遍历（最多maxKeys个），并通过管道批量查询PTTL
+     *
+     * @param keyPrefix     缓存key前缀
+     * @param bucketSeconds 每个时间段的秒数
+     * @param buckets       时间段个数
+     * @param maxKeys       最多采样的key数量
+     */
+    public Map<String, Object> expiryHistogram(String keyPrefix, long bucketSeconds, int buckets, int maxKeys) {
+        if (bucketSeconds <= 0 || buckets <= 0 || maxKeys <= 0) {
+            throw new IllegalArgumentException("bucketSeconds、buckets、maxKeys必须大于0");
+        }
+        List<Object> ttls = new ArrayList<>();
+        for (RedisTemplate<String, byte[]> shard : shardRouter.getShards().values()) {
+            int limit = maxKeys - ttls.size();
+            if (limit <= 0) {
+                break;
+            }
+            // 1.逐个分片扫描key
+            List<byte[]> keys = shard.execute((RedisCallback<List<byte[]>>) connection -> {
+                List<byte[]> result = new ArrayList<>();
+                ScanOptions options = ScanOptions.scanOptions().match(keyPrefix + "*").count(1000).build();
+                try (Cursor<byte[]> cursor = connection.scan(options)) {
+                    while (cursor.hasNext() && result.size() < limit) {
+                        result.add(cursor.next());
+                    }
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+                return result;
+            });
+            if (keys == null || keys.isEmpty()) {
+                continue;
+            }
+            // 2.批量查询剩余存活时间
+            ttls.addAll(shard.executePipelined((RedisCallback<Object>) connection -> {
+                for (byte[] key : keys) {
+                    connection.pTtl(key);
+                }
                 return null;
+            }));
+        }
+        // 3.按时间段计数
+        long[] counts = new long[buckets];
+        long noTtl = 0, beyond = 0;
+        long bucketMillis = TimeUnit.SECONDS.toMillis(bucketSeconds);
+        for (Object ttl : ttls) {
+            long millis = ttl == null ? -2 : (Long) ttl;
+            if (millis < 0) {
+                // -1：未设置TTL（逻辑过期）；-2：扫描后已过期
+                noTtl += millis == -1 ? 1 : 0;
+                continue;
             }
-            // 6.存在，写入redis
-            this.set(key, r, time, unit);
-        } catch (InterruptedException e) {
-            throw new RuntimeException(e);
-        }finally {
-            // 7.释放锁
-            unlock(lockKey);
+            long index = millis / bucketMillis;
+            if (index < buckets) {
+                counts[(int) index]++;
+            } else {
+                beyond++;
+            }
+        }
+        Map<String, Object> histogram = new LinkedHashMap<>();
+        Map<String, Long> bucketCounts = new LinkedHashMap<>();
+        for (int i = 0; i < buckets; i++) {
+            bucketCounts.put(i * bucketSeconds + "s", counts[i]);
+        }
+        histogram.put("prefix", keyPrefix);
+        histogram.put("scanned", ttls.size());
+        histogram.put("buckets", bucketCounts);
+        histogram.put("beyond", beyond);
+        histogram.put("noTtl", noTtl);
+        return histogram;
+    }
+
+    /**
+     * 按配置为TTL追加随机值，以毫秒计算，亚秒级的TTL不会被截断为0
+     */
+    private long jitter(long millis) {
+        switch (jitter.getMode()) {
+            case UNIFORM:
+                return millis + ThreadLocalRandom.current().nextLong(TimeUnit.SECONDS.toMillis(jitter.getMaxSeconds()) + 1);
+            case PROPORTIONAL:
+                long bound = (long) (millis * jitter.getRatio());
+                return millis + (bound > 0 ? ThreadLocalRandom.current().nextLong(bound + 1) : 0);
+            default:
+                return millis;
+        }
+    }
+
+    /**
+     * key的访问热度，作为重建优先级
+     */
+    private int hotness(String key) {
+        return hotKeyDetector == null ? 0 : hotKeyDetector.frequency(key);
+    }
+
+    private void invalidateLocal(String key) {
+        pinned.remove(key);
+        if (localCache != null) {
+            localCache.invalidate(key);
+            localCache.invalidate(RAW_LOCAL_PREFIX + key);
+        }
+    }
+
+    private void pin(String key, Object value, long expireAt) {
+        if (hotKeyDetector.isHot(key)) {
+            long checkAt = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(hotKeyProperties.getPinSeconds());
+            pinned.put(key, new Pinned(value, expireAt, checkAt));
+        }
+    }
+
+    private static class Pinned {
+        private final Object value;
+        /**
+         * 逻辑过期时间
+         */
+        private final long expireAt;
+        /**
+         * 重新检查Redis的时间，兜底其它实例重建后本地数据不更新的情况
+         */
+        private final long checkAt;
+
+        private Pinned(Object value, long expireAt, long checkAt) {
+            this.value = value;
+            this.expireAt = expireAt;
+            this.checkAt = checkAt;
+        }
+    }
+
+    private <R> R getLocal(String key, Class<R> type) {
+        if (localCache == null) {
+            return null;
+        }
+        Object value = localCache.get(key);
+        return type.isInstance(value) ? type.cast(value) : null;
+    }
+
+    private <R> R getLocal(CacheMetrics.PrefixMetrics m, String key, Class<R> type) {
+        R r = getLocal(key, type);
+        if (r != null) {
+            m.getHit().increment();
+            m.getLocalHit().increment();
         }
-        // 8.返回
         return r;
     }
 
+    private <R> R decode(CacheMetrics.PrefixMetrics m, byte[] bytes, Class<R> type) {
+        long begin = System.nanoTime();
+        R r = codecRegistry.decode(bytes, type);
+        m.getDecode().recordSince(begin);
+        return r;
+    }
+
+    private <R> R decodePayload(CacheMetrics.PrefixMetrics m, CacheEnvelope envelope, Class<R> type) {
+        long begin = System.nanoTime();
+        R r = codecRegistry.decodePayload(envelope, type);
+        m.getDecode().recordSince(begin);
+        return r;
+    }
+
+    /**
+     * 查询数据库，记录耗时；启用熔断时，熔断期间直接失败，不再访问数据库
+     */
+    private <R, ID> R load(CacheMetrics.PrefixMetrics m, Function<ID, R> dbFallback, ID id) {
+        if (dbBreaker != null && !dbBreaker.tryAcquire()) {
+            m.getBreakerReject().increment();
+            throw new RuntimeException("数据库查询已熔断");
+        }
+        long begin = System.nanoTime();
+        try {
+            R r = dbFallback.apply(id);
+            if (dbBreaker != null) {
+                dbBreaker.onSuccess(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - begin));
+            }
+            return r;
+        } catch (RuntimeException e) {
+            if (dbBreaker != null) {
+                dbBreaker.onFailure();
+            }
+            throw e;
+        } finally {
+            m.getDbFallback().recordSince(begin);
+        }
+    }
+
+    /**
+     * 查询缓存，同一次往返中检查空值集合
+     * 命中空值集合时返回 NULL_VALUE，与空字符串key的处理方式一致
+     */
+    private <ID> byte[] getWithNegative(String keyPrefix, ID id, String key) {
+        if (negative == null) {
+            return shardRouter.get(key);
+        }
+        long bucket = currentBucket();
+        byte[] member = String.valueOf(id).getBytes(StandardCharsets.UTF_8);
+        byte[] current = negativeKey(keyPrefix, id, bucket);
+        byte[] previous = negativeKey(keyPrefix, id, bucket - 1);
+        // 空值集合与缓存key在同一个节点上，一次管道完成
+        List<Object> results = shardRouter.executePipelined(key, (RedisCallback<Object>) connection -> {
+            connection.get(key.getBytes(StandardCharsets.UTF_8));
+            connection.sIsMember(current, member);
+            connection.sIsMember(previous, member);
+            return null;
+        });
+        byte[] bytes = (byte[]) results.get(0);
+        if (bytes != null) {
+            return bytes;
+        }
+        if (Boolean.TRUE.equals(results.get(1)) || Boolean.TRUE.equals(results.get(2))) {
+            return NULL_VALUE;
+        }
+        // 分片迁移期间回读旧节点
+        return shardRouter.isRebalancing() ? shardRouter.get(key) : null;
+    }
+
+    /**
+     * 异步查询缓存，空值集合的检查与GET连续发出，在同一条连接上自动流水线执行
+     */
+    private <ID> CompletableFuture<byte[]> getWithNegativeAsync(String keyPrefix, ID id, String key) {
+        CompletableFuture<byte[]> value = shardRouter.getAsync(key);
+        if (negative == null) {
+            return value;
+        }
+        long bucket = currentBucket();
+        byte[] member = String.valueOf(id).getBytes(StandardCharsets.UTF_8);
+        RedisClusterAsyncCommands<byte[], byte[]> commands = shardRouter.async(key);
+        CompletableFuture<Boolean> inCurrent =
+                commands.sismember(negativeKey(keyPrefix, id, bucket), member).toCompletableFuture();
+        CompletableFuture<Boolean> inPrevious =
+                commands.sismember(negativeKey(keyPrefix, id, bucket - 1), member).toCompletableFuture();
+        CompletableFuture<Boolean> isNull = inCurrent.thenCombine(inPrevious,
+                (current, previous) -> Boolean.TRUE.equals(current) || Boolean.TRUE.equals(previous));
+        return value.thenCombine(isNull, (bytes, nullHit) -> bytes != null ? bytes : (nullHit ? NULL_VALUE : null));
+    }
+
+    /**
+     * 缓存空值：启用分桶集合时把id加入当前时间桶的集合，集合整体过期；否则写入空字符串key
+     */
+    private <ID> void setNull(String keyPrefix, ID id, String key) {
+        if (negative == null) {
+            shardRouter.set(key, NULL_VALUE, CACHE_NULL_TTL, TimeUnit.MINUTES);
+            return;
+        }
+        byte[] rawKey = key.getBytes(StandardCharsets.UTF_8);
+        shardRouter.executePipelined(key, (RedisCallback<Object>) connection -> {
+            writeNull(connection, keyPrefix, id, rawKey);
+            return null;
+        });
+    }
+
+    /**
+     * 在管道中写入空值，与 setNull 的格式一致，批量回写时使用
+     */
+    private <ID> void writeNull(RedisConnection connection, String keyPrefix, ID id, byte[] rawKey) {
+        if (negative == null) {
+            connection.setEx(rawKey, TimeUnit.MINUTES.toSeconds(CACHE_NULL_TTL), NULL_VALUE);
+            return;
+        }
+        long bucket = currentBucket();
+        byte[] setKey = negativeKey(keyPrefix, id, bucket);
+        // 当前桶在下下个桶开始时过期，id存活 1~2 个桶长
+        connection.sAdd(setKey, String.valueOf(id).getBytes(StandardCharsets.UTF_8));
+        connection.expireAt(setKey, (bucket + 2) * negative.getBucketSeconds());
+    }
+
+    /**
+     * 批量查询中MGET未命中的id，排除命中空值集合的部分（计为空值命中），返回仍需查询数据库的id
+     */
+    private <R, ID> List<ID> excludeNegative(CacheMetrics.PrefixMetrics m, String keyPrefix,
+            List<ID> misses, Map<ID, R> result) {
+        if (negative == null) {
+            return misses;
+        }
+        long bucket = currentBucket();
+        List<String> keys = misses.stream().map(id -> keyPrefix + id).collect(Collectors.toList());
+        List<List<Object>> members = shardRouter.executePipelined(keys, 2, (connection, key) -> {
+            String id = new String(key, StandardCharsets.UTF_8).substring(keyPrefix.length());
+            byte[] member = id.getBytes(StandardCharsets.UTF_8);
+            connection.sIsMember(negativeKey(keyPrefix, id, bucket), member);
+            connection.sIsMember(negativeKey(keyPrefix, id, bucket - 1), member);
+        });
+        List<ID> remaining = new ArrayList<>(misses.size());
+        for (int i = 0; i < misses.size(); i++) {
+            List<Object> hits = members.get(i);
+            if (Boolean.TRUE.equals(hits.get(0)) || Boolean.TRUE.equals(hits.get(1))) {
+                m.getNullHit().increment();
+                result.remove(misses.get(i));
+            } else {
+                remaining.add(misses.get(i));
+            }
+        }
+        return remaining;
+    }
+
+    /**
+     * 清除id的空值缓存，新增数据后调用
+     */
+    public <ID> void deleteNull(String keyPrefix, ID id) {
+        String key = keyPrefix + id;
+        if (negative == null) {
+            shardRouter.delete(key);
+            return;
+        }
+        long bucket = currentBucket();
+        byte[] member = String.valueOf(id).getBytes(StandardCharsets.UTF_8);
+        byte[] current = negativeKey(keyPrefix, id, bucket);
+        byte[] previous = negativeKey(keyPrefix, id, bucket - 1);
+        shardRouter.executePipelined(key, (RedisCallback<Object>) connection -> {
+            connection.sRem(current, member);
+            connection.sRem(previous, member);
+            connection.del(key.getBytes(StandardCharsets.UTF_8));
+            return null;
+        });
+    }
+
+    private long currentBucket() {
+        return System.currentTimeMillis() / TimeUnit.SECONDS.toMillis(negative.getBucketSeconds());
+    }
+
+    /**
+     * 空值集合key：null:{keyPrefix}{时间桶}:{分段}，按id哈希分段，避免单个集合过大
+     */
+    private <ID> byte[] negativeKey(String keyPrefix, ID id, long bucket) {
+        int stripe = Math.floorMod(String.valueOf(id).hashCode(), Math.max(1, negative.getStripes()));
+        return (CACHE_NULL_KEY + keyPrefix + bucket + ":" + stripe).getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 写入兜底副本，存活时间远大于正常TTL
+     */
+    private void setStale(String key, byte[] bytes) {
+        if (staleIfError == null) {
+            return;
+        }
+        try {
+            shardRouter.set(CACHE_STALE_KEY + key, bytes, staleIfError.getGraceSeconds(), TimeUnit.SECONDS);
+        } catch (Exception e) {
+            log.warn("兜底副本写入失败, key={}", key, e);
+        }
+    }
+
+    /**
+     * 读取兜底副本，并标记本次请求返回的是过期数据
+     *
+     * @param cause 数据库查询的异常，没有兜底副本时原样抛出
+     */
+    private byte[] getStale(CacheMetrics.PrefixMetrics m, String key, RuntimeException cause) {
+        if (staleIfError == null) {
+            throw cause;
+        }
+        byte[] bytes = shardRouter.get(CACHE_STALE_KEY + key);
+        if (bytes == null || bytes.length == 0) {
+            throw cause;
+        }
+        m.getStaleIfError().increment();
+        CacheStaleHolder.markStale();
+        log.warn("数据库查询失败，返回兜底数据, key={}, cause={}", key, cause.toString());
+        return bytes;
+    }
+
+    /**
+     * 数据库熔断器状态
+     */
+    public Map<String, Object> breakerStats() {
+        return dbBreaker == null ? Collections.emptyMap() : dbBreaker.stats();
+    }
+
+    private void putLocal(String key, Object value) {
+        if (localCache != null) {
+            localCache.put(key, value);
+        }
+    }
+
     private boolean tryLock(String key) {
         Boolean flag = stringRedisTemplate.opsForValue().setIfAbsent(key, "1", 10, TimeUnit.SECONDS);
         return BooleanUtil.isTrue(flag);
@@ -179,6 +1411,7 @@ public class CacheClient {
 
     private void unlock(String key) {
         stringRedisTemplate.delete(key);
+        lockReleaseNotifier.publish(key);
     }
 
 }
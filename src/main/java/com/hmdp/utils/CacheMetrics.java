@@ -0,0 +1,113 @@
+package com.hmdp.utils;
+
+import lombok.Getter;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 缓存指标，按缓存key前缀分别统计
+ * 计数器使用 LongAdder，高并发下各线程写入不同的分段，避免争用同一个计数器
+ *
+ * @className: CacheMetrics
+ * @author: sutianyu
+ * @date: 2023-02-21 10:20
+ **/
+@Component
+public class CacheMetrics {
+
+    private final Map<String, PrefixMetrics> metrics = new ConcurrentHashMap<>();
+
+    public PrefixMetrics of(String keyPrefix) {
+        PrefixMetrics m = metrics.get(keyPrefix);
+        return m != null ? m : metrics.computeIfAbsent(keyPrefix, k -> new PrefixMetrics());
+    }
+
+    public Map<String, Object> snapshot() {
+        Map<String, Object> snapshot = new TreeMap<>();
+        metrics.forEach((keyPrefix, m) -> snapshot.put(keyPrefix, m.snapshot()));
+        return snapshot;
+    }
+
+    public void reset() {
+        metrics.clear();
+    }
+
+    @Getter
+    public static class PrefixMetrics {
+        /**
+         * 命中（一级缓存或Redis）
+         */
+        private final LongAdder hit = new LongAdder();
+        /**
+         * 其中命中一级缓存的次数
+         */
+        private final LongAdder localHit = new LongAdder();
+        /**
+         * 未命中，需要查询数据库
+         */
+        private final LongAdder miss = new LongAdder();
+        /**
+         * 命中空值
+         */
+        private final LongAdder nullHit = new LongAdder();
+        /**
+         * 布隆过滤器拦截
+         */
+        private final LongAdder bloomReject = new LongAdder();
+        /**
+         * 返回已逻辑过期的旧数据
+         */
+        private final LongAdder staleServe = new LongAdder();
+        /**
+         * 数据库查询失败时返回兜底数据
+         */
+        private final LongAdder staleIfError = new LongAdder();
+        /**
+         * 数据库熔断期间被拒绝的查询
+         */
+        private final LongAdder breakerReject = new LongAdder();
+        /**
+         * 获取重建锁失败
+         */
+        private final LongAdder lockFail = new LongAdder();
+        /**
+         * 查询数据库耗时
+         */
+        private final LatencyHistogram dbFallback = new LatencyHistogram();
+        /**
+         * 反序列化耗时
+         */
+        private final LatencyHistogram decode = new LatencyHistogram();
+        /**
+         * 序列化耗时
+         */
+        private final LatencyHistogram encode = new LatencyHistogram();
+
+        private Map<String, Object> snapshot() {
+            Map<String, Object> snapshot = new LinkedHashMap<>();
+            long hits = hit.sum();
+            long misses = miss.sum();
+            long nullHits = nullHit.sum();
+            long total = hits + misses + nullHits;
+            snapshot.put("hit", hits);
+            snapshot.put("localHit", localHit.sum());
+            snapshot.put("miss", misses);
+            snapshot.put("nullHit", nullHits);
+            snapshot.put("hitRatio", total == 0 ? 0 : (double) (hits + nullHits) / total);
+            snapshot.put("bloomReject", bloomReject.sum());
+            snapshot.put("staleServe", staleServe.sum());
+            snapshot.put("staleIfError", staleIfError.sum());
+            snapshot.put("breakerReject", breakerReject.sum());
+            snapshot.put("lockFail", lockFail.sum());
+            snapshot.put("dbFallback", dbFallback.snapshot());
+            snapshot.put("decode", decode.snapshot());
+            snapshot.put("encode", encode.snapshot());
+            return snapshot;
+        }
+    }
+}
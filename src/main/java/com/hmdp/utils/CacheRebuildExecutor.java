@@ -0,0 +1,200 @@
+package com.hmdp.utils;
+
+import com.hmdp.config.CacheProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 缓存重建线程池（全局共享）
+ * 1.队列有界：排队任务数达到上限后按拒绝策略处理，数据库变慢时不会无限堆积
+ * 2.按key去重：同一个key已在排队或执行中时不再重复提交
+ * 3.按热度排序：访问频率高的key优先重建，同热度按提交顺序
+ * 4.异常记录日志并计数，不会被线程池吞掉
+ *
+ * @className: CacheRebuildExecutor
+ * @author: sutianyu
+ * @date: 2023-02-20 10:40
+ **/
+@Slf4j
+@Component
+public class CacheRebuildExecutor {
+
+    private final ThreadPoolExecutor executor;
+
+    private final int queueCapacity;
+
+    private final CacheProperties.RejectPolicy rejectPolicy;
+
+    /**
+     * 排队或执行中的key
+     */
+    private final Set<String> pendingKeys = ConcurrentHashMap.newKeySet();
+
+    /**
+     * 排队中的任务数
+     */
+    private final AtomicInteger queued = new AtomicInteger();
+
+    private final AtomicLong sequence = new AtomicLong();
+
+    private final LongAdder submitted = new LongAdder();
+
+    private final LongAdder deduplicated = new LongAdder();
+
+    private final LongAdder rejected = new LongAdder();
+
+    private final LongAdder callerRuns = new LongAdder();
+
+    private final LongAdder completed = new LongAdder();
+
+    private final LongAdder failed = new LongAdder();
+
+    private final LongAdder waitMillis = new LongAdder();
+
+    private final LongAdder runMillis = new LongAdder();
+
+    private final LongAccumulator maxWaitMillis = new LongAccumulator(Math::max, 0);
+
+    private final LongAccumulator maxRunMillis = new LongAccumulator(Math::max, 0);
+
+    public CacheRebuildExecutor(CacheProperties cacheProperties) {
+        CacheProperties.Rebuild properties = cacheProperties.getRebuild();
+        this.queueCapacity = properties.getQueueCapacity();
+        this.rejectPolicy = properties.getRejectPolicy();
+        AtomicInteger threadIndex = new AtomicInteger();
+        // 优先队列本身无界，容量由 queued 计数控制；只有核心线程，不会扩容
+        this.executor = new ThreadPoolExecutor(properties.getThreads(), properties.getThreads(),
+                0L, TimeUnit.MILLISECONDS, new PriorityBlockingQueue<>(),
+                r -> {
+                    Thread thread = new Thread(r, "cache-rebuild-" + threadIndex.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+    }
+
+    /**
+     * 提交重建任务
+     *
+     * @param key      缓存key，用于去重
+     * @param priority 优先级（key的访问热度），越大越先执行
+     * @return 任务是否会被执行；已有相同key的任务或被拒绝时返回false，调用方继续返回旧数据并释放已获取的资源
+     */
+    public boolean submit(String key, int priority, Runnable task) {
+        // 1.去重
+        if (!pendingKeys.add(key)) {
+            deduplicated.increment();
+            return false;
+        }
+        // 2.队列已满，按拒绝策略处理
+        if (queued.incrementAndGet() > queueCapacity) {
+            queued.decrementAndGet();
+            if (rejectPolicy == CacheProperties.RejectPolicy.CALLER_RUNS) {
+                // 由调用线程同步重建，对请求方形成反压
+                callerRuns.increment();
+                run(key, task, System.currentTimeMillis());
+                return true;
+            }
+            // 放弃本次重建，调用方继续返回旧数据
+            pendingKeys.remove(key);
+            rejected.increment();
+            log.warn("缓存重建队列已满，放弃重建, key={}", key);
+            return false;
+        }
+        // 3.入队
+        submitted.increment();
+        long enqueuedAt = System.currentTimeMillis();
+        try {
+            executor.execute(new RebuildTask(priority, sequence.incrementAndGet(), () -> {
+                queued.decrementAndGet();
+                run(key, task, enqueuedAt);
+            }));
+        } catch (RuntimeException e) {
+            // 线程池已关闭
+            queued.decrementAndGet();
+            pendingKeys.remove(key);
+            rejected.increment();
+            return false;
+        }
+        return true;
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        long done = completed.sum() + failed.sum();
+        stats.put("queueDepth", queued.get());
+        stats.put("queueCapacity", queueCapacity);
+        stats.put("active", executor.getActiveCount());
+        stats.put("submitted", submitted.sum());
+        stats.put("deduplicated", deduplicated.sum());
+        stats.put("rejected", rejected.sum());
+        stats.put("callerRuns", callerRuns.sum());
+        stats.put("completed", completed.sum());
+        stats.put("failed", failed.sum());
+        stats.put("avgWaitMillis", done == 0 ? 0 : waitMillis.sum() / done);
+        stats.put("maxWaitMillis", maxWaitMillis.get());
+        stats.put("avgRunMillis", done == 0 ? 0 : runMillis.sum() / done);
+        stats.put("maxRunMillis", maxRunMillis.get());
+        return stats;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    private void run(String key, Runnable task, long enqueuedAt) {
+        long begin = System.currentTimeMillis();
+        long wait = begin - enqueuedAt;
+        waitMillis.add(wait);
+        maxWaitMillis.accumulate(wait);
+        try {
+            task.run();
+            completed.increment();
+        } catch (Exception e) {
+            failed.increment();
+            log.error("缓存重建失败, key={}", key, e);
+        } finally {
+            pendingKeys.remove(key);
+            long cost = System.currentTimeMillis() - begin;
+            runMillis.add(cost);
+            maxRunMillis.accumulate(cost);
+        }
+    }
+
+    private static class RebuildTask implements Runnable, Comparable<RebuildTask> {
+        private final int priority;
+        private final long sequence;
+        private final Runnable delegate;
+
+        private RebuildTask(int priority, long sequence, Runnable delegate) {
+            this.priority = priority;
+            this.sequence = sequence;
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void run() {
+            delegate.run();
+        }
+
+        @Override
+        public int compareTo(RebuildTask other) {
+            // 热度高的在前，热度相同时先提交的在前
+            int result = Integer.compare(other.priority, priority);
+            return result != 0 ? result : Long.compare(sequence, other.sequence);
+        }
+    }
+}
@@ -0,0 +1,393 @@
+package com.hmdp.utils;
+
+import com.hmdp.config.CacheProperties;
+import com.hmdp.config.RedisConfig;
+import lombok.extern.slf4j.Slf4j;
+import io.lettuce.core.KeyValue;
+import io.lettuce.core.cluster.api.async.RedisClusterAsyncCommands;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.connection.RedisPassword;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnection;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+
+/**
+ * 缓存数据分片路由
+ * 未启用分片时所有key都落在默认的 cacheRedisTemplate 上；
+ * 启用后按一致性哈希把缓存key分散到多个Redis节点，多key操作按节点分组，每个节点一次管道并行执行。
+ * 扩容时配置 previous-nodes 开启迁移模式：新归属节点未命中时回读旧归属节点，
+ * 读到的数据连同剩余TTL搬到新节点并删除旧副本，无需整体冷启动
+ * 只负责缓存数据，锁、发布订阅、布隆过滤器等仍使用主节点
+ *
+ * @className: CacheShardRouter
+ * @author: sutianyu
+ * @date: 2023-02-22 11:00
+ **/
+@Slf4j
+@Component
+public class CacheShardRouter {
+
+    private final List<Shard> shards = new ArrayList<>();
+
+    private final ConsistentHashRing<Shard> ring;
+
+    /**
+     * 扩容前的哈希环，非迁移模式时为null
+     */
+    private final ConsistentHashRing<Shard> previousRing;
+
+    private final List<LettuceConnectionFactory> connectionFactories = new ArrayList<>();
+
+    /**
+     * 多个节点的管道并行执行
+     */
+    private final ExecutorService shardExecutor;
+
+    private final LongAdder migrated = new LongAdder();
+
+    public CacheShardRouter(RedisTemplate<String, byte[]> cacheRedisTemplate, CacheProperties cacheProperties) {
+        CacheProperties.Sharding sharding = cacheProperties.getSharding();
+        this.ring = new ConsistentHashRing<>(sharding.getVirtualNodes());
+        if (!sharding.isEnabled() || sharding.getNodes().isEmpty()) {
+            // 未启用分片，只有一个默认节点
+            Shard shard = new Shard("default", cacheRedisTemplate);
+            shards.add(shard);
+            ring.add(shard.name, shard);
+            this.previousRing = null;
+            this.shardExecutor = null;
+            return;
+        }
+        // 1.为每个节点创建连接
+        Map<String, Shard> byName = new LinkedHashMap<>();
+        for (CacheProperties.Node node : sharding.getNodes()) {
+            RedisStandaloneConfiguration configuration = new RedisStandaloneConfiguration(node.getHost(), node.getPort());
+            configuration.setDatabase(node.getDatabase());
+            if (node.getPassword() != null) {
+                configuration.setPassword(RedisPassword.of(node.getPassword()));
+            }
+            LettuceConnectionFactory factory = new LettuceConnectionFactory(configuration);
+            factory.afterPropertiesSet();
+            connectionFactories.add(factory);
+            RedisTemplate<String, byte[]> template = RedisConfig.createCacheTemplate(factory);
+            template.afterPropertiesSet();
+            Shard shard = new Shard(node.getName(), template);
+            shards.add(shard);
+            byName.put(node.getName(), shard);
+            ring.add(shard.name, shard);
+        }
+        // 2.迁移模式：按扩容前的节点列表构建旧哈希环
+        if (sharding.getPreviousNodes().isEmpty()) {
+            this.previousRing = null;
+        } else {
+            this.previousRing = new ConsistentHashRing<>(sharding.getVirtualNodes());
+            for (String name : sharding.getPreviousNodes()) {
+                Shard shard = byName.get(name);
+                if (shard == null) {
+                    throw new IllegalStateException("previous-nodes 中的节点不在 nodes 中: " + name);
+                }
+                previousRing.add(name, shard);
+            }
+        }
+        this.shardExecutor = Executors.newFixedThreadPool(shards.size(), r -> {
+            Thread thread = new Thread(r, "cache-shard");
+            thread.setDaemon(true);
+            return thread;
+        });
+        log.info("缓存分片已启用, nodes={}, rebalancing={}", byName.keySet(), previousRing != null);
+    }
+
+    public byte[] get(String key) {
+        Shard owner = ring.get(key);
+        byte[] value = owner.template.opsForValue().get(key);
+        if (value != null || previousRing == null) {
+            return value;
+        }
+        // 迁移模式下新节点未命中，回读旧节点
+        Shard previous = previousRing.get(key);
+        return previous == owner ? null : migrate(key, previous, owner);
+    }
+
+    public void set(String key, byte[] value) {
+        ring.get(key).template.opsForValue().set(key, value);
+    }
+
+    public void set(String key, byte[] value, long timeout, TimeUnit unit) {
+        ring.get(key).template.opsForValue().set(key, value, timeout, unit);
+    }
+
+    public void expire(String key, long timeout, TimeUnit unit) {
+        ring.get(key).template.expire(key, timeout, unit);
+    }
+
+    public void delete(String key) {
+        Shard owner = ring.get(key);
+        owner.template.delete(key);
+        // 迁移模式下旧节点可能还有副本，一并删除，避免之后被回读
+        if (previousRing != null) {
+            Shard previous = previousRing.get(key);
+            if (previous != owner) {
+                previous.template.delete(key);
+            }
+        }
+    }
+
+    /**
+     * 在key所在节点上执行管道，用于与该key相关的多条命令一次往返完成
+     */
+    public List<Object> executePipelined(String key, RedisCallback<Object> callback) {
+        return ring.get(key).template.executePipelined(callback);
+    }
+
+    /**
+     * key所在节点的 Lettuce 异步命令，使用共享的原生连接，命令连续发出时自动流水线执行
+     */
+    public RedisClusterAsyncCommands<byte[], byte[]> async(String key) {
+        return ring.get(key).async();
+    }
+
+    /**
+     * 异步查询；迁移模式下新节点未命中时回读旧节点（不搬迁，搬迁由同步查询完成）
+     */
+    public CompletableFuture<byte[]> getAsync(String key) {
+        byte[] rawKey = key.getBytes(StandardCharsets.UTF_8);
+        Shard owner = ring.get(key);
+        CompletableFuture<byte[]> value = owner.async().get(rawKey).toCompletableFuture();
+        if (previousRing == null) {
+            return value;
+        }
+        Shard previous = previousRing.get(key);
+        if (previous == owner) {
+            return value;
+        }
+        return value.thenCompose(bytes -> bytes != null
+                ? CompletableFuture.completedFuture(bytes)
+                : previous.async().get(rawKey).toCompletableFuture());
+    }
+
+    /**
+     * 异步批量查询，各节点的MGET同时发出
+     *
+     * @return 与keys顺序一致，不存在的为null
+     */
+    public CompletableFuture<List<byte[]>> multiGetAsync(List<String> keys) {
+        byte[][] values = new byte[keys.size()][];
+        List<CompletableFuture<?>> futures = new ArrayList<>();
+        group(keys).forEach((shard, indexes) -> {
+            byte[][] shardKeys = new byte[indexes.size()][];
+            for (int i = 0; i < indexes.size(); i++) {
+                shardKeys[i] = keys.get(indexes.get(i)).getBytes(StandardCharsets.UTF_8);
+            }
+            futures.add(shard.async().mget(shardKeys).toCompletableFuture().thenAccept(result -> {
+                for (int i = 0; i < result.size(); i++) {
+                    KeyValue<byte[], byte[]> kv = result.get(i);
+                    values[indexes.get(i)] = kv.hasValue() ? kv.getValue() : null;
+                }
+            }));
+        });
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture[0]))
+                .thenApply(v -> Arrays.asList(values));
+    }
+
+    public boolean isRebalancing() {
+        return previousRing != null;
+    }
+
+    /**
+     * 批量查询，按节点分组后各节点一次MGET，多个节点并行
+     *
+     * @return 与keys顺序一致，不存在的为null
+     */
+    public List<byte[]> multiGet(List<String> keys) {
+        byte[][] values = new byte[keys.size()][];
+        Map<Shard, List<Integer>> groups = group(keys);
+        forEachGroup(groups, (shard, indexes) -> {
+            List<String> shardKeys = new ArrayList<>(indexes.size());
+            indexes.forEach(i -> shardKeys.add(keys.get(i)));
+            List<byte[]> shardValues = shard.template.opsForValue().multiGet(shardKeys);
+            for (int i = 0; shardValues != null && i < indexes.size(); i++) {
+                values[indexes.get(i)] = shardValues.get(i);
+            }
+        });
+        if (previousRing != null) {
+            for (int i = 0; i < values.length; i++) {
+                String key = keys.get(i);
+                Shard owner = ring.get(key);
+                Shard previous = previousRing.get(key);
+                if (values[i] == null && previous != owner) {
+                    values[i] = migrate(key, previous, owner);
+                }
+            }
+        }
+        return Arrays.asList(values);
+    }
+
+    /**
+     * 按节点分组执行管道，每个节点一次往返，多个节点并行
+     *
+     * @param operation 对单个key执行的命令，参数为管道连接与key的字节
+     */
+    public void executePipelined(Collection<String> keys, BiConsumer<RedisConnection, byte[]> operation) {
+        List<String> keyList = new ArrayList<>(keys);
+        forEachGroup(group(keyList), (shard, indexes) ->
+                shard.template.executePipelined((RedisCallback<Object>) connection -> {
+                    for (Integer i : indexes) {
+                        operation.accept(connection, keyList.get(i).getBytes(StandardCharsets.UTF_8));
+                    }
+                    return null;
+                }));
+    }
+
+    /**
+     * 按节点分组执行管道并返回结果，每个key固定执行 commandsPerKey 条命令
+     *
+     * @return 按传入顺序，每个key的命令结果
+     */
+    public List<List<Object>> executePipelined(List<String> keys, int commandsPerKey,
+                                               BiConsumer<RedisConnection, byte[]> operation) {
+        List<List<Object>> results = new ArrayList<>(Collections.nCopies(keys.size(), null));
+        forEachGroup(group(keys), (shard, indexes) -> {
+            List<Object> shardResults = shard.template.executePipelined((RedisCallback<Object>) connection -> {
+                for (Integer i : indexes) {
+                    operation.accept(connection, keys.get(i).getBytes(StandardCharsets.UTF_8));
+                }
+                return null;
+            });
+            for (int i = 0; i < indexes.size(); i++) {
+                results.set(indexes.get(i), shardResults.subList(i * commandsPerKey, (i + 1) * commandsPerKey));
+            }
+        });
+        return results;
+    }
+
+    /**
+     * 所有节点：名称 -> 模板，用于SCAN等需要遍历全部节点的操作
+     */
+    public Map<String, RedisTemplate<String, byte[]>> getShards() {
+        Map<String, RedisTemplate<String, byte[]>> result = new LinkedHashMap<>();
+        shards.forEach(shard -> result.put(shard.name, shard.template));
+        return result;
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        Map<String, Object> sizes = new LinkedHashMap<>();
+        for (Shard shard : shards) {
+            try {
+                sizes.put(shard.name, shard.template.execute(RedisConnection::dbSize));
+            } catch (Exception e) {
+                sizes.put(shard.name, "unavailable: " + e.getMessage());
+            }
+        }
+        stats.put("nodes", sizes);
+        stats.put("rebalancing", previousRing != null);
+        stats.put("migrated", migrated.sum());
+        return stats;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (shardExecutor != null) {
+            shardExecutor.shutdown();
+        }
+        connectionFactories.forEach(LettuceConnectionFactory::destroy);
+    }
+
+    /**
+     * 把key从旧节点搬到新节点，保留剩余TTL；新节点已有数据时不覆盖
+     */
+    private byte[] migrate(String key, Shard from, Shard to) {
+        byte[] rawKey = key.getBytes(StandardCharsets.UTF_8);
+        List<Object> result = from.template.executePipelined((RedisCallback<Object>) connection -> {
+            connection.get(rawKey);
+            connection.pTtl(rawKey);
+            return null;
+        });
+        byte[] value = (byte[]) result.get(0);
+        Long ttl = (Long) result.get(1);
+        if (value == null || ttl == null || ttl == -2) {
+            return null;
+        }
+        if (ttl > 0) {
+            to.template.opsForValue().setIfAbsent(key, value, ttl, TimeUnit.MILLISECONDS);
+        } else {
+            to.template.opsForValue().setIfAbsent(key, value);
+        }
+        from.template.delete(key);
+        migrated.increment();
+        return value;
+    }
+
+    private Map<Shard, List<Integer>> group(List<String> keys) {
+        Map<Shard, List<Integer>> groups = new LinkedHashMap<>();
+        for (int i = 0; i < keys.size(); i++) {
+            groups.computeIfAbsent(ring.get(keys.get(i)), s -> new ArrayList<>()).add(i);
+        }
+        return groups;
+    }
+
+    private void forEachGroup(Map<Shard, List<Integer>> groups, BiConsumer<Shard, List<Integer>> action) {
+        // 只涉及一个节点时在当前线程执行
+        if (groups.size() <= 1 || shardExecutor == null) {
+            groups.forEach(action);
+            return;
+        }
+        CompletableFuture<?>[] futures = groups.entrySet().stream()
+                .map(e -> CompletableFuture.runAsync(() -> action.accept(e.getKey(), e.getValue()), shardExecutor))
+                .toArray(CompletableFuture[]::new);
+        CompletableFuture.allOf(futures).join();
+    }
+
+    private static class Shard {
+        private final String name;
+        private final RedisTemplate<String, byte[]> template;
+        private volatile RedisClusterAsyncCommands<byte[], byte[]> async;
+
+        private Shard(String name, RedisTemplate<String, byte[]> template) {
+            this.name = name;
+            this.template = template;
+        }
+
+        private RedisClusterAsyncCommands<byte[], byte[]> async() {
+            RedisClusterAsyncCommands<byte[], byte[]> commands = async;
+            if (commands != null) {
+                return commands;
+            }
+            synchronized (this) {
+                if (async == null) {
+                    RedisConnectionFactory factory = template.getRequiredConnectionFactory();
+                    if (!(factory instanceof LettuceConnectionFactory)) {
+                        throw new IllegalStateException("异步查询需要使用 Lettuce 连接");
+                    }
+                    // 取共享的原生连接，关闭 LettuceConnection 不会关闭共享连接
+                    RedisConnection connection = factory.getConnection();
+                    try {
+                        async = ((LettuceConnection) connection).getNativeConnection();
+                    } finally {
+                        connection.close();
+                    }
+                }
+                return async;
+            }
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package com.hmdp.utils;
+
+/**
+ * 标记当前请求返回了过期的兜底数据（数据库不可用时），由 CacheStaleAdvice 写入响应头
+ *
+ * @className: CacheStaleHolder
+ * @author: sutianyu
+ * @date: 2023-02-23 10:40
+ **/
+public class CacheStaleHolder {
+    public static final String STALE_HEADER = "X-Cache-Stale";
+
+    private static final ThreadLocal<Boolean> tl = new ThreadLocal<>();
+
+    public static void markStale() {
+        tl.set(Boolean.TRUE);
+    }
+
+    public static boolean isStale() {
+        return Boolean.TRUE.equals(tl.get());
+    }
+
+    public static void remove() {
+        tl.remove();
+    }
+}
@@ -0,0 +1,117 @@
+package com.hmdp.utils;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 熔断器
+ * CLOSED：正常放行，连续失败（含慢调用）达到阈值后进入 OPEN；
+ * OPEN：直接拒绝，经过 openMillis 后进入 HALF_OPEN；
+ * HALF_OPEN：只放行一个探测请求，成功则恢复 CLOSED，失败则重新 OPEN
+ *
+ * @className: CircuitBreaker
+ * @author: sutianyu
+ * @date: 2023-02-23 10:15
+ **/
+@Slf4j
+public class CircuitBreaker {
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private final String name;
+
+    private final int failureThreshold;
+
+    private final long openMillis;
+
+    private final long slowCallMillis;
+
+    private final AtomicReference<State> state = new AtomicReference<>(State.CLOSED);
+
+    private final AtomicInteger consecutiveFailures = new AtomicInteger();
+
+    private volatile long openedAt;
+
+    private final LongAdder rejected = new LongAdder();
+
+    /**
+     * @param failureThreshold 连续失败多少次后熔断
+     * @param openMillis       熔断后多久开始探测
+     * @param slowCallMillis   超过该耗时的调用按失败计，0表示不统计慢调用
+     */
+    public CircuitBreaker(String name, int failureThreshold, long openMillis, long slowCallMillis) {
+        this.name = name;
+        this.failureThreshold = Math.max(1, failureThreshold);
+        this.openMillis = openMillis;
+        this.slowCallMillis = slowCallMillis;
+    }
+
+    /**
+     * 是否放行本次调用
+     */
+    public boolean tryAcquire() {
+        State current = state.get();
+        if (current == State.CLOSED) {
+            return true;
+        }
+        // 熔断时间已到，放行一个探测请求
+        if (current == State.OPEN && System.currentTimeMillis() - openedAt >= openMillis
+                && state.compareAndSet(State.OPEN, State.HALF_OPEN)) {
+            log.info("熔断器[{}]进入半开状态，开始探测", name);
+            return true;
+        }
+        rejected.increment();
+        return false;
+    }
+
+    public void onSuccess(long elapsedMillis) {
+        if (slowCallMillis > 0 && elapsedMillis > slowCallMillis) {
+            onFailure();
+            return;
+        }
+        consecutiveFailures.set(0);
+        if (state.compareAndSet(State.HALF_OPEN, State.CLOSED)) {
+            log.info("熔断器[{}]探测成功，恢复正常", name);
+        }
+    }
+
+    public void onFailure() {
+        // 探测失败，重新熔断
+        if (state.get() == State.HALF_OPEN) {
+            trip(State.HALF_OPEN);
+            return;
+        }
+        if (consecutiveFailures.incrementAndGet() >= failureThreshold) {
+            trip(State.CLOSED);
+        }
+    }
+
+    public State getState() {
+        return state.get();
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("name", name);
+        stats.put("state", state.get());
+        stats.put("consecutiveFailures", consecutiveFailures.get());
+        stats.put("rejected", rejected.sum());
+        stats.put("openedAt", state.get() == State.CLOSED ? null : openedAt);
+        return stats;
+    }
+
+    private void trip(State from) {
+        // 先更新时间再切换状态，避免其它线程看到 OPEN 时读到旧的熔断时间而立即探测
+        openedAt = System.currentTimeMillis();
+        if (state.compareAndSet(from, State.OPEN)) {
+            log.warn("熔断器[{}]已熔断，{}ms 后开始探测", name, openMillis);
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package com.hmdp.utils;
+
+import cn.hutool.core.lang.hash.MurmurHash;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * 一致性哈希环
+ * 每个物理节点映射为 virtualNodes 个虚拟节点均匀分布在环上，key 顺时针找到的第一个虚拟节点即为归属节点；
+ * 增加一个节点时只有约 1/N 的key改变归属
+ *
+ * @className: ConsistentHashRing
+ * @author: sutianyu
+ * @date: 2023-02-22 10:10
+ **/
+public class ConsistentHashRing<T> {
+
+    private final TreeMap<Long, T> ring = new TreeMap<>();
+
+    private final int virtualNodes;
+
+    public ConsistentHashRing(int virtualNodes) {
+        this.virtualNodes = Math.max(1, virtualNodes);
+    }
+
+    /**
+     * 加入节点
+     *
+     * @param name 节点名称，决定虚拟节点在环上的位置，同一节点在各实例中必须一致
+     */
+    public void add(String name, T node) {
+        for (int i = 0; i < virtualNodes; i++) {
+            ring.put(MurmurHash.hash64(name + "#" + i), node);
+        }
+    }
+
+    public T get(String key) {
+        if (ring.isEmpty()) {
+            throw new IllegalStateException("哈希环中没有节点");
+        }
+        Map.Entry<Long, T> entry = ring.ceilingEntry(MurmurHash.hash64(key));
+        return (entry != null ? entry : ring.firstEntry()).getValue();
+    }
+
+    public boolean isEmpty() {
+        return ring.isEmpty();
+    }
+}
@@ -0,0 +1,96 @@
+package com.hmdp.utils;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Count-Min Sketch 访问频率估算（带衰减）
+ * 每个key映射到 DEPTH 行中的各一个计数器，估算值取各行最小值；
+ * 累计采样次数达到 sampleSize 后所有计数器减半，使历史热度逐步衰减
+ *
+ * @className: FrequencySketch
+ * @author: sutianyu
+ * @date: 2023-02-06 10:20
+ **/
+public class FrequencySketch {
+
+    private static final int DEPTH = 4;
+
+    private static final int[] SEEDS = {0x97cb3127, 0x7f4a7c15, 0x2545f491, 0x9e3779b9};
+
+    private final AtomicIntegerArray table;
+
+    private final int mask;
+
+    private final long sampleSize;
+
+    private final AtomicLong additions = new AtomicLong();
+
+    /**
+     * @param expectedKeys 预计同时需要统计的key数量
+     * @param sampleSize   衰减周期：累计记录多少次访问后计数器减半
+     */
+    public FrequencySketch(int expectedKeys, long sampleSize) {
+        int width = Integer.highestOneBit(Math.max(16, expectedKeys - 1) << 1);
+        this.table = new AtomicIntegerArray(width * DEPTH);
+        this.mask = width - 1;
+        this.sampleSize = Math.max(1, sampleSize);
+    }
+
+    /**
+     * 记录一次访问，返回记录后的估算频率
+     */
+    public int increment(Object key) {
+        int hash = spread(key.hashCode());
+        int min = Integer.MAX_VALUE;
+        for (int i = 0; i < DEPTH; i++) {
+            int index = indexOf(hash, i);
+            int count = table.get(index);
+            if (count < Integer.MAX_VALUE) {
+                count = table.incrementAndGet(index);
+            }
+            min = Math.min(min, count);
+        }
+        if (additions.incrementAndGet() >= sampleSize) {
+            reset();
+        }
+        return min;
+    }
+
+    /**
+     * 估算访问频率
+     */
+    public int frequency(Object key) {
+        int hash = spread(key.hashCode());
+        int min = Integer.MAX_VALUE;
+        for (int i = 0; i < DEPTH; i++) {
+            min = Math.min(min, table.get(indexOf(hash, i)));
+        }
+        return min;
+    }
+
+    /**
+     * 衰减：所有计数器减半
+     * 除按采样次数自动衰减外，访问量低时也可由调用方定时触发
+     * 并发下可能有少量自增被覆盖，对频率估算影响可以忽略
+     */
+    public void reset() {
+        additions.set(0);
+        for (int i = 0; i < table.length(); i++) {
+            table.set(i, table.get(i) >>> 1);
+        }
+    }
+
+    private int indexOf(int hash, int row) {
+        int h = (hash ^ SEEDS[row]) * SEEDS[(row + 1) % DEPTH];
+        h ^= h >>> 16;
+        return row * (mask + 1) + (h & mask);
+    }
+
+    private static int spread(int h) {
+        h ^= h >>> 17;
+        h *= 0xed5ad4bb;
+        h ^= h >>> 11;
+        return h;
+    }
+}
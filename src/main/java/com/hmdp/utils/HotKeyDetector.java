@@ -0,0 +1,81 @@
+package com.hmdp.utils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 热点key探测
+ * 每次访问记入带衰减的 Count-Min Sketch，估算频率达到阈值的key晋升为热点；
+ * 定时衰减后频率低于阈值一半的热点key降级（留出回差，避免在阈值附近反复晋升降级）
+ *
+ * @className: HotKeyDetector
+ * @author: sutianyu
+ * @date: 2023-02-17 10:30
+ **/
+public class HotKeyDetector {
+
+    private final FrequencySketch sketch;
+
+    private final int threshold;
+
+    private final int maxKeys;
+
+    /**
+     * 当前热点key -> 晋升时间
+     */
+    private final Map<String, Long> hotKeys = new ConcurrentHashMap<>();
+
+    public HotKeyDetector(int expectedKeys, int threshold, int maxKeys) {
+        // 只依赖定时衰减，采样次数不设上限
+        this.sketch = new FrequencySketch(expectedKeys, Long.MAX_VALUE);
+        this.threshold = Math.max(1, threshold);
+        this.maxKeys = maxKeys;
+    }
+
+    /**
+     * 记录一次访问
+     *
+     * @return 该key当前是否为热点
+     */
+    public boolean record(String key) {
+        int frequency = sketch.increment(key);
+        if (hotKeys.containsKey(key)) {
+            return true;
+        }
+        if (frequency < threshold || hotKeys.size() >= maxKeys) {
+            return false;
+        }
+        hotKeys.putIfAbsent(key, System.currentTimeMillis());
+        return true;
+    }
+
+    public boolean isHot(String key) {
+        return hotKeys.containsKey(key);
+    }
+
+    /**
+     * 衰减一个周期，返回本次降级的key
+     */
+    public List<String> decay() {
+        sketch.reset();
+        List<String> cooled = new ArrayList<>();
+        hotKeys.keySet().removeIf(key -> {
+            if (sketch.frequency(key) * 2 < threshold) {
+                cooled.add(key);
+                return true;
+            }
+            return false;
+        });
+        return cooled;
+    }
+
+    public int frequency(String key) {
+        return sketch.frequency(key);
+    }
+
+    public Map<String, Long> getHotKeys() {
+        return hotKeys;
+    }
+}
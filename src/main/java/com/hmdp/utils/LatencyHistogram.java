@@ -0,0 +1,99 @@
+package com.hmdp.utils;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 耗时直方图：固定的指数分桶 + 分段计数器（LongAdder），记录时无锁、无对象分配
+ * 分位数按桶上界估算，精度足以用于调整TTL与观察趋势
+ *
+ * @className: LatencyHistogram
+ * @author: sutianyu
+ * @date: 2023-02-21 09:50
+ **/
+public class LatencyHistogram {
+
+    /**
+     * 桶上界（微秒），最后一个桶收纳超过上界的所有记录
+     */
+    private static final long[] BOUNDS_MICROS = {
+            10, 25, 50, 100, 250, 500, 1_000, 2_500, 5_000, 10_000, 25_000, 50_000, 100_000, 250_000, 500_000, 1_000_000
+    };
+
+    private final LongAdder[] buckets = new LongAdder[BOUNDS_MICROS.length + 1];
+
+    private final LongAdder count = new LongAdder();
+
+    private final LongAdder totalNanos = new LongAdder();
+
+    private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+
+    public LatencyHistogram() {
+        for (int i = 0; i < buckets.length; i++) {
+            buckets[i] = new LongAdder();
+        }
+    }
+
+    public void record(long nanos) {
+        long micros = nanos / 1000;
+        int index = 0;
+        while (index < BOUNDS_MICROS.length && micros > BOUNDS_MICROS[index]) {
+            index++;
+        }
+        buckets[index].increment();
+        count.increment();
+        totalNanos.add(nanos);
+        maxNanos.accumulate(nanos);
+    }
+
+    /**
+     * 记录从 startNanos 到现在的耗时
+     */
+    public void recordSince(long startNanos) {
+        record(System.nanoTime() - startNanos);
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    public Map<String, Object> snapshot() {
+        long[] counts = new long[buckets.length];
+        long total = 0;
+        for (int i = 0; i < buckets.length; i++) {
+            counts[i] = buckets[i].sum();
+            total += counts[i];
+        }
+        Map<String, Object> snapshot = new LinkedHashMap<>();
+        snapshot.put("count", total);
+        snapshot.put("avgMicros", total == 0 ? 0 : totalNanos.sum() / total / 1000);
+        snapshot.put("p50Micros", percentile(counts, total, 0.50));
+        snapshot.put("p99Micros", percentile(counts, total, 0.99));
+        snapshot.put("maxMicros", maxNanos.get() / 1000);
+        Map<String, Long> distribution = new LinkedHashMap<>();
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i] > 0) {
+                distribution.put(i < BOUNDS_MICROS.length ? "<=" + BOUNDS_MICROS[i] + "us" : ">1s", counts[i]);
+            }
+        }
+        snapshot.put("buckets", distribution);
+        return snapshot;
+    }
+
+    private static long percentile(long[] counts, long total, double p) {
+        if (total == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(total * p);
+        long seen = 0;
+        for (int i = 0; i < BOUNDS_MICROS.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return BOUNDS_MICROS[i];
+            }
+        }
+        return BOUNDS_MICROS[BOUNDS_MICROS.length - 1];
+    }
+}
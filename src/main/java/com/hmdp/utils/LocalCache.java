@@ -0,0 +1,168 @@
+package com.hmdp.utils;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+
+/**
+ * 进程内一级缓存（L1）
+ * 容量 + TTL 双重限制，淘汰策略参考 W-TinyLFU：
+ * 新写入的key先进入约占 1% 容量的窗口区（LRU），被挤出窗口后，
+ * 只有访问频率高于主区淘汰候选者时才能进入主区，避免偶发访问冲掉热点数据
+ *
+ * @className: LocalCache
+ * @author: sutianyu
+ * @date: 2023-02-06 10:45
+ **/
+public class LocalCache<V> {
+
+    private final int windowCapacity;
+
+    private final int mainCapacity;
+
+    private final long ttlMillis;
+
+    private final LinkedHashMap<String, Entry<V>> window = new LinkedHashMap<>(16, 0.75f, true);
+
+    private final LinkedHashMap<String, Entry<V>> main = new LinkedHashMap<>(16, 0.75f, true);
+
+    private final FrequencySketch sketch;
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    public LocalCache(int maximumSize, long ttlMillis) {
+        int max = Math.max(2, maximumSize);
+        this.windowCapacity = Math.max(1, max / 100);
+        this.mainCapacity = max - windowCapacity;
+        this.ttlMillis = ttlMillis;
+        this.sketch = new FrequencySketch(max, 10L * max);
+    }
+
+    public V get(String key) {
+        sketch.increment(key);
+        lock.lock();
+        try {
+            Entry<V> entry = window.get(key);
+            Map<String, Entry<V>> owner = window;
+            if (entry == null) {
+                entry = main.get(key);
+                owner = main;
+            }
+            if (entry == null) {
+                return null;
+            }
+            // 已过期，移除
+            if (entry.expireAt <= System.currentTimeMillis()) {
+                owner.remove(key);
+                return null;
+            }
+            return entry.value;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void put(String key, V value) {
+        if (value == null) {
+            return;
+        }
+        Entry<V> entry = new Entry<>(value, System.currentTimeMillis() + ttlMillis);
+        lock.lock();
+        try {
+            // 1.已存在，原地更新
+            if (window.containsKey(key)) {
+                window.put(key, entry);
+                return;
+            }
+            if (main.containsKey(key)) {
+                main.put(key, entry);
+                return;
+            }
+            // 2.新key进入窗口区
+            window.put(key, entry);
+            if (window.size() <= windowCapacity) {
+                return;
+            }
+            // 3.窗口区溢出，被挤出的候选者尝试晋升到主区
+            Iterator<Map.Entry<String, Entry<V>>> it = window.entrySet().iterator();
+            Map.Entry<String, Entry<V>> candidate = it.next();
+            it.remove();
+            admit(candidate.getKey(), candidate.getValue());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 原子地获取或创建：不存在或已过期时用 loader 创建并写入，并发调用只会创建一个
+     */
+    public V computeIfAbsent(String key, Function<String, V> loader) {
+        lock.lock();
+        try {
+            V value = get(key);
+            if (value == null) {
+                value = loader.apply(key);
+                put(key, value);
+            }
+            return value;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void invalidate(String key) {
+        lock.lock();
+        try {
+            window.remove(key);
+            main.remove(key);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void invalidateAll() {
+        lock.lock();
+        try {
+            window.clear();
+            main.clear();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int size() {
+        lock.lock();
+        try {
+            return window.size() + main.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void admit(String key, Entry<V> entry) {
+        if (main.size() < mainCapacity) {
+            main.put(key, entry);
+            return;
+        }
+        Iterator<Map.Entry<String, Entry<V>>> it = main.entrySet().iterator();
+        Map.Entry<String, Entry<V>> victim = it.next();
+        // 已过期的淘汰者直接让位；否则由频率决定去留
+        if (victim.getValue().expireAt <= System.currentTimeMillis()
+                || sketch.frequency(key) > sketch.frequency(victim.getKey())) {
+            it.remove();
+            main.put(key, entry);
+        }
+    }
+
+    private static class Entry<V> {
+        private final V value;
+        private final long expireAt;
+
+        private Entry(V value, long expireAt) {
+            this.value = value;
+            this.expireAt = expireAt;
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package com.hmdp.utils;
+
+/**
+ * 本地令牌桶，用于限流的预过滤：本实例内已经没有令牌的请求无需再访问Redis
+ *
+ * @className: LocalTokenBucket
+ * @author: sutianyu
+ * @date: 2023-03-02 10:10
+ **/
+public class LocalTokenBucket {
+
+    private final double capacity;
+
+    /**
+     * 每纳秒补充的令牌数
+     */
+    private final double ratePerNanos;
+
+    private double tokens;
+
+    private long lastNanos;
+
+    public LocalTokenBucket(long capacity, long permits, long periodMillis, long nowNanos) {
+        this.capacity = capacity;
+        this.ratePerNanos = (double) permits / (periodMillis * 1_000_000L);
+        this.tokens = capacity;
+        this.lastNanos = nowNanos;
+    }
+
+    /**
+     * 尝试获取一个令牌
+     *
+     * @return 0 获取成功；否则为补足令牌需要等待的毫秒数
+     */
+    public synchronized long tryAcquire(long nowNanos) {
+        if (nowNanos > lastNanos) {
+            tokens = Math.min(capacity, tokens + (nowNanos - lastNanos) * ratePerNanos);
+            lastNanos = nowNanos;
+        }
+        if (tokens >= 1) {
+            tokens -= 1;
+            return 0;
+        }
+        return Math.max(1, (long) Math.ceil((1 - tokens) / ratePerNanos / 1_000_000L));
+    }
+
+    /**
+     * 归还令牌：本地放行但被Redis拒绝的请求，不应占用本地额度
+     */
+    public synchronized void refund() {
+        tokens = Math.min(capacity, tokens + 1);
+    }
+}
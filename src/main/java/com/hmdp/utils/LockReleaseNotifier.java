@@ -0,0 +1,88 @@
+package com.hmdp.utils;
+
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.PatternTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static com.hmdp.utils.RedisConstants.LOCK_SHOP_KEY;
+
+/**
+ * 互斥锁释放通知
+ * 释放锁时向与锁同名的频道发布消息，等待方订阅后被唤醒，代替休眠轮询
+ *
+ * @className: LockReleaseNotifier
+ * @author: sutianyu
+ * @date: 2023-02-08 14:30
+ **/
+@Component
+public class LockReleaseNotifier {
+
+    private final StringRedisTemplate stringRedisTemplate;
+
+    private final RedisMessageListenerContainer listenerContainer;
+
+    private final ConcurrentHashMap<String, CompletableFuture<Void>> waiters = new ConcurrentHashMap<>();
+
+    public LockReleaseNotifier(StringRedisTemplate stringRedisTemplate,
+                               RedisMessageListenerContainer listenerContainer) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.listenerContainer = listenerContainer;
+    }
+
+    @PostConstruct
+    private void subscribe() {
+        listenerContainer.addMessageListener((message, pattern) -> {
+            String lockKey = new String(message.getChannel(), StandardCharsets.UTF_8);
+            CompletableFuture<Void> released = waiters.remove(lockKey);
+            if (released != null) {
+                released.complete(null);
+            }
+        }, new PatternTopic(LOCK_SHOP_KEY + "*"));
+    }
+
+    /**
+     * 开始监听锁释放，须在尝试获取锁之前调用，避免错过释放消息
+     */
+    public CompletableFuture<Void> listen(String lockKey) {
+        return waiters.computeIfAbsent(lockKey, k -> new CompletableFuture<>());
+    }
+
+    /**
+     * 等待锁释放，超时后返回（持锁方宕机时锁会自动过期，不会收到通知）
+     */
+    public void await(String lockKey, CompletableFuture<Void> released, long timeout, TimeUnit unit) {
+        try {
+            released.get(timeout, unit);
+        } catch (TimeoutException | ExecutionException e) {
+            // 超时由调用方重新检查缓存与锁；释放消息可能已丢失，清理监听避免残留
+            cancel(lockKey, released);
+        } catch (InterruptedException e) {
+            cancel(lockKey, released);
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * 不再等待锁释放：没有其它线程在等待时移除监听，否则由最后一个等待方移除
+     */
+    public void cancel(String lockKey, CompletableFuture<Void> released) {
+        waiters.computeIfPresent(lockKey, (k, f) -> f == released && f.getNumberOfDependents() == 0 ? null : f);
+    }
+
+    /**
+     * 通知所有实例锁已释放
+     */
+    public void publish(String lockKey) {
+        stringRedisTemplate.convertAndSend(lockKey, "");
+    }
+}
@@ -0,0 +1,87 @@
+package com.hmdp.utils;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Repeatable;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * 接口限流：标注在 Controller 方法上，由 RateLimitInterceptor 在进入方法前判断，超过限制时直接返回429
+ * 可以重复标注，同时按用户、IP、接口整体限流，全部通过才放行
+ * 注解中的值为默认值，可以通过 hmdp.rate-limit.rules.{name}-{dimension} 覆盖
+ *
+ * @className: RateLimit
+ * @author: sutianyu
+ * @date: 2023-03-02 09:30
+ **/
+@Documented
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+@Repeatable(RateLimit.List.class)
+public @interface RateLimit {
+
+    /**
+     * 规则名称，同名规则共享限额
+     */
+    String name();
+
+    /**
+     * 限流维度
+     */
+    Dimension dimension() default Dimension.USER;
+
+    /**
+     * 限流算法
+     */
+    Algorithm algorithm() default Algorithm.TOKEN_BUCKET;
+
+    /**
+     * 每个周期允许的请求数
+     */
+    long permits();
+
+    /**
+     * 周期（毫秒）
+     */
+    long periodMillis() default 1000;
+
+    /**
+     * 令牌桶容量（允许的突发请求数），不大于0时等于 permits
+     */
+    long burst() default 0;
+
+    enum Dimension {
+        /**
+         * 按登录用户，未登录时按IP
+         */
+        USER,
+        /**
+         * 按客户端IP
+         */
+        IP,
+        /**
+         * 按接口整体：各实例在本地按 permits / 实例数 限流，不访问Redis，避免所有请求集中到同一个key
+         */
+        RESOURCE
+    }
+
+    enum Algorithm {
+        /**
+         * 滑动窗口：任意 periodMillis 内最多 permits 次，精确但每次请求占用一个ZSET成员
+         */
+        SLIDING_WINDOW,
+        /**
+         * 令牌桶：平均速率 permits/periodMillis，允许 burst 次突发
+         */
+        TOKEN_BUCKET
+    }
+
+    @Documented
+    @Target(ElementType.METHOD)
+    @Retention(RetentionPolicy.RUNTIME)
+    @interface List {
+        RateLimit[] value();
+    }
+}
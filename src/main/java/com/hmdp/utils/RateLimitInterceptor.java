@@ -0,0 +1,120 @@
+package com.hmdp.utils;
+
+import cn.hutool.core.util.StrUtil;
+import cn.hutool.json.JSONUtil;
+import com.hmdp.config.RateLimitProperties;
+import com.hmdp.dto.Result;
+import com.hmdp.dto.UserDTO;
+import org.springframework.core.annotation.AnnotatedElementUtils;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.HandlerInterceptor;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 限流拦截器
+ * 拦截标注了 @RateLimit 的接口，任意一条规则超过限制时返回429，请求不会进入 Controller
+ * 需要在刷新令牌拦截器之后执行，才能取到登录用户
+ *
+ * @className: RateLimitInterceptor
+ * @author: sutianyu
+ * @date: 2023-03-02 11:00
+ **/
+public class RateLimitInterceptor implements HandlerInterceptor {
+
+    private static final int TOO_MANY_REQUESTS = 429;
+
+    private static final byte[] TOO_MANY_REQUESTS_BODY =
+            JSONUtil.toJsonStr(Result.fail("请求过于频繁，请稍后再试")).getBytes(StandardCharsets.UTF_8);
+
+    private final RateLimiter rateLimiter;
+
+    private final RateLimitProperties properties;
+
+    /**
+     * 每个接口方法解析后的规则
+     */
+    private final Map<Method, List<RateLimiter.Rule>> rules = new ConcurrentHashMap<>();
+
+    public RateLimitInterceptor(RateLimiter rateLimiter, RateLimitProperties properties) {
+        this.rateLimiter = rateLimiter;
+        this.properties = properties;
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) throws Exception {
+        if (!(handler instanceof HandlerMethod)) {
+            return true;
+        }
+        // 1.查询接口的限流规则
+        List<RateLimiter.Rule> methodRules = rules.computeIfAbsent(((HandlerMethod) handler).getMethod(), this::resolve);
+        if (methodRules.isEmpty()) {
+            return true;
+        }
+        // 2.依次判断，任意一条超过限制即拒绝，并归还前面规则已占用的额度
+        List<RateLimiter.Permit> permits = new ArrayList<>(methodRules.size());
+        for (RateLimiter.Rule rule : methodRules) {
+            RateLimiter.Permit permit = rateLimiter.tryAcquire(rule, subject(rule, request));
+            if (!permit.isAllowed()) {
+                permits.forEach(rateLimiter::refund);
+                reject(response, permit.getWaitMillis());
+                return false;
+            }
+            permits.add(permit);
+        }
+        return true;
+    }
+
+    private List<RateLimiter.Rule> resolve(Method method) {
+        List<RateLimiter.Rule> methodRules = new ArrayList<>();
+        for (RateLimit rateLimit : AnnotatedElementUtils.findMergedRepeatableAnnotations(method, RateLimit.class)) {
+            RateLimiter.Rule rule = rateLimiter.resolve(rateLimit);
+            if (rule != null) {
+                methodRules.add(rule);
+            }
+        }
+        // 按接口整体的规则只在本地判断，最先执行，本实例已超限时不再访问Redis
+        methodRules.sort(Comparator.comparing(rule -> rule.getDimension() != RateLimit.Dimension.RESOURCE));
+        return methodRules;
+    }
+
+    private String subject(RateLimiter.Rule rule, HttpServletRequest request) {
+        switch (rule.getDimension()) {
+            case USER:
+                UserDTO user = UserHolder.getUser();
+                // 未登录时按IP限流
+                return user != null ? "user:" + user.getId() : "ip:" + clientIp(request);
+            case IP:
+                return clientIp(request);
+            default:
+                return "all";
+        }
+    }
+
+    private String clientIp(HttpServletRequest request) {
+        if (properties.isTrustForwardedFor()) {
+            String forwarded = request.getHeader("X-Forwarded-For");
+            if (StrUtil.isNotBlank(forwarded)) {
+                return StrUtil.subBefore(forwarded, ",", false).trim();
+            }
+        }
+        return request.getRemoteAddr();
+    }
+
+    private void reject(HttpServletResponse response, long waitMillis) throws Exception {
+        response.setStatus(TOO_MANY_REQUESTS);
+        response.setHeader("Retry-After", String.valueOf(Math.max(1, TimeUnit.MILLISECONDS.toSeconds(waitMillis + 999))));
+        response.setContentType("application/json;charset=UTF-8");
+        response.setContentLength(TOO_MANY_REQUESTS_BODY.length);
+        response.getOutputStream().write(TOO_MANY_REQUESTS_BODY);
+    }
+}
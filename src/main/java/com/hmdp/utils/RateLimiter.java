@@ -0,0 +1,291 @@
+package com.hmdp.utils;
+
+import cn.hutool.core.util.IdUtil;
+import com.hmdp.config.RateLimitProperties;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Component;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import static com.hmdp.utils.RedisConstants.RATE_LIMIT_KEY;
+
+/**
+ * 分布式限流：先经过本地令牌桶预过滤，再由Lua脚本在Redis中按滑动窗口或令牌桶判断
+ * 按接口整体限流的规则只在本地按实例数均分限额，所有请求共用一个Redis key会成为新的热点
+ * Redis不可用时放行（只保留本地限流），避免限流组件故障导致接口整体不可用
+ *
+ * @className: RateLimiter
+ * @author: sutianyu
+ * @date: 2023-03-02 10:30
+ **/
+@Slf4j
+@Component
+public class RateLimiter {
+
+    private static final DefaultRedisScript<Long> SLIDING_WINDOW_SCRIPT;
+
+    private static final DefaultRedisScript<Long> TOKEN_BUCKET_SCRIPT;
+
+    static {
+        SLIDING_WINDOW_SCRIPT = new DefaultRedisScript<>();
+        SLIDING_WINDOW_SCRIPT.setLocation(new ClassPathResource("lua/rate_limit_sliding_window.lua"));
+        SLIDING_WINDOW_SCRIPT.setResultType(Long.class);
+        TOKEN_BUCKET_SCRIPT = new DefaultRedisScript<>();
+        TOKEN_BUCKET_SCRIPT.setLocation(new ClassPathResource("lua/rate_limit_token_bucket.lua"));
+        TOKEN_BUCKET_SCRIPT.setResultType(Long.class);
+    }
+
+    private final StringRedisTemplate stringRedisTemplate;
+
+    private final RateLimitProperties properties;
+
+    private final LocalCache<LocalTokenBucket> localBuckets;
+
+    /**
+     * 按接口整体限流的本地令牌桶，数量等于规则数，不淘汰
+     */
+    private final Map<String, LocalTokenBucket> resourceBuckets = new ConcurrentHashMap<>();
+
+    private final Map<String, Counter> counters = new ConcurrentHashMap<>();
+
+    private final LongAdder redisErrors = new LongAdder();
+
+    public RateLimiter(StringRedisTemplate stringRedisTemplate, RateLimitProperties properties) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.properties = properties;
+        this.localBuckets = new LocalCache<>(properties.getLocalMaxKeys(), TimeUnit.MINUTES.toMillis(1));
+    }
+
+    /**
+     * 合并注解与配置，得到最终的限流规则
+     *
+     * @return 规则，配置中关闭时返回null
+     */
+    public Rule resolve(RateLimit rateLimit) {
+        String id = rateLimit.name() + "-" + rateLimit.dimension().name().toLowerCase();
+        RateLimitProperties.Rule override = properties.getRules().get(id);
+        if (override == null) {
+            return new Rule(id, rateLimit.dimension(), rateLimit.algorithm(),
+                    rateLimit.permits(), rateLimit.periodMillis(), rateLimit.burst());
+        }
+        if (!override.isEnabled()) {
+            return null;
+        }
+        return new Rule(id, rateLimit.dimension(),
+                override.getAlgorithm() != null ? override.getAlgorithm() : rateLimit.algorithm(),
+                override.getPermits() != null ? override.getPermits() : rateLimit.permits(),
+                override.getPeriodMillis() != null ? override.getPeriodMillis() : rateLimit.periodMillis(),
+                override.getBurst() != null ? override.getBurst() : rateLimit.burst());
+    }
+
+    /**
+     * 尝试通过限流
+     *
+     * @param subject 限流对象：用户id、IP，按接口整体限流时为固定值
+     * @return 放行或拒绝（包含建议的重试等待时间）；放行的许可在后续规则拒绝时可以归还
+     */
+    public Permit tryAcquire(Rule rule, String subject) {
+        if (!properties.isEnabled()) {
+            return Permit.ALLOWED;
+        }
+        Counter counter = counters.computeIfAbsent(rule.getId(), id -> new Counter());
+        String key = rule.getId() + ":" + subject;
+        if (rule.getDimension() == RateLimit.Dimension.RESOURCE) {
+            return acquireLocally(rule, counter, key);
+        }
+        // 1.本地预过滤
+        LocalTokenBucket bucket = null;
+        if (properties.isLocalPrefilter()) {
+            bucket = localBuckets.get(key);
+            if (bucket == null) {
+                // 并发的首次请求必须共用同一个桶，否则后写入的桶会丢掉其它桶的扣减
+                bucket = localBuckets.computeIfAbsent(key, k ->
+                        new LocalTokenBucket(rule.getBurst(), rule.getPermits(), rule.getPeriodMillis(), System.nanoTime()));
+            }
+            long wait = bucket.tryAcquire(System.nanoTime());
+            if (wait > 0) {
+                counter.localRejects.increment();
+                return Permit.rejected(wait);
+            }
+        }
+        // 2.Redis判断
+        String redisKey = RATE_LIMIT_KEY + key;
+        String member = IdUtil.fastSimpleUUID();
+        long wait;
+        try {
+            wait = acquireFromRedis(rule, redisKey, member);
+        } catch (Exception e) {
+            redisErrors.increment();
+            log.warn("限流判断失败，放行请求, rule={}", rule.getId(), e);
+            counter.allowed.increment();
+            return new Permit(0, rule, bucket, null, null);
+        }
+        if (wait > 0) {
+            if (bucket != null) {
+                bucket.refund();
+            }
+            counter.redisRejects.increment();
+            return Permit.rejected(wait);
+        }
+        counter.allowed.increment();
+        return new Permit(0, rule, bucket, redisKey, member);
+    }
+
+    /**
+     * 归还已放行的许可：同一请求的后续规则拒绝时调用，被拒绝的请求不应占用前面规则的额度
+     */
+    public void refund(Permit permit) {
+        if (!permit.isAllowed() || permit.rule == null) {
+            return;
+        }
+        if (permit.bucket != null) {
+            permit.bucket.refund();
+        }
+        if (permit.redisKey == null) {
+            return;
+        }
+        try {
+            if (permit.rule.getAlgorithm() == RateLimit.Algorithm.SLIDING_WINDOW) {
+                stringRedisTemplate.opsForZSet().remove(permit.redisKey, permit.member);
+            } else {
+                stringRedisTemplate.execute(TOKEN_BUCKET_SCRIPT, Collections.singletonList(permit.redisKey),
+                        String.valueOf(System.currentTimeMillis()), String.valueOf(permit.rule.getBurst()),
+                        String.valueOf((double) permit.rule.getPermits() / permit.rule.getPeriodMillis()), "-1");
+            }
+        } catch (Exception e) {
+            // 归还失败只是多占用一次额度，不影响请求
+            redisErrors.increment();
+            log.warn("归还限流许可失败, rule={}", permit.rule.getId(), e);
+        }
+    }
+
+    /**
+     * 按接口整体限流：每个实例只放行 1/instances 的限额
+     */
+    private Permit acquireLocally(Rule rule, Counter counter, String key) {
+        int instances = Math.max(1, properties.getInstances());
+        LocalTokenBucket bucket = resourceBuckets.computeIfAbsent(key, k -> new LocalTokenBucket(
+                Math.max(1, rule.getBurst() / instances), Math.max(1, rule.getPermits() / instances),
+                rule.getPeriodMillis(), System.nanoTime()));
+        long wait = bucket.tryAcquire(System.nanoTime());
+        if (wait > 0) {
+            counter.localRejects.increment();
+            return Permit.rejected(wait);
+        }
+        counter.allowed.increment();
+        return new Permit(0, rule, bucket, null, null);
+    }
+
+    private long acquireFromRedis(Rule rule, String key, String member) {
+        String now = String.valueOf(System.currentTimeMillis());
+        Long result;
+        if (rule.getAlgorithm() == RateLimit.Algorithm.SLIDING_WINDOW) {
+            result = stringRedisTemplate.execute(SLIDING_WINDOW_SCRIPT, Collections.singletonList(key),
+                    now, String.valueOf(rule.getPeriodMillis()), String.valueOf(rule.getPermits()), member);
+        } else {
+            result = stringRedisTemplate.execute(TOKEN_BUCKET_SCRIPT, Collections.singletonList(key),
+                    now, String.valueOf(rule.getBurst()),
+                    String.valueOf((double) rule.getPermits() / rule.getPeriodMillis()), "1");
+        }
+        return result == null ? 0 : result;
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", properties.isEnabled());
+        stats.put("localPrefilter", properties.isLocalPrefilter());
+        stats.put("redisErrors", redisErrors.sum());
+        Map<String, Object> rules = new LinkedHashMap<>();
+        counters.forEach((id, counter) -> {
+            Map<String, Object> rule = new LinkedHashMap<>();
+            rule.put("allowed", counter.allowed.sum());
+            rule.put("localRejects", counter.localRejects.sum());
+            rule.put("redisRejects", counter.redisRejects.sum());
+            rules.put(id, rule);
+        });
+        stats.put("rules", rules);
+        return stats;
+    }
+
+    @Getter
+    public static class Rule {
+
+        /**
+         * {name}-{dimension}
+         */
+        private final String id;
+
+        private final RateLimit.Dimension dimension;
+
+        private final RateLimit.Algorithm algorithm;
+
+        private final long permits;
+
+        private final long periodMillis;
+
+        private final long burst;
+
+        Rule(String id, RateLimit.Dimension dimension, RateLimit.Algorithm algorithm,
+             long permits, long periodMillis, long burst) {
+            this.id = id;
+            this.dimension = dimension;
+            this.algorithm = algorithm;
+            this.permits = Math.max(1, permits);
+            this.periodMillis = Math.max(1, periodMillis);
+            this.burst = burst > 0 ? burst : this.permits;
+        }
+    }
+
+    /**
+     * 一次限流判断的结果，放行时记录占用的本地令牌与Redis许可，用于归还
+     */
+    public static class Permit {
+
+        private static final Permit ALLOWED = new Permit(0, null, null, null, null);
+
+        @Getter
+        private final long waitMillis;
+
+        private final Rule rule;
+
+        private final LocalTokenBucket bucket;
+
+        private final String redisKey;
+
+        private final String member;
+
+        private Permit(long waitMillis, Rule rule, LocalTokenBucket bucket, String redisKey, String member) {
+            this.waitMillis = waitMillis;
+            this.rule = rule;
+            this.bucket = bucket;
+            this.redisKey = redisKey;
+            this.member = member;
+        }
+
+        private static Permit rejected(long waitMillis) {
+            return new Permit(waitMillis, null, null, null, null);
+        }
+
+        public boolean isAllowed() {
+            return waitMillis <= 0;
+        }
+    }
+
+    private static class Counter {
+
+        private final LongAdder allowed = new LongAdder();
+
+        private final LongAdder localRejects = new LongAdder();
+
+        private final LongAdder redisRejects = new LongAdder();
+    }
+}
@@ -0,0 +1,37 @@
+package com.hmdp.utils;
+
+import com.hmdp.utils.codec.RawJson;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 拼接 Result 结构的响应体，data 部分使用已序列化好的 JSON 字节
+ * 输出格式与 Result.ok(data) 经 Jackson 序列化（忽略null字段）后一致：{"success":true,"data":...}
+ * 由 Controller 以 ResponseEntity&lt;byte[]&gt; 返回，仍经过 ResponseBodyAdvice（如 CacheStaleAdvice）
+ *
+ * @className: RawResultWriter
+ * @author: sutianyu
+ * @date: 2023-02-16 15:00
+ **/
+public class RawResultWriter {
+
+    private static final byte[] OK_PREFIX = "{\"success\":true,\"data\":".getBytes(StandardCharsets.UTF_8);
+
+    private static final byte[] OK_SUFFIX = "}".getBytes(StandardCharsets.UTF_8);
+
+    public static byte[] ok(RawJson data) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(OK_PREFIX.length + data.length() + OK_SUFFIX.length);
+        try {
+            out.write(OK_PREFIX);
+            data.writeTo(out);
+            out.write(OK_SUFFIX);
+        } catch (IOException e) {
+            // 写入内存不会失败
+            throw new UncheckedIOException(e);
+        }
+        return out.toByteArray();
+    }
+}
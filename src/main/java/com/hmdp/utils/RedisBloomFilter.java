@@ -0,0 +1,212 @@
+package com.hmdp.utils;
+
+import cn.hutool.core.lang.hash.MurmurHash;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 基于 Redis bitmap 的布隆过滤器，本地保存一份位图镜像
+ * 判断时只读本地镜像，不产生网络开销；写入时同时更新 Redis 与本地镜像
+ * 本地镜像尚未加载时一律放行（fail-open），避免误拦真实数据
+ *
+ * @className: RedisBloomFilter
+ * @author: sutianyu
+ * @date: 2023-02-07 09:30
+ **/
+public class RedisBloomFilter {
+
+    private final String redisKey;
+
+    private final long numBits;
+
+    private final int numHashes;
+
+    private final StringRedisTemplate stringRedisTemplate;
+
+    /**
+     * 本地位图镜像，null表示尚未加载
+     */
+    private volatile AtomicLongArray mirror;
+
+    /**
+     * 重建期间新增的id，重建完成后补写，避免丢失
+     */
+    private volatile List<Object> pendingDuringRebuild;
+
+    private final LongAdder rejects = new LongAdder();
+
+    private final LongAdder falsePositives = new LongAdder();
+
+    public RedisBloomFilter(String redisKey, long expectedInsertions, double fpp, StringRedisTemplate stringRedisTemplate) {
+        long n = Math.max(1, expectedInsertions);
+        double p = Math.min(Math.max(fpp, 1e-9), 0.5);
+        // m = -n*ln(p) / (ln2)^2 , k = m/n * ln2
+        long bits = (long) Math.ceil(-n * Math.log(p) / (Math.log(2) * Math.log(2)));
+        this.numBits = Math.max(64, (bits + 63) / 64 * 64);
+        this.numHashes = Math.max(1, (int) Math.round((double) numBits / n * Math.log(2)));
+        this.redisKey = redisKey;
+        this.stringRedisTemplate = stringRedisTemplate;
+    }
+
+    /**
+     * 判断id是否可能存在；返回false时一定不存在
+     */
+    public boolean mightContain(Object id) {
+        AtomicLongArray bits = this.mirror;
+        if (bits == null) {
+            return true;
+        }
+        for (long offset : offsets(id)) {
+            if ((bits.get((int) (offset >>> 6)) & (1L << offset)) == 0) {
+                rejects.increment();
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 新增id，写入Redis与本地镜像
+     */
+    public void put(Object id) {
+        long[] offsets = offsets(id);
+        byte[] key = redisKey.getBytes(StandardCharsets.UTF_8);
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (long offset : offsets) {
+                connection.setBit(key, offset, true);
+            }
+            return null;
+        });
+        putLocal(id);
+    }
+
+    /**
+     * 只更新本地镜像（其它实例写入Redis后通过广播同步过来）
+     */
+    public void putLocal(Object id) {
+        List<Object> pending = this.pendingDuringRebuild;
+        if (pending != null) {
+            pending.add(id);
+        }
+        AtomicLongArray bits = this.mirror;
+        if (bits == null) {
+            return;
+        }
+        for (long offset : offsets(id)) {
+            int index = (int) (offset >>> 6);
+            long mask = 1L << offset;
+            long old;
+            do {
+                old = bits.get(index);
+            } while ((old & mask) == 0 && !bits.compareAndSet(index, old, old | mask));
+        }
+    }
+
+    /**
+     * 根据全量id重建位图：先写临时key，再RENAME原子替换
+     */
+    public void rebuild(Collection<?> ids) {
+        this.pendingDuringRebuild = new CopyOnWriteArrayList<>();
+        try {
+            long[] words = new long[(int) (numBits >>> 6)];
+            for (Object id : ids) {
+                for (long offset : offsets(id)) {
+                    words[(int) (offset >>> 6)] |= 1L << offset;
+                }
+            }
+            byte[] key = redisKey.getBytes(StandardCharsets.UTF_8);
+            byte[] tmpKey = (redisKey + ":rebuild").getBytes(StandardCharsets.UTF_8);
+            byte[] value = toRedisBytes(words);
+            stringRedisTemplate.execute((RedisCallback<Object>) connection -> {
+                connection.set(tmpKey, value);
+                connection.rename(tmpKey, key);
+                return null;
+            });
+            this.mirror = new AtomicLongArray(words);
+        } finally {
+            List<Object> pending = this.pendingDuringRebuild;
+            this.pendingDuringRebuild = null;
+            // 补写重建期间新增的id
+            for (Object id : pending) {
+                put(id);
+            }
+        }
+    }
+
+    /**
+     * 从Redis加载位图到本地镜像
+     *
+     * @return Redis中不存在位图时返回false
+     */
+    public boolean reload() {
+        byte[] value = stringRedisTemplate.execute((RedisCallback<byte[]>) (RedisConnection connection) ->
+                connection.get(redisKey.getBytes(StandardCharsets.UTF_8)));
+        if (value == null) {
+            return false;
+        }
+        long[] words = new long[(int) (numBits >>> 6)];
+        int length = Math.min(value.length, words.length * 8);
+        for (int i = 0; i < length; i++) {
+            // Redis bitmap 以字节内高位为低偏移
+            long b = Integer.reverse(value[i] & 0xff) >>> 24;
+            words[i >>> 3] |= b << ((i & 7) * 8);
+        }
+        this.mirror = new AtomicLongArray(words);
+        return true;
+    }
+
+    /**
+     * 布隆过滤器放行但数据库中不存在，记为一次误判
+     */
+    public void recordFalsePositive() {
+        falsePositives.increment();
+    }
+
+    public boolean isReady() {
+        return mirror != null;
+    }
+
+    public long getRejects() {
+        return rejects.sum();
+    }
+
+    public long getFalsePositives() {
+        return falsePositives.sum();
+    }
+
+    public long getNumBits() {
+        return numBits;
+    }
+
+    public int getNumHashes() {
+        return numHashes;
+    }
+
+    private long[] offsets(Object id) {
+        long[] hash = MurmurHash.hash128(String.valueOf(id));
+        long[] offsets = new long[numHashes];
+        long combined = hash[0];
+        for (int i = 0; i < numHashes; i++) {
+            offsets[i] = (combined & Long.MAX_VALUE) % numBits;
+            combined += hash[1];
+        }
+        return offsets;
+    }
+
+    private static byte[] toRedisBytes(long[] words) {
+        byte[] bytes = new byte[words.length * 8];
+        for (int i = 0; i < bytes.length; i++) {
+            int b = (int) (words[i >>> 3] >>> ((i & 7) * 8)) & 0xff;
+            bytes[i] = (byte) (Integer.reverse(b) >>> 24);
+        }
+        return bytes;
+    }
+}
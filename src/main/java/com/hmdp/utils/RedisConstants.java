@@ -11,10 +11,30 @@ public class RedisConstants {
     public static final Long CACHE_SHOP_TTL = 30L;
     public static final String CACHE_SHOP_KEY = "cache:shop:";
 
+    public static final String CACHE_SHOP_TYPE_KEY = "cache:typeList";
+    public static final String CACHE_REFERENCE_CHANNEL = "cache:reference";
+
+    public static final String CACHE_INVALIDATE_CHANNEL = "cache:invalidate";
+    public static final String CACHE_STALE_KEY = "stale:";
+    public static final String CACHE_NULL_KEY = "null:";
+
+    public static final String BLOOM_KEY = "bloom:";
+    public static final String BLOOM_ADD_CHANNEL = "bloom:add";
+
     public static final String LOCK_SHOP_KEY = "lock:shop:";
     public static final Long LOCK_SHOP_TTL = 10L;
 
     public static final String SECKILL_STOCK_KEY = "seckill:stock:";
+    public static final String SECKILL_TIME_KEY = "seckill:time:";
+    public static final String SECKILL_ORDER_KEY = "seckill:order:";
+    public static final String SECKILL_SEGMENT_KEY = "seckill:segment:";
+    public static final String SECKILL_GATE_CHANNEL = "seckill:gate";
+    public static final String SECKILL_ROOM_QUEUE_KEY = "seckill:room:queue:";
+    public static final String SECKILL_ROOM_PASS_KEY = "seckill:room:pass:";
+    public static final String SECKILL_ROOM_STATE_KEY = "seckill:room:state:";
+
+    public static final String RATE_LIMIT_KEY = "rate:limit:";
+
     public static final String BLOG_LIKED_KEY = "blog:liked:";
     public static final String FEED_KEY = "feed:";
     public static final String SHOP_GEO_KEY = "shop:geo:";
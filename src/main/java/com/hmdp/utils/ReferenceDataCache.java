@@ -0,0 +1,195 @@
+package com.hmdp.utils;
+
+import cn.hutool.json.JSONUtil;
+import lombok.Getter;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * 参考数据缓存（商铺类型等数据量小、很少变化的列表）
+ * 本地持有一份不可变快照与版本号，读请求只读快照，不访问Redis；
+ * 重建时整表写入临时key，再在事务中 RENAME 覆盖并递增版本号，其它实例发现版本变化后整体替换快照
+ *
+ * @className: ReferenceDataCache
+ * @author: sutianyu
+ * @date: 2023-02-10 10:20
+ **/
+public class ReferenceDataCache<T> {
+
+    /**
+     * 临时key的存活时间，重建中途宕机时自动清理
+     */
+    private static final long TMP_KEY_TTL_SECONDS = 60;
+
+    @Getter
+    private final String name;
+
+    private final String redisKey;
+
+    private final String versionKey;
+
+    private final Class<T> type;
+
+    private final Supplier<List<T>> dbFallback;
+
+    private final StringRedisTemplate stringRedisTemplate;
+
+    /**
+     * 当前快照，null表示尚未加载
+     */
+    private volatile Snapshot<T> snapshot;
+
+    public ReferenceDataCache(String name, String redisKey, Class<T> type, Supplier<List<T>> dbFallback,
+                              StringRedisTemplate stringRedisTemplate) {
+        this.name = name;
+        this.redisKey = redisKey;
+        this.versionKey = redisKey + ":version";
+        this.type = type;
+        this.dbFallback = dbFallback;
+        this.stringRedisTemplate = stringRedisTemplate;
+    }
+
+    /**
+     * 返回当前快照中的数据（不可修改），首次访问时加载
+     */
+    public List<T> get() {
+        Snapshot<T> current = snapshot;
+        if (current == null) {
+            synchronized (this) {
+                current = snapshot;
+                if (current == null) {
+                    current = reload();
+                }
+            }
+        }
+        return current.getData();
+    }
+
+    public Snapshot<T> snapshot() {
+        return snapshot;
+    }
+
+    /**
+     * 从Redis加载快照，Redis中尚未初始化时从数据库重建
+     */
+    public synchronized Snapshot<T> reload() {
+        // 1.在同一个事务中读取版本号与列表，保证两者一致
+        List<Object> results = stringRedisTemplate.execute(new SessionCallback<List<Object>>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public List<Object> execute(RedisOperations operations) throws DataAccessException {
+                operations.multi();
+                operations.opsForValue().get(versionKey);
+                operations.opsForList().range(redisKey, 0, -1);
+                return operations.exec();
+            }
+        });
+        String version = results == null ? null : (String) results.get(0);
+        @SuppressWarnings("unchecked")
+        List<String> jsonList = results == null ? null : (List<String>) results.get(1);
+        // 2.没有版本号：尚未初始化，或者是旧格式数据（可能有重复元素），从数据库重建
+        if (version == null) {
+            return rebuild();
+        }
+        // 3.解析并替换快照，有版本号但列表不存在说明数据库中确实没有数据
+        List<T> data = new ArrayList<>(jsonList == null ? 0 : jsonList.size());
+        if (jsonList != null) {
+            for (String json : jsonList) {
+                data.add(JSONUtil.toBean(json, type));
+            }
+        }
+        Snapshot<T> loaded = new Snapshot<>(Long.parseLong(version), data);
+        snapshot = loaded;
+        return loaded;
+    }
+
+    /**
+     * 从数据库查询全量数据，整体替换Redis中的列表并递增版本号
+     * 并发重建时各自写入不同的临时key，RENAME是原子的，最终列表只会是某一次重建的完整结果
+     */
+    public synchronized Snapshot<T> rebuild() {
+        // 1.查询数据库
+        List<T> data = dbFallback.get();
+        if (data == null) {
+            data = Collections.emptyList();
+        }
+        List<String> jsonList = new ArrayList<>(data.size());
+        for (T item : data) {
+            jsonList.add(JSONUtil.toJsonStr(item));
+        }
+        // 2.写入临时key，设置过期时间防止残留
+        String tmpKey = redisKey + ":tmp:" + UUID.randomUUID();
+        if (!jsonList.isEmpty()) {
+            stringRedisTemplate.opsForList().rightPushAll(tmpKey, jsonList);
+            stringRedisTemplate.expire(tmpKey, TMP_KEY_TTL_SECONDS, TimeUnit.SECONDS);
+        }
+        // 3.事务中替换正式key（RENAME会带上临时key的TTL，需要移除），并递增版本号
+        boolean empty = jsonList.isEmpty();
+        List<Object> results = stringRedisTemplate.execute(new SessionCallback<List<Object>>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public List<Object> execute(RedisOperations operations) throws DataAccessException {
+                operations.multi();
+                if (empty) {
+                    operations.delete(redisKey);
+                } else {
+                    operations.rename(tmpKey, redisKey);
+                    operations.persist(redisKey);
+                }
+                operations.opsForValue().increment(versionKey);
+                return operations.exec();
+            }
+        });
+        long version = results == null ? 0 : (Long) results.get(results.size() - 1);
+        // 4.替换本地快照
+        Snapshot<T> rebuilt = new Snapshot<>(version, data);
+        snapshot = rebuilt;
+        return rebuilt;
+    }
+
+    /**
+     * 比较Redis中的版本号，有变化时重新加载
+     *
+     * @return 是否重新加载
+     */
+    public boolean checkVersion() {
+        Snapshot<T> current = snapshot;
+        if (current == null) {
+            return false;
+        }
+        String version = stringRedisTemplate.opsForValue().get(versionKey);
+        if (version != null && Long.parseLong(version) == current.getVersion()) {
+            return false;
+        }
+        reload();
+        return true;
+    }
+
+    /**
+     * 不可变快照
+     */
+    @Getter
+    public static class Snapshot<T> {
+
+        private final long version;
+
+        private final List<T> data;
+
+        private final long loadedAt;
+
+        Snapshot(long version, List<T> data) {
+            this.version = version;
+            this.data = Collections.unmodifiableList(new ArrayList<>(data));
+            this.loadedAt = System.currentTimeMillis();
+        }
+    }
+}
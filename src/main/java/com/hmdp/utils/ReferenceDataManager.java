@@ -0,0 +1,117 @@
+package com.hmdp.utils;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+import static com.hmdp.utils.RedisConstants.CACHE_REFERENCE_CHANNEL;
+
+/**
+ * 参考数据缓存管理：按名称注册，负责重建后的跨实例通知与定期版本检查
+ *
+ * @className: ReferenceDataManager
+ * @author: sutianyu
+ * @date: 2023-02-10 10:50
+ **/
+@Slf4j
+@Component
+public class ReferenceDataManager {
+
+    private final StringRedisTemplate stringRedisTemplate;
+
+    private final RedisMessageListenerContainer listenerContainer;
+
+    private final Map<String, ReferenceDataCache<?>> caches = new ConcurrentHashMap<>();
+
+    public ReferenceDataManager(StringRedisTemplate stringRedisTemplate,
+                                RedisMessageListenerContainer listenerContainer) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.listenerContainer = listenerContainer;
+    }
+
+    @PostConstruct
+    private void subscribe() {
+        // 其它实例重建后检查版本号，消息内容为缓存名称
+        listenerContainer.addMessageListener((message, pattern) -> {
+            String name = new String(message.getBody(), StandardCharsets.UTF_8);
+            ReferenceDataCache<?> cache = caches.get(name);
+            if (cache == null) {
+                return;
+            }
+            try {
+                cache.checkVersion();
+            } catch (Exception e) {
+                log.error("参考数据加载失败, name={}", name, e);
+            }
+        }, new ChannelTopic(CACHE_REFERENCE_CHANNEL));
+    }
+
+    /**
+     * 注册参考数据缓存
+     *
+     * @param name       缓存名称
+     * @param redisKey   Redis中保存列表的key
+     * @param type       元素类型
+     * @param dbFallback 全量数据来源
+     */
+    public <T> ReferenceDataCache<T> register(String name, String redisKey, Class<T> type, Supplier<List<T>> dbFallback) {
+        ReferenceDataCache<T> cache = new ReferenceDataCache<>(name, redisKey, type, dbFallback, stringRedisTemplate);
+        caches.put(name, cache);
+        return cache;
+    }
+
+    /**
+     * 数据变更后调用：从数据库重建并通知所有实例
+     */
+    public void refresh(String name) {
+        ReferenceDataCache<?> cache = caches.get(name);
+        if (cache == null) {
+            throw new IllegalArgumentException("参考数据不存在: " + name);
+        }
+        cache.rebuild();
+        stringRedisTemplate.convertAndSend(CACHE_REFERENCE_CHANNEL, name);
+    }
+
+    /**
+     * 定期检查版本号，弥补丢失的通知消息
+     */
+    @Scheduled(initialDelayString = "${hmdp.cache.reference.poll-interval-ms:30000}",
+            fixedDelayString = "${hmdp.cache.reference.poll-interval-ms:30000}")
+    public void pollAll() {
+        caches.forEach((name, cache) -> {
+            try {
+                cache.checkVersion();
+            } catch (Exception e) {
+                // 加载失败时继续使用旧快照
+                log.error("参考数据版本检查失败, name={}", name, e);
+            }
+        });
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        caches.forEach((name, cache) -> {
+            ReferenceDataCache.Snapshot<?> snapshot = cache.snapshot();
+            Map<String, Object> item = new LinkedHashMap<>();
+            item.put("loaded", snapshot != null);
+            if (snapshot != null) {
+                item.put("version", snapshot.getVersion());
+                item.put("size", snapshot.getData().size());
+                item.put("loadedAt", snapshot.getLoadedAt());
+            }
+            stats.put(name, item);
+        });
+        return stats;
+    }
+}
@@ -0,0 +1,218 @@
+package com.hmdp.utils;
+
+import cn.hutool.core.map.MapUtil;
+import com.hmdp.config.SeckillProperties;
+import com.hmdp.entity.SeckillVoucher;
+import lombok.Getter;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static com.hmdp.utils.RedisConstants.SECKILL_ORDER_KEY;
+import static com.hmdp.utils.RedisConstants.SECKILL_STOCK_KEY;
+import static com.hmdp.utils.RedisConstants.SECKILL_TIME_KEY;
+
+/**
+ * 秒杀资格判断：库存与秒杀时间预热到Redis，由Lua脚本一次完成时间窗口、库存、一人一单的判断与库存扣减
+ * 只有获得资格的请求才会继续创建订单
+ *
+ * @className: SeckillAdmission
+ * @author: sutianyu
+ * @date: 2023-02-13 10:05
+ **/
+@Component
+public class SeckillAdmission {
+
+    private static final DefaultRedisScript<Long> SECKILL_SCRIPT;
+
+    private static final DefaultRedisScript<Long> ROLLBACK_SCRIPT;
+
+    static {
+        SECKILL_SCRIPT = new DefaultRedisScript<>();
+        SECKILL_SCRIPT.setLocation(new ClassPathResource("lua/seckill.lua"));
+        SECKILL_SCRIPT.setResultType(Long.class);
+        ROLLBACK_SCRIPT = new DefaultRedisScript<>();
+        ROLLBACK_SCRIPT.setLocation(new ClassPathResource("lua/seckill_rollback.lua"));
+        ROLLBACK_SCRIPT.setResultType(Long.class);
+    }
+
+    private final StringRedisTemplate stringRedisTemplate;
+
+    private final SeckillProperties.OrderStream orderStream;
+
+    private final SeckillProperties.WaitingRoom waitingRoom;
+
+    private final SegmentedStock segmentedStock;
+
+    private final SeckillGate seckillGate;
+
+    public SeckillAdmission(StringRedisTemplate stringRedisTemplate, SeckillProperties seckillProperties,
+                            SegmentedStock segmentedStock, SeckillGate seckillGate) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.orderStream = seckillProperties.getOrderStream();
+        this.waitingRoom = seckillProperties.getWaitingRoom();
+        this.segmentedStock = segmentedStock;
+        this.seckillGate = seckillGate;
+    }
+
+    /**
+     * 获得资格后是否由脚本写入订单消息队列
+     */
+    public boolean isStreamEnabled() {
+        return orderStream.isEnabled();
+    }
+
+    /**
+     * 预热秒杀券：写入库存与秒杀时间；是否需要排队只在新增时决定一次，见 {@link #decideWaitingRoom}
+     *
+     * @param overwrite 是否覆盖已有库存，新增秒杀券时覆盖；懒加载时不覆盖，避免回退已扣减的库存
+     */
+    public void preload(SeckillVoucher voucher, boolean overwrite) {
+        Long voucherId = voucher.getVoucherId();
+        long beginMillis = toMillis(voucher.getBeginTime());
+        long endMillis = toMillis(voucher.getEndTime());
+        // 先写时间再写库存，脚本以库存key是否存在判断预热完成；秒杀时间也是秒杀券元数据在Redis中的副本
+        Map<String, String> window = MapUtil.<String, String>builder()
+                .put("begin", String.valueOf(beginMillis))
+                .put("end", String.valueOf(endMillis))
+                .build();
+        stringRedisTemplate.opsForHash().putAll(SECKILL_TIME_KEY + voucherId, window);
+        // 库存较多的秒杀券拆分为分段库存
+        if (!segmentedStock.preload(voucher, beginMillis, endMillis, overwrite)) {
+            if (overwrite) {
+                stringRedisTemplate.opsForValue().set(SECKILL_STOCK_KEY + voucherId, voucher.getStock().toString());
+            } else {
+                stringRedisTemplate.opsForValue().setIfAbsent(SECKILL_STOCK_KEY + voucherId, voucher.getStock().toString());
+            }
+        }
+        // 重新预热后可能有新的库存、时间或分段信息，写入完成后再广播开放，其它实例收到后重新读取
+        if (overwrite) {
+            seckillGate.open(voucherId);
+        }
+    }
+
+    /**
+     * 新增秒杀券时按初始库存决定是否需要排队，已决定过的不再修改；
+     * 之后库存被扣减也不会改变，避免开售后因为实时库存低于阈值而绕过排队
+     *
+     * @return Redis中保存的结果
+     */
+    public boolean decideWaitingRoom(SeckillVoucher voucher) {
+        String key = SECKILL_TIME_KEY + voucher.getVoucherId();
+        String room = waitingRoom.appliesTo(voucher.getStock()) ? "1" : "0";
+        if (Boolean.TRUE.equals(stringRedisTemplate.opsForHash().putIfAbsent(key, "room", room))) {
+            return "1".equals(room);
+        }
+        return isWaitingRoom(voucher.getVoucherId());
+    }
+
+    /**
+     * 读取新增时决定的排队标记，没有标记时（如功能上线前的秒杀券）不排队
+     */
+    public boolean isWaitingRoom(Long voucherId) {
+        return "1".equals(stringRedisTemplate.opsForHash().get(SECKILL_TIME_KEY + voucherId, "room"));
+    }
+
+    /**
+     * 判断用户是否获得购买资格，获得资格时已扣减Redis库存并记录购买用户；
+     * 启用订单消息队列时同时写入订单消息
+     */
+    public Admission admit(Long voucherId, Long userId, Long orderId) {
+        // 分段库存：分段之间不在同一个slot，订单消息在获得资格后单独写入
+        SegmentedStock.Layout layout = segmentedStock.layout(voucherId);
+        if (layout != null) {
+            Admission admission = segmentedStock.admit(voucherId, userId, layout);
+            if (admission == Admission.OK && orderStream.isEnabled()) {
+                Map<String, String> message = MapUtil.<String, String>builder()
+                        .put("id", String.valueOf(orderId))
+                        .put("userId", userId.toString())
+                        .put("voucherId", voucherId.toString())
+                        .build();
+                try {
+                    stringRedisTemplate.opsForStream().add(orderStream.getKey(), message);
+                } catch (RuntimeException e) {
+                    // 写入订单消息失败，撤销已获得的资格，否则库存被占用且用户无法再次购买
+                    segmentedStock.rollback(voucherId, userId, layout);
+                    throw e;
+                }
+            }
+            return admission;
+        }
+        List<String> keys = new ArrayList<>(Arrays.asList(
+                SECKILL_STOCK_KEY + voucherId, SECKILL_TIME_KEY + voucherId, SECKILL_ORDER_KEY + voucherId));
+        if (orderStream.isEnabled()) {
+            keys.add(orderStream.getKey());
+        }
+        Long code = stringRedisTemplate.execute(SECKILL_SCRIPT, keys,
+                userId.toString(), String.valueOf(System.currentTimeMillis()),
+                voucherId.toString(), String.valueOf(orderId));
+        return Admission.of(code == null ? Admission.NOT_LOADED.code : code.intValue());
+    }
+
+    /**
+     * 撤销购买资格，订单写入失败时调用
+     */
+    public void rollback(Long voucherId, Long userId) {
+        SegmentedStock.Layout layout = segmentedStock.layout(voucherId);
+        if (layout != null) {
+            segmentedStock.rollback(voucherId, userId, layout);
+        } else {
+            List<String> keys = Arrays.asList(SECKILL_STOCK_KEY + voucherId, SECKILL_ORDER_KEY + voucherId);
+            stringRedisTemplate.execute(ROLLBACK_SCRIPT, keys, userId.toString());
+        }
+        // 归还了库存，开放本地闸门
+        seckillGate.open(voucherId);
+    }
+
+    /**
+     * Redis中的剩余库存，分段库存返回各分段之和，未预热时返回null
+     */
+    public Long stock(Long voucherId) {
+        SegmentedStock.Layout layout = segmentedStock.layout(voucherId);
+        if (layout != null) {
+            return segmentedStock.stock(voucherId, layout);
+        }
+        String stock = stringRedisTemplate.opsForValue().get(SECKILL_STOCK_KEY + voucherId);
+        return stock == null ? null : Long.parseLong(stock);
+    }
+
+    public static long toMillis(LocalDateTime time) {
+        return time.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+    @Getter
+    public enum Admission {
+        OK(0, null),
+        SOLD_OUT(1, "库存不足！"),
+        DUPLICATE(2, "不允许重复下单"),
+        NOT_STARTED(3, "秒杀尚未开始！"),
+        ENDED(4, "秒杀已经结束！"),
+        NOT_LOADED(5, "秒杀券不存在！");
+
+        private final int code;
+
+        private final String message;
+
+        Admission(int code, String message) {
+            this.code = code;
+            this.message = message;
+        }
+
+        static Admission of(int code) {
+            for (Admission admission : values()) {
+                if (admission.code == code) {
+                    return admission;
+                }
+            }
+            throw new IllegalStateException("未知的秒杀脚本返回值: " + code);
+        }
+    }
+}
@@ -0,0 +1,196 @@
+package com.hmdp.utils;
+
+import com.hmdp.config.SeckillProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+import static com.hmdp.utils.RedisConstants.SECKILL_GATE_CHANNEL;
+
+/**
+ * 秒杀本地闸门：记录已售罄、尚未开始、已经结束的秒杀券，命中时直接拒绝，不产生任何IO
+ * 售罄与结束由发现的实例广播给其它实例；归还库存、重新预热时广播开放
+ * 每条记录都有有效期，广播丢失时到期后放行一个请求重新判断
+ * 开放广播同时通知本地缓存了秒杀券信息的组件（分段信息、不存在的秒杀券）重新读取，未启用闸门时也会广播
+ *
+ * @className: SeckillGate
+ * @author: sutianyu
+ * @date: 2023-02-28 10:20
+ **/
+@Slf4j
+@Component
+public class SeckillGate {
+
+    private static final String OPEN = "OPEN";
+
+    private final StringRedisTemplate stringRedisTemplate;
+
+    private final RedisMessageListenerContainer listenerContainer;
+
+    private final SeckillProperties.Gate properties;
+
+    private final Map<Long, Closed> closed = new ConcurrentHashMap<>();
+
+    private final List<Consumer<Long>> openListeners = new CopyOnWriteArrayList<>();
+
+    private final LongAdder rejects = new LongAdder();
+
+    public SeckillGate(StringRedisTemplate stringRedisTemplate,
+                       RedisMessageListenerContainer listenerContainer,
+                       SeckillProperties seckillProperties) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.listenerContainer = listenerContainer;
+        this.properties = seckillProperties.getGate();
+    }
+
+    @PostConstruct
+    private void subscribe() {
+        // 消息格式：voucherId|状态|截止时间
+        listenerContainer.addMessageListener((message, pattern) -> {
+            String[] parts = new String(message.getBody(), StandardCharsets.UTF_8).split("\\|");
+            Long voucherId = Long.valueOf(parts[0]);
+            if (OPEN.equals(parts[1])) {
+                closed.remove(voucherId);
+                notifyOpen(voucherId);
+            } else if (properties.isEnabled()) {
+                closed.put(voucherId, new Closed(SeckillAdmission.Admission.valueOf(parts[1]), Long.parseLong(parts[2])));
+            }
+        }, new ChannelTopic(SECKILL_GATE_CHANNEL));
+    }
+
+    /**
+     * 订阅开放广播（包括本实例发出的），用于清理本地缓存的秒杀券信息
+     */
+    public void onOpen(Consumer<Long> listener) {
+        openListeners.add(listener);
+    }
+
+    private void notifyOpen(Long voucherId) {
+        for (Consumer<Long> listener : openListeners) {
+            try {
+                listener.accept(voucherId);
+            } catch (Exception e) {
+                log.warn("处理秒杀闸门开放广播失败, voucherId={}", voucherId, e);
+            }
+        }
+    }
+
+    /**
+     * 检查秒杀券是否被拦截
+     *
+     * @return 拦截原因，放行时返回null
+     */
+    public SeckillAdmission.Admission check(Long voucherId) {
+        Closed entry = closed.get(voucherId);
+        if (entry == null) {
+            return null;
+        }
+        if (entry.until <= System.currentTimeMillis()) {
+            closed.remove(voucherId, entry);
+            return null;
+        }
+        rejects.increment();
+        return entry.reason;
+    }
+
+    /**
+     * 库存已售罄，广播给所有实例
+     */
+    public void soldOut(Long voucherId) {
+        close(voucherId, SeckillAdmission.Admission.SOLD_OUT, System.currentTimeMillis() + properties.getSoldOutTtlMillis(), true);
+    }
+
+    /**
+     * 秒杀已经结束，广播给所有实例；保留到结束时间之后一段时间，结束时间延长时由重新开放撤销
+     *
+     * @param endMillis 结束时间，未知时传null，从当前时间起算
+     */
+    public void ended(Long voucherId, Long endMillis) {
+        long now = System.currentTimeMillis();
+        long until = Math.max(endMillis != null ? endMillis : now, now) + properties.getEndedRetainMillis();
+        close(voucherId, SeckillAdmission.Admission.ENDED, until, true);
+    }
+
+    /**
+     * 秒杀尚未开始，只记录在本地（各实例很快就会各自发现）
+     *
+     * @param beginMillis 开始时间，未知时传null，由配置的间隔后重新判断
+     */
+    public void notStarted(Long voucherId, Long beginMillis) {
+        long until = beginMillis != null ? beginMillis
+                : System.currentTimeMillis() + properties.getNotStartedRecheckMillis();
+        close(voucherId, SeckillAdmission.Admission.NOT_STARTED, until, false);
+    }
+
+    /**
+     * 重新开放（归还了库存或重新预热），广播给所有实例
+     */
+    public void open(Long voucherId) {
+        closed.remove(voucherId);
+        publish(voucherId + "|" + OPEN);
+    }
+
+    private void close(Long voucherId, SeckillAdmission.Admission reason, long until, boolean broadcast) {
+        if (!properties.isEnabled()) {
+            return;
+        }
+        Closed previous = closed.put(voucherId, new Closed(reason, until));
+        // 同一原因已经广播过，不重复广播
+        if (broadcast && (previous == null || previous.reason != reason)) {
+            publish(voucherId + "|" + reason.name() + "|" + until);
+        }
+    }
+
+    /**
+     * 清理已到期的记录，到期但不再被访问的秒杀券不会在 check 中移除
+     */
+    @Scheduled(fixedDelayString = "${hmdp.seckill.gate.prune-interval-ms:60000}")
+    public void prune() {
+        long now = System.currentTimeMillis();
+        closed.values().removeIf(entry -> entry.until <= now);
+    }
+
+    private void publish(String message) {
+        try {
+            stringRedisTemplate.convertAndSend(SECKILL_GATE_CHANNEL, message);
+        } catch (Exception e) {
+            // 广播失败不影响本地闸门，其它实例会自行发现
+            log.warn("秒杀闸门广播失败, message={}", message, e);
+        }
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", properties.isEnabled());
+        stats.put("rejects", rejects.sum());
+        Map<Long, String> vouchers = new LinkedHashMap<>();
+        closed.forEach((voucherId, entry) -> vouchers.put(voucherId, entry.reason.name()));
+        stats.put("closed", vouchers);
+        return stats;
+    }
+
+    private static class Closed {
+
+        private final SeckillAdmission.Admission reason;
+
+        private final long until;
+
+        Closed(SeckillAdmission.Admission reason, long until) {
+            this.reason = reason;
+            this.until = until;
+        }
+    }
+}
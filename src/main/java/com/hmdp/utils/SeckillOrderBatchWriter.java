@@ -0,0 +1,224 @@
+package com.hmdp.utils;
+
+import com.hmdp.config.SeckillProperties;
+import com.hmdp.entity.VoucherOrder;
+import com.hmdp.service.IVoucherOrderService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 订单批量写入：订单先进入内存队列，由写入线程按数量与时间攒批，
+ * 每批在一个事务中多行插入订单，并按优惠券合并扣减库存（stock = stock - n）
+ *
+ * @className: SeckillOrderBatchWriter
+ * @author: sutianyu
+ * @date: 2023-02-24 15:10
+ **/
+@Slf4j
+@Component
+public class SeckillOrderBatchWriter {
+
+    private final IVoucherOrderService voucherOrderService;
+
+    private final SeckillProperties.BatchWriter properties;
+
+    private final boolean enabled;
+
+    private final BlockingQueue<PendingOrder> queue;
+
+    private Thread flusher;
+
+    private volatile boolean running;
+
+    private final LongAdder batches = new LongAdder();
+
+    private final LongAdder orders = new LongAdder();
+
+    private final LongAdder rejected = new LongAdder();
+
+    private final LongAdder queueFull = new LongAdder();
+
+    private final LongAdder fallbacks = new LongAdder();
+
+    /**
+     * 每批从开始写入到事务提交的耗时
+     */
+    private final LatencyHistogram commitLatency = new LatencyHistogram();
+
+    private final long startMillis = System.currentTimeMillis();
+
+    public SeckillOrderBatchWriter(IVoucherOrderService voucherOrderService, SeckillProperties seckillProperties) {
+        this.voucherOrderService = voucherOrderService;
+        this.properties = seckillProperties.getBatchWriter();
+        this.enabled = seckillProperties.getMode() == SeckillProperties.Mode.REDIS
+                && seckillProperties.getOrderStream().isEnabled() && properties.isEnabled();
+        this.queue = new ArrayBlockingQueue<>(Math.max(1, properties.getQueueCapacity()));
+    }
+
+    @PostConstruct
+    private void start() {
+        if (!enabled) {
+            return;
+        }
+        running = true;
+        flusher = new Thread(this::flushLoop, "seckill-order-writer");
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    /**
+     * 停止接收新订单，写完队列中剩余的订单后退出
+     */
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        running = false;
+        if (flusher != null) {
+            flusher.join(TimeUnit.SECONDS.toMillis(10));
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 提交一个订单，写入完成后返回是否成功创建（数据库库存不足时为false）
+     * 队列已满时立即以 RejectedExecutionException 失败
+     */
+    public CompletableFuture<Boolean> submit(VoucherOrder voucherOrder) {
+        PendingOrder pending = new PendingOrder(voucherOrder);
+        if (!running || !queue.offer(pending)) {
+            queueFull.increment();
+            pending.future.completeExceptionally(new RejectedExecutionException("订单写入队列已满"));
+        }
+        return pending.future;
+    }
+
+    private void flushLoop() {
+        List<PendingOrder> batch = new ArrayList<>(properties.getMaxBatchSize());
+        long maxDelayNanos = TimeUnit.MILLISECONDS.toNanos(properties.getMaxDelayMillis());
+        while (running || !queue.isEmpty()) {
+            try {
+                // 1.等待第一个订单
+                PendingOrder first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                // 2.攒批：达到批量上限或等待超时即写入
+                long deadline = System.nanoTime() + maxDelayNanos;
+                while (batch.size() < properties.getMaxBatchSize()) {
+                    if (queue.drainTo(batch, properties.getMaxBatchSize() - batch.size()) > 0) {
+                        continue;
+                    }
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) {
+                        break;
+                    }
+                    PendingOrder next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+                // 3.写入
+                write(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                log.error("订单批量写入线程异常", e);
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void write(List<PendingOrder> batch) {
+        List<VoucherOrder> voucherOrders = new ArrayList<>(batch.size());
+        for (PendingOrder pending : batch) {
+            voucherOrders.add(pending.order);
+        }
+        long start = System.nanoTime();
+        List<VoucherOrder> failed;
+        try {
+            failed = voucherOrderService.saveAdmittedOrders(voucherOrders);
+        } catch (Exception e) {
+            // 整批失败时逐条写入，避免一个有问题的订单拖累整批
+            log.warn("订单批量写入失败，改为逐条写入, size={}", batch.size(), e);
+            fallbacks.increment();
+            writeOneByOne(batch);
+            return;
+        }
+        commitLatency.recordSince(start);
+        batches.increment();
+        orders.add(batch.size());
+        rejected.add(failed.size());
+        Set<Long> failedIds = new HashSet<>();
+        for (VoucherOrder voucherOrder : failed) {
+            failedIds.add(voucherOrder.getId());
+        }
+        for (PendingOrder pending : batch) {
+            pending.future.complete(!failedIds.contains(pending.order.getId()));
+        }
+    }
+
+    private void writeOneByOne(List<PendingOrder> batch) {
+        for (PendingOrder pending : batch) {
+            try {
+                boolean saved = voucherOrderService.saveAdmittedOrder(pending.order);
+                if (!saved) {
+                    rejected.increment();
+                }
+                orders.increment();
+                pending.future.complete(saved);
+            } catch (Exception e) {
+                pending.future.completeExceptionally(e);
+            }
+        }
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        long batchCount = batches.sum();
+        long orderCount = orders.sum();
+        long elapsedMillis = Math.max(1, System.currentTimeMillis() - startMillis);
+        stats.put("queued", queue.size());
+        stats.put("batches", batchCount);
+        stats.put("orders", orderCount);
+        stats.put("avgBatchSize", batchCount == 0 ? 0 : (double) orderCount / batchCount);
+        stats.put("ordersPerSecond", orderCount * 1000.0 / elapsedMillis);
+        stats.put("rejected", rejected.sum());
+        stats.put("queueFull", queueFull.sum());
+        stats.put("fallbacks", fallbacks.sum());
+        stats.put("commitLatency", commitLatency.snapshot());
+        return stats;
+    }
+
+    private static class PendingOrder {
+
+        private final VoucherOrder order;
+
+        private final CompletableFuture<Boolean> future = new CompletableFuture<>();
+
+        PendingOrder(VoucherOrder order) {
+            this.order = order;
+        }
+    }
+}
@@ -0,0 +1,346 @@
+package com.hmdp.utils;
+
+import cn.hutool.core.bean.BeanUtil;
+import com.hmdp.config.SeckillProperties;
+import com.hmdp.entity.VoucherOrder;
+import com.hmdp.service.IVoucherOrderService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.domain.Range;
+import org.springframework.data.redis.connection.RedisStreamCommands;
+import org.springframework.data.redis.connection.RedisZSetCommands;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.connection.stream.Consumer;
+import org.springframework.data.redis.connection.stream.MapRecord;
+import org.springframework.data.redis.connection.stream.PendingMessage;
+import org.springframework.data.redis.connection.stream.PendingMessages;
+import org.springframework.data.redis.connection.stream.PendingMessagesSummary;
+import org.springframework.data.redis.connection.stream.ReadOffset;
+import org.springframework.data.redis.connection.stream.RecordId;
+import org.springframework.data.redis.connection.stream.StreamOffset;
+import org.springframework.data.redis.connection.stream.StreamReadOptions;
+import org.springframework.data.redis.connection.stream.StringRecord;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 秒杀订单消费者：从 Redis Stream 消费者组读取获得资格的订单并写入数据库
+ * 处理成功后确认并删除消息；处理失败的消息留在待确认列表（PEL）中，
+ * 由定时任务按空闲时间认领重试，超过最大投递次数转入死信队列
+ *
+ * @className: SeckillOrderConsumer
+ * @author: sutianyu
+ * @date: 2023-02-24 10:30
+ **/
+@Slf4j
+@Component
+public class SeckillOrderConsumer {
+
+    private final StringRedisTemplate stringRedisTemplate;
+
+    private final IVoucherOrderService voucherOrderService;
+
+    private final SeckillAdmission seckillAdmission;
+
+    private final SeckillOrderBatchWriter batchWriter;
+
+    private final SeckillProperties.OrderStream properties;
+
+    private final boolean enabled;
+
+    /**
+     * 消费者名称：进程号@主机名，重启后以新名称加入，旧名称下的消息由认领任务接管
+     */
+    private final String consumerName = ManagementFactory.getRuntimeMXBean().getName();
+
+    private ExecutorService workers;
+
+    private volatile boolean running;
+
+    private final LongAdder processed = new LongAdder();
+
+    private final LongAdder rejected = new LongAdder();
+
+    private final LongAdder failures = new LongAdder();
+
+    private final LongAdder retries = new LongAdder();
+
+    private final LongAdder deadLettered = new LongAdder();
+
+    /**
+     * 从写入队列到开始处理的等待时间
+     */
+    private final LatencyHistogram queueDelay = new LatencyHistogram();
+
+    /**
+     * 写入数据库的耗时
+     */
+    private final LatencyHistogram persistLatency = new LatencyHistogram();
+
+    private long lastProcessed;
+
+    private long lastTickMillis = System.currentTimeMillis();
+
+    private volatile double throughput;
+
+    public SeckillOrderConsumer(StringRedisTemplate stringRedisTemplate,
+                                IVoucherOrderService voucherOrderService,
+                                SeckillAdmission seckillAdmission,
+                                SeckillOrderBatchWriter batchWriter,
+                                SeckillProperties seckillProperties) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.voucherOrderService = voucherOrderService;
+        this.seckillAdmission = seckillAdmission;
+        this.batchWriter = batchWriter;
+        this.properties = seckillProperties.getOrderStream();
+        this.enabled = seckillProperties.getMode() == SeckillProperties.Mode.REDIS && properties.isEnabled();
+    }
+
+    @PostConstruct
+    private void start() {
+        if (!enabled) {
+            return;
+        }
+        // 1.创建消费者组，从头消费，已存在时忽略
+        try {
+            stringRedisTemplate.execute((RedisCallback<String>) connection -> ((StringRedisConnection) connection)
+                    .xGroupCreate(properties.getKey(), ReadOffset.from("0"), properties.getGroup(), true));
+        } catch (Exception e) {
+            if (!String.valueOf(e.getMessage()).contains("BUSYGROUP")) {
+                throw e;
+            }
+        }
+        // 2.启动消费线程
+        running = true;
+        AtomicInteger index = new AtomicInteger();
+        workers = Executors.newFixedThreadPool(properties.getWorkers(), r -> {
+            Thread thread = new Thread(r, "seckill-order-" + index.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        for (int i = 0; i < properties.getWorkers(); i++) {
+            workers.execute(this::consume);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        running = false;
+        if (workers != null) {
+            workers.shutdown();
+            workers.awaitTermination(properties.getBlockMillis() * 2, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void consume() {
+        StreamReadOptions options = StreamReadOptions.empty()
+                .count(properties.getBatchSize())
+                .block(Duration.ofMillis(properties.getBlockMillis()));
+        while (running) {
+            try {
+                // 1.读取新消息，没有消息时阻塞等待
+                @SuppressWarnings("unchecked")
+                List<MapRecord<String, Object, Object>> records = stringRedisTemplate.opsForStream().read(
+                        Consumer.from(properties.getGroup(), consumerName), options,
+                        StreamOffset.create(properties.getKey(), ReadOffset.lastConsumed()));
+                if (records == null || records.isEmpty()) {
+                    continue;
+                }
+                // 2.逐条处理
+                for (MapRecord<String, Object, Object> record : records) {
+                    handle(record.getId(), record.getValue());
+                }
+            } catch (Exception e) {
+                if (!running) {
+                    return;
+                }
+                log.error("读取订单消息失败", e);
+                sleepQuietly();
+            }
+        }
+    }
+
+    /**
+     * 处理一条订单消息，成功或确定无法处理时确认，异常时留在待确认列表等待重试
+     * 启用批量写入时交给写入线程，写入完成后再确认，读取线程不等待
+     */
+    private void handle(RecordId id, Map<?, ?> value) {
+        queueDelay.record(TimeUnit.MILLISECONDS.toNanos(System.currentTimeMillis() - id.getTimestamp()));
+        VoucherOrder voucherOrder = BeanUtil.fillBeanWithMap(value, new VoucherOrder(), true);
+        long start = System.nanoTime();
+        if (batchWriter.isEnabled()) {
+            batchWriter.submit(voucherOrder).whenComplete((saved, e) -> {
+                persistLatency.recordSince(start);
+                complete(id, voucherOrder, saved, e);
+            });
+            return;
+        }
+        try {
+            boolean saved = voucherOrderService.saveAdmittedOrder(voucherOrder);
+            persistLatency.recordSince(start);
+            complete(id, voucherOrder, saved, null);
+        } catch (Exception e) {
+            complete(id, voucherOrder, null, e);
+        }
+    }
+
+    private void complete(RecordId id, VoucherOrder voucherOrder, Boolean saved, Throwable error) {
+        if (error != null) {
+            failures.increment();
+            log.error("订单写入失败，等待重试, id={}, order={}", id, voucherOrder, error);
+            return;
+        }
+        try {
+            // 1.数据库库存不足（与Redis不一致），归还资格
+            if (!saved) {
+                rejected.increment();
+                log.warn("数据库库存不足，撤销订单, order={}", voucherOrder);
+                seckillAdmission.rollback(voucherOrder.getVoucherId(), voucherOrder.getUserId());
+            }
+            // 2.确认并删除消息
+            acknowledge(id);
+            processed.increment();
+        } catch (Exception e) {
+            failures.increment();
+            log.error("订单消息确认失败, id={}", id, e);
+        }
+    }
+
+    private void acknowledge(RecordId id) {
+        stringRedisTemplate.opsForStream().acknowledge(properties.getKey(), properties.getGroup(), id);
+        stringRedisTemplate.opsForStream().delete(properties.getKey(), id);
+    }
+
+    /**
+     * 认领空闲超时的待确认消息重新处理（包括已宕机消费者名下的消息），并统计吞吐量
+     */
+    @Scheduled(initialDelayString = "${hmdp.seckill.order-stream.reclaim-interval-ms:5000}",
+            fixedDelayString = "${hmdp.seckill.order-stream.reclaim-interval-ms:5000}")
+    public void reclaimPending() {
+        if (!running) {
+            return;
+        }
+        updateThroughput();
+        try {
+            PendingMessages pending = stringRedisTemplate.opsForStream().pending(
+                    properties.getKey(), properties.getGroup(), Range.unbounded(), properties.getBatchSize() * 10L);
+            for (PendingMessage message : pending) {
+                if (message.getElapsedTimeSinceLastDelivery().toMillis() < properties.getClaimIdleMillis()) {
+                    continue;
+                }
+                // 1.多次投递仍失败，转入死信队列
+                if (message.getTotalDeliveryCount() >= properties.getMaxDeliveries()) {
+                    deadLetter(message);
+                    continue;
+                }
+                // 2.认领后重新处理，其它实例已先认领时返回空
+                List<StringRecord> claimed = stringRedisTemplate.execute((RedisCallback<List<StringRecord>>) connection ->
+                        ((StringRedisConnection) connection).xClaim(properties.getKey(), properties.getGroup(), consumerName,
+                                RedisStreamCommands.XClaimOptions.minIdleMs(properties.getClaimIdleMillis())
+                                        .ids(message.getId())));
+                if (claimed == null) {
+                    continue;
+                }
+                for (StringRecord record : claimed) {
+                    retries.increment();
+                    handle(record.getId(), record.getValue());
+                }
+            }
+        } catch (Exception e) {
+            log.error("认领待确认订单消息失败", e);
+        }
+    }
+
+    /**
+     * 转入死信队列并撤销Redis中的购买资格（归还库存、移出已购用户），用户可以重新抢购
+     * 订单其实已经写入数据库（如写入成功但确认失败）时只确认消息，不撤销资格；
+     * 数据库不可用无法判断时保留消息，下次认领时再处理
+     */
+    private void deadLetter(PendingMessage message) {
+        RecordId id = message.getId();
+        List<MapRecord<String, Object, Object>> records = stringRedisTemplate.opsForStream().range(
+                properties.getKey(), Range.closed(id.getValue(), id.getValue()), RedisZSetCommands.Limit.limit().count(1));
+        if (records != null && !records.isEmpty()) {
+            Map<?, ?> fields = records.get(0).getValue();
+            VoucherOrder voucherOrder = BeanUtil.fillBeanWithMap(fields, new VoucherOrder(), true);
+            // 1.订单已存在，只确认消息
+            if (voucherOrderService.getById(voucherOrder.getId()) != null) {
+                log.warn("订单已写入，确认多次投递的消息, id={}, order={}", id, voucherOrder);
+                acknowledge(id);
+                processed.increment();
+                return;
+            }
+            // 2.撤销购买资格，再写入死信队列供人工排查
+            seckillAdmission.rollback(voucherOrder.getVoucherId(), voucherOrder.getUserId());
+            Map<String, String> value = new HashMap<>();
+            fields.forEach((k, v) -> value.put(k.toString(), v.toString()));
+            value.put("sourceId", id.getValue());
+            value.put("deliveries", String.valueOf(message.getTotalDeliveryCount()));
+            value.put("rolledBack", "true");
+            stringRedisTemplate.opsForStream().add(properties.getDeadLetterKey(), value);
+            log.error("订单消息多次处理失败，已撤销购买资格并转入死信队列, id={}, value={}", id, value);
+        }
+        acknowledge(id);
+        deadLettered.increment();
+    }
+
+    private synchronized void updateThroughput() {
+        long now = System.currentTimeMillis();
+        long current = processed.sum();
+        if (now > lastTickMillis) {
+            throughput = (current - lastProcessed) * 1000.0 / (now - lastTickMillis);
+        }
+        lastProcessed = current;
+        lastTickMillis = now;
+    }
+
+    private void sleepQuietly() {
+        try {
+            Thread.sleep(1000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        if (!enabled) {
+            return stats;
+        }
+        stats.put("consumer", consumerName);
+        // 已确认的消息会被删除，队列长度即未处理完的消息数
+        stats.put("length", stringRedisTemplate.opsForStream().size(properties.getKey()));
+        PendingMessagesSummary summary = stringRedisTemplate.opsForStream().pending(properties.getKey(), properties.getGroup());
+        stats.put("pending", summary == null ? 0 : summary.getTotalPendingMessages());
+        List<MapRecord<String, Object, Object>> oldest = stringRedisTemplate.opsForStream().range(
+                properties.getKey(), Range.unbounded(), RedisZSetCommands.Limit.limit().count(1));
+        stats.put("oldestAgeMillis", oldest == null || oldest.isEmpty()
+                ? 0 : System.currentTimeMillis() - oldest.get(0).getId().getTimestamp());
+        stats.put("deadLetters", stringRedisTemplate.opsForStream().size(properties.getDeadLetterKey()));
+        stats.put("processed", processed.sum());
+        stats.put("throughputPerSecond", throughput);
+        stats.put("rejected", rejected.sum());
+        stats.put("failures", failures.sum());
+        stats.put("retries", retries.sum());
+        stats.put("deadLettered", deadLettered.sum());
+        stats.put("queueDelay", queueDelay.snapshot());
+        stats.put("persistLatency", persistLatency.snapshot());
+        return stats;
+    }
+}
@@ -0,0 +1,276 @@
+package com.hmdp.utils;
+
+import com.hmdp.config.SeckillProperties;
+import com.hmdp.entity.SeckillVoucher;
+import com.hmdp.service.ISeckillVoucherService;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import static com.hmdp.utils.RedisConstants.SECKILL_TIME_KEY;
+
+/**
+ * 秒杀券元数据缓存：开始、结束时间保存在本地与Redis，时间判断只做内存比较
+ * 并维护一份开售日历：用定时线程池在每个秒杀券开始前预热库存，保证开售时库存key已就绪
+ *
+ * @className: SeckillVoucherCache
+ * @author: sutianyu
+ * @date: 2023-03-01 10:30
+ **/
+@Slf4j
+@Component
+public class SeckillVoucherCache {
+
+    private final StringRedisTemplate stringRedisTemplate;
+
+    private final ISeckillVoucherService seckillVoucherService;
+
+    private final SeckillAdmission seckillAdmission;
+
+    private final SeckillGate seckillGate;
+
+    private final SeckillProperties.Calendar properties;
+
+    private final Map<Long, Meta> metas = new ConcurrentHashMap<>();
+
+    /**
+     * 不存在的秒杀券，短时间内不再查询Redis与数据库；新增秒杀券的开放广播会清除对应记录
+     */
+    private final LocalCache<Boolean> missing = new LocalCache<>(10000, 10000);
+
+    /**
+     * 已安排的预热任务
+     */
+    private final Map<Long, ScheduledFuture<?>> scheduled = new ConcurrentHashMap<>();
+
+    private final ScheduledThreadPoolExecutor timer = new ScheduledThreadPoolExecutor(1, r -> {
+        Thread thread = new Thread(r, "seckill-prewarm");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final LongAdder prewarms = new LongAdder();
+
+    public SeckillVoucherCache(StringRedisTemplate stringRedisTemplate,
+                               ISeckillVoucherService seckillVoucherService,
+                               SeckillAdmission seckillAdmission,
+                               SeckillGate seckillGate,
+                               SeckillProperties seckillProperties) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.seckillVoucherService = seckillVoucherService;
+        this.seckillAdmission = seckillAdmission;
+        this.seckillGate = seckillGate;
+        // 其它实例新增秒杀券时会广播开放，清除本地“不存在”的记录
+        seckillGate.onOpen(voucherId -> missing.invalidate(voucherId.toString()));
+        this.properties = seckillProperties.getCalendar();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        timer.shutdownNow();
+    }
+
+    /**
+     * 新增秒杀券时调用：预热库存与元数据，并安排开售前的预热
+     */
+    public void register(SeckillVoucher voucher) {
+        seckillAdmission.preload(voucher, true);
+        Meta meta = new Meta(voucher.getVoucherId(),
+                SeckillAdmission.toMillis(voucher.getBeginTime()), SeckillAdmission.toMillis(voucher.getEndTime()),
+                seckillAdmission.decideWaitingRoom(voucher));
+        metas.put(meta.getVoucherId(), meta);
+        missing.invalidate(meta.getVoucherId().toString());
+        schedulePrewarm(meta);
+    }
+
+    /**
+     * 查询秒杀券元数据：本地 -> Redis -> 数据库，不存在时返回null
+     */
+    public Meta get(Long voucherId) {
+        Meta meta = metas.get(voucherId);
+        if (meta != null) {
+            return meta;
+        }
+        if (missing.get(voucherId.toString()) != null) {
+            return null;
+        }
+        // 1.查询Redis
+        Map<Object, Object> window = stringRedisTemplate.opsForHash().entries(SECKILL_TIME_KEY + voucherId);
+        if (!window.isEmpty()) {
+            meta = new Meta(voucherId,
+                    Long.parseLong(window.get("begin").toString()), Long.parseLong(window.get("end").toString()),
+                    "1".equals(window.get("room")));
+        } else {
+            // 2.查询数据库
+            SeckillVoucher voucher = seckillVoucherService.getById(voucherId);
+            if (voucher == null) {
+                missing.put(voucherId.toString(), Boolean.TRUE);
+                return null;
+            }
+            seckillAdmission.preload(voucher, false);
+            meta = meta(voucher);
+        }
+        metas.put(voucherId, meta);
+        schedulePrewarm(meta);
+        return meta;
+    }
+
+    /**
+     * 判断秒杀时间窗口，只做内存比较（首次访问除外）
+     *
+     * @return 不在时间窗口内的原因，秒杀券不存在时返回 NOT_LOADED，可以购买时返回null
+     */
+    public SeckillAdmission.Admission checkWindow(Long voucherId) {
+        Meta meta = get(voucherId);
+        if (meta == null) {
+            return SeckillAdmission.Admission.NOT_LOADED;
+        }
+        long now = System.currentTimeMillis();
+        if (now < meta.getBeginMillis()) {
+            return SeckillAdmission.Admission.NOT_STARTED;
+        }
+        if (now > meta.getEndMillis()) {
+            return SeckillAdmission.Admission.ENDED;
+        }
+        return null;
+    }
+
+    /**
+     * 定期扫描即将开售的秒杀券，加载元数据并安排预热（包括其它实例新增的秒杀券），清理已结束的秒杀券
+     */
+    @Scheduled(fixedDelayString = "${hmdp.seckill.calendar.scan-interval-ms:300000}")
+    public void scanCalendar() {
+        try {
+            LocalDateTime now = LocalDateTime.now();
+            List<SeckillVoucher> upcoming = seckillVoucherService.query()
+                    .gt("end_time", now)
+                    .lt("begin_time", now.plusNanos(TimeUnit.MILLISECONDS.toNanos(properties.getHorizonMillis())))
+                    .list();
+            for (SeckillVoucher voucher : upcoming) {
+                Meta meta = meta(voucher);
+                refresh(meta);
+                schedulePrewarm(meta);
+            }
+        } catch (Exception e) {
+            log.error("扫描秒杀日历失败", e);
+        }
+        long nowMillis = System.currentTimeMillis();
+        metas.values().removeIf(meta -> meta.getEndMillis() < nowMillis - properties.getRetainEndedMillis());
+    }
+
+    /**
+     * 在开始前 aheadMillis 预热；已经开始的秒杀券立即预热（不覆盖已扣减的库存）
+     */
+    private void schedulePrewarm(Meta meta) {
+        long delay = meta.getBeginMillis() - properties.getAheadMillis() - System.currentTimeMillis();
+        if (delay > properties.getHorizonMillis() || meta.getEndMillis() < System.currentTimeMillis()) {
+            return;
+        }
+        scheduled.computeIfAbsent(meta.getVoucherId(), voucherId ->
+                timer.schedule(() -> prewarm(voucherId), Math.max(0, delay), TimeUnit.MILLISECONDS));
+    }
+
+    private void prewarm(Long voucherId) {
+        Meta meta;
+        try {
+            SeckillVoucher voucher = seckillVoucherService.getById(voucherId);
+            if (voucher == null) {
+                scheduled.remove(voucherId);
+                return;
+            }
+            seckillAdmission.preload(voucher, false);
+            meta = meta(voucher);
+            refresh(meta);
+            prewarms.increment();
+            log.debug("秒杀券预热完成, voucherId={}", voucherId);
+        } catch (Exception e) {
+            // 预热失败时下次扫描重新安排，请求到达时也会懒加载
+            log.error("秒杀券预热失败, voucherId={}", voucherId, e);
+            scheduled.remove(voucherId);
+            return;
+        }
+        // 保留记录直到秒杀结束后被清理，避免重复预热
+        timer.schedule(() -> scheduled.remove(voucherId),
+                Math.max(0, meta.getEndMillis() - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 正在秒杀且需要排队的秒杀券
+     */
+    public List<Meta> waitingRooms() {
+        long now = System.currentTimeMillis();
+        List<Meta> rooms = new ArrayList<>();
+        for (Meta meta : metas.values()) {
+            if (meta.isWaitingRoom() && meta.getBeginMillis() <= now && now <= meta.getEndMillis()) {
+                rooms.add(meta);
+            }
+        }
+        return rooms;
+    }
+
+    /**
+     * 更新本地元数据；时间窗口有变化（如延长结束时间）时重新开放闸门，撤销各实例已记录的未开始、已结束
+     */
+    private void refresh(Meta meta) {
+        Meta previous = metas.put(meta.getVoucherId(), meta);
+        if (previous != null && (previous.getBeginMillis() != meta.getBeginMillis()
+                || previous.getEndMillis() != meta.getEndMillis())) {
+            seckillGate.open(meta.getVoucherId());
+        }
+    }
+
+    /**
+     * 由数据库记录刷新时间窗口；排队标记沿用已加载的元数据或读取Redis，不按实时库存重新计算
+     */
+    private Meta meta(SeckillVoucher voucher) {
+        Meta loaded = metas.get(voucher.getVoucherId());
+        boolean room = loaded != null ? loaded.isWaitingRoom() : seckillAdmission.isWaitingRoom(voucher.getVoucherId());
+        return new Meta(voucher.getVoucherId(),
+                SeckillAdmission.toMillis(voucher.getBeginTime()), SeckillAdmission.toMillis(voucher.getEndTime()),
+                room);
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("vouchers", metas.size());
+        stats.put("pendingPrewarms", timer.getQueue().size());
+        stats.put("prewarms", prewarms.sum());
+        return stats;
+    }
+
+    @Getter
+    public static class Meta {
+
+        private final Long voucherId;
+
+        private final long beginMillis;
+
+        private final long endMillis;
+
+        /**
+         * 是否需要排队
+         */
+        private final boolean waitingRoom;
+
+        Meta(Long voucherId, long beginMillis, long endMillis, boolean waitingRoom) {
+            this.voucherId = voucherId;
+            this.beginMillis = beginMillis;
+            this.endMillis = endMillis;
+            this.waitingRoom = waitingRoom;
+        }
+    }
+}
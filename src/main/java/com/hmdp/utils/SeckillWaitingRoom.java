@@ -0,0 +1,305 @@
+package com.hmdp.utils;
+
+import cn.hutool.core.util.StrUtil;
+import cn.hutool.crypto.digest.HMac;
+import cn.hutool.crypto.digest.HmacAlgorithm;
+import com.hmdp.config.SeckillProperties;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import static com.hmdp.utils.RedisConstants.SECKILL_ROOM_PASS_KEY;
+import static com.hmdp.utils.RedisConstants.SECKILL_ROOM_QUEUE_KEY;
+import static com.hmdp.utils.RedisConstants.SECKILL_ROOM_STATE_KEY;
+
+/**
+ * 秒杀排队：超大库存的秒杀券不直接开放下单，用户先按到达顺序排队，
+ * 定时任务按配置的速率分批放行，放行的用户凭短期有效的购买凭证下单
+ * 购买凭证为 过期时间.签名，签名覆盖秒杀券、用户与过期时间，下单时只做本地校验，不产生IO
+ *
+ * @className: SeckillWaitingRoom
+ * @author: sutianyu
+ * @date: 2023-03-03 10:00
+ **/
+@Slf4j
+@Component
+public class SeckillWaitingRoom {
+
+    private static final DefaultRedisScript<Long> ENQUEUE_SCRIPT;
+
+    private static final DefaultRedisScript<Long> ADMIT_SCRIPT;
+
+    static {
+        ENQUEUE_SCRIPT = new DefaultRedisScript<>();
+        ENQUEUE_SCRIPT.setLocation(new ClassPathResource("lua/room_enqueue.lua"));
+        ENQUEUE_SCRIPT.setResultType(Long.class);
+        ADMIT_SCRIPT = new DefaultRedisScript<>();
+        ADMIT_SCRIPT.setLocation(new ClassPathResource("lua/room_admit.lua"));
+        ADMIT_SCRIPT.setResultType(Long.class);
+    }
+
+    /**
+     * 排队相关key在秒杀结束后保留的时间
+     */
+    private static final long RETAIN_MILLIS = TimeUnit.HOURS.toMillis(1);
+
+    private final StringRedisTemplate stringRedisTemplate;
+
+    private final SeckillVoucherCache seckillVoucherCache;
+
+    private final SeckillAdmission seckillAdmission;
+
+    private final SeckillProperties.WaitingRoom properties;
+
+    /**
+     * HMac 不是线程安全的，每个线程一个
+     */
+    private final ThreadLocal<HMac> hmac;
+
+    private final LongAdder enqueued = new LongAdder();
+
+    private final LongAdder admitted = new LongAdder();
+
+    private final LongAdder invalidTokens = new LongAdder();
+
+    public SeckillWaitingRoom(StringRedisTemplate stringRedisTemplate,
+                              SeckillVoucherCache seckillVoucherCache,
+                              SeckillAdmission seckillAdmission,
+                              SeckillProperties seckillProperties) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.seckillVoucherCache = seckillVoucherCache;
+        this.seckillAdmission = seckillAdmission;
+        this.properties = seckillProperties.getWaitingRoom();
+        // 未启用时不签发也不校验凭证；启用时必须配置所有实例一致的密钥，否则凭证只在签发的实例有效
+        if (!properties.isEnabled()) {
+            this.hmac = null;
+            return;
+        }
+        String secret = properties.getTokenSecret();
+        if (StrUtil.isBlank(secret)) {
+            throw new IllegalStateException("已启用秒杀排队，但未配置购买凭证签名密钥 hmdp.seckill.waiting-room.token-secret");
+        }
+        byte[] key = secret.getBytes(StandardCharsets.UTF_8);
+        this.hmac = ThreadLocal.withInitial(() -> new HMac(HmacAlgorithm.HmacSHA256, key));
+    }
+
+    /**
+     * 加入排队，已经在排队时返回当前位置，已放行时返回购买凭证
+     */
+    public Ticket enqueue(Long voucherId, Long userId) {
+        if (!properties.isEnabled()) {
+            return Ticket.none();
+        }
+        SeckillVoucherCache.Meta meta = seckillVoucherCache.get(voucherId);
+        if (meta == null || !meta.isWaitingRoom()) {
+            return Ticket.none();
+        }
+        long now = System.currentTimeMillis();
+        if (now > meta.getEndMillis()) {
+            return Ticket.none();
+        }
+        Long rank = stringRedisTemplate.execute(ENQUEUE_SCRIPT, keys(voucherId),
+                userId.toString(), String.valueOf(now), String.valueOf(meta.getEndMillis() + RETAIN_MILLIS));
+        if (rank == null) {
+            return Ticket.none();
+        }
+        if (rank < 0) {
+            return poll(voucherId, userId);
+        }
+        enqueued.increment();
+        return Ticket.waiting(rank + 1, estimateWaitMillis(rank + 1));
+    }
+
+    /**
+     * 查询排队状态：排队中返回位置，已放行返回购买凭证，不在队列中返回 NONE
+     */
+    public Ticket poll(Long voucherId, Long userId) {
+        if (!properties.isEnabled()) {
+            return Ticket.none();
+        }
+        // 1.是否已放行
+        Double expireAt = stringRedisTemplate.opsForZSet().score(SECKILL_ROOM_PASS_KEY + voucherId, userId.toString());
+        if (expireAt != null && expireAt.longValue() > System.currentTimeMillis()) {
+            return Ticket.admitted(sign(voucherId, userId, expireAt.longValue()), expireAt.longValue());
+        }
+        // 2.排队位置
+        Long rank = stringRedisTemplate.opsForZSet().rank(SECKILL_ROOM_QUEUE_KEY + voucherId, userId.toString());
+        if (rank == null) {
+            return Ticket.none();
+        }
+        return Ticket.waiting(rank + 1, estimateWaitMillis(rank + 1));
+    }
+
+    /**
+     * 秒杀券是否需要排队，只查询本地元数据；未启用排队时都不需要
+     */
+    public boolean required(Long voucherId) {
+        if (!properties.isEnabled()) {
+            return false;
+        }
+        SeckillVoucherCache.Meta meta = seckillVoucherCache.get(voucherId);
+        return meta != null && meta.isWaitingRoom();
+    }
+
+    /**
+     * 校验购买凭证：只做签名与过期时间的本地校验
+     */
+    public boolean verify(Long voucherId, Long userId, String token) {
+        if (StrUtil.isBlank(token)) {
+            invalidTokens.increment();
+            return false;
+        }
+        int dot = token.indexOf('.');
+        long expireAt;
+        try {
+            expireAt = Long.parseLong(token.substring(0, Math.max(dot, 0)));
+        } catch (NumberFormatException e) {
+            invalidTokens.increment();
+            return false;
+        }
+        if (expireAt <= System.currentTimeMillis()
+                || !MessageDigest.isEqual(token.getBytes(StandardCharsets.UTF_8),
+                sign(voucherId, userId, expireAt).getBytes(StandardCharsets.UTF_8))) {
+            invalidTokens.increment();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * 按配置的间隔放行，所有实例都执行，由脚本保证每个间隔只放行一批
+     */
+    @Scheduled(fixedRateString = "${hmdp.seckill.waiting-room.admit-interval-millis:1000}")
+    public void admit() {
+        if (!properties.isEnabled()) {
+            return;
+        }
+        for (SeckillVoucherCache.Meta meta : seckillVoucherCache.waitingRooms()) {
+            try {
+                admit(meta);
+            } catch (Exception e) {
+                log.error("排队放行失败, voucherId={}", meta.getVoucherId(), e);
+            }
+        }
+    }
+
+    private void admit(SeckillVoucherCache.Meta meta) {
+        Long voucherId = meta.getVoucherId();
+        // 已售罄时不再放行，排队的用户保持在队列中，归还库存后继续放行
+        Long stock = seckillAdmission.stock(voucherId);
+        if (stock != null && stock <= 0) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        // 最小间隔略小于放行间隔，容忍各实例定时任务的抖动
+        long minGap = properties.getAdmitIntervalMillis() * 9 / 10;
+        Long count = stringRedisTemplate.execute(ADMIT_SCRIPT, keys(voucherId),
+                String.valueOf(now), String.valueOf(minGap), String.valueOf(properties.getBatchSize()),
+                String.valueOf(now + properties.getTokenTtlMillis()));
+        if (count != null && count > 0) {
+            admitted.add(count);
+            log.debug("排队放行, voucherId={}, count={}", voucherId, count);
+        }
+    }
+
+    private String sign(Long voucherId, Long userId, long expireAt) {
+        return expireAt + "." + hmac.get().digestHex(voucherId + ":" + userId + ":" + expireAt);
+    }
+
+    private long estimateWaitMillis(long position) {
+        long batches = (position + properties.getBatchSize() - 1) / properties.getBatchSize();
+        return batches * properties.getAdmitIntervalMillis();
+    }
+
+    private static List<String> keys(Long voucherId) {
+        return Arrays.asList(SECKILL_ROOM_QUEUE_KEY + voucherId, SECKILL_ROOM_PASS_KEY + voucherId,
+                SECKILL_ROOM_STATE_KEY + voucherId);
+    }
+
+    /**
+     * 排队状态：队列长度、已放行人数
+     */
+    public Map<String, Object> stats(Long voucherId) {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("required", required(voucherId));
+        stats.put("queued", stringRedisTemplate.opsForZSet().zCard(SECKILL_ROOM_QUEUE_KEY + voucherId));
+        stats.put("holdingPass", stringRedisTemplate.opsForZSet().zCard(SECKILL_ROOM_PASS_KEY + voucherId));
+        Object total = stringRedisTemplate.opsForHash().get(SECKILL_ROOM_STATE_KEY + voucherId, "admitted");
+        stats.put("admitted", total == null ? 0 : Long.parseLong(total.toString()));
+        return stats;
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", properties.isEnabled());
+        stats.put("enqueued", enqueued.sum());
+        stats.put("admitted", admitted.sum());
+        stats.put("invalidTokens", invalidTokens.sum());
+        return stats;
+    }
+
+    public enum Status {
+        /**
+         * 不需要排队或不在队列中
+         */
+        NONE,
+        WAITING,
+        ADMITTED
+    }
+
+    @Getter
+    public static class Ticket {
+
+        private final Status status;
+
+        /**
+         * 排队位置，从1开始
+         */
+        private final Long position;
+
+        /**
+         * 预计等待时间（毫秒）
+         */
+        private final Long estimatedWaitMillis;
+
+        /**
+         * 购买凭证，下单时放在请求头 X-Seckill-Token 中
+         */
+        private final String token;
+
+        private final Long expireAt;
+
+        private Ticket(Status status, Long position, Long estimatedWaitMillis, String token, Long expireAt) {
+            this.status = status;
+            this.position = position;
+            this.estimatedWaitMillis = estimatedWaitMillis;
+            this.token = token;
+            this.expireAt = expireAt;
+        }
+
+        static Ticket none() {
+            return new Ticket(Status.NONE, null, null, null, null);
+        }
+
+        static Ticket waiting(long position, long estimatedWaitMillis) {
+            return new Ticket(Status.WAITING, position, estimatedWaitMillis, null, null);
+        }
+
+        static Ticket admitted(String token, long expireAt) {
+            return new Ticket(Status.ADMITTED, null, null, token, expireAt);
+        }
+    }
+}
@@ -0,0 +1,406 @@
+package com.hmdp.utils;
+
+import cn.hutool.core.lang.hash.MurmurHash;
+import com.hmdp.config.SeckillProperties;
+import com.hmdp.entity.SeckillVoucher;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import static com.hmdp.utils.RedisConstants.SECKILL_ORDER_KEY;
+import static com.hmdp.utils.RedisConstants.SECKILL_SEGMENT_KEY;
+import static com.hmdp.utils.RedisConstants.SECKILL_STOCK_KEY;
+
+/**
+ * 分段库存：超热秒杀券的库存拆成K个计数器，避免单个key成为串行点
+ * 用户按id哈希固定归属一个分段，一人一单记录在所属分段；所属分段售空时依次到后续分段扣减，
+ * 所有分段都售空才算售罄。分段key带不同的hash tag，分散到不同的slot（集群）或分片
+ * 剩余库存较多但分布不均时，定时把库存从富余分段挪到空分段，减少跨分段扣减的次数
+ *
+ * @className: SegmentedStock
+ * @author: sutianyu
+ * @date: 2023-02-27 10:15
+ **/
+@Slf4j
+@Component
+public class SegmentedStock {
+
+    private static final DefaultRedisScript<Long> SEGMENT_SCRIPT;
+
+    private static final DefaultRedisScript<Long> TAKE_SCRIPT;
+
+    private static final DefaultRedisScript<Long> ROLLBACK_SCRIPT;
+
+    static {
+        SEGMENT_SCRIPT = new DefaultRedisScript<>();
+        SEGMENT_SCRIPT.setLocation(new ClassPathResource("lua/seckill_segment.lua"));
+        SEGMENT_SCRIPT.setResultType(Long.class);
+        TAKE_SCRIPT = new DefaultRedisScript<>();
+        TAKE_SCRIPT.setLocation(new ClassPathResource("lua/stock_take.lua"));
+        TAKE_SCRIPT.setResultType(Long.class);
+        ROLLBACK_SCRIPT = new DefaultRedisScript<>();
+        ROLLBACK_SCRIPT.setLocation(new ClassPathResource("lua/seckill_rollback.lua"));
+        ROLLBACK_SCRIPT.setResultType(Long.class);
+    }
+
+    /**
+     * 未分段的秒杀券
+     */
+    private static final Layout NONE = new Layout(0, 0, 0);
+
+    private final StringRedisTemplate stringRedisTemplate;
+
+    private final SeckillProperties.Segment properties;
+
+    /**
+     * 秒杀券的分段信息，包括未分段的（NONE），过期或收到开放广播后重新读取
+     */
+    private final LocalCache<Layout> layouts;
+
+    /**
+     * 本实例访问过的分段秒杀券，定时检查是否需要重新分配库存
+     */
+    private final Map<Long, Layout> active = new ConcurrentHashMap<>();
+
+    private final LongAdder spills = new LongAdder();
+
+    private final LongAdder rebalances = new LongAdder();
+
+    private final LongAdder moved = new LongAdder();
+
+    public SegmentedStock(StringRedisTemplate stringRedisTemplate, SeckillProperties seckillProperties,
+                          SeckillGate seckillGate) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.properties = seckillProperties.getSegment();
+        this.layouts = new LocalCache<>(10000, 60000);
+        // 重新预热、时间窗口变化会广播开放，其它实例缓存的分段信息（包括“未分段”）需要重新读取，
+        // 否则最长一个缓存周期内仍按旧的分段方式或时间窗口判断
+        seckillGate.onOpen(voucherId -> layouts.invalidate(SECKILL_SEGMENT_KEY + voucherId));
+    }
+
+    /**
+     * 预热时按库存决定是否分段，分段时写入各分段库存与分段信息
+     *
+     * @param overwrite 是否覆盖已有数据，懒加载时不覆盖
+     * @return 是否分段
+     */
+    public boolean preload(SeckillVoucher voucher, long beginMillis, long endMillis, boolean overwrite) {
+        Long voucherId = voucher.getVoucherId();
+        String layoutKey = SECKILL_SEGMENT_KEY + voucherId;
+        layouts.invalidate(layoutKey);
+        if (!overwrite && Boolean.TRUE.equals(stringRedisTemplate.hasKey(layoutKey))) {
+            // 已分段时只更新时间窗口，结束时间可能被延长
+            Map<String, String> window = new LinkedHashMap<>();
+            window.put("begin", String.valueOf(beginMillis));
+            window.put("end", String.valueOf(endMillis));
+            stringRedisTemplate.opsForHash().putAll(layoutKey, window);
+            return true;
+        }
+        if (!properties.isEnabled() || voucher.getStock() < properties.getMinStock()) {
+            return false;
+        }
+        // 1.先写各分段库存
+        int segments = Math.max(1, properties.getSegments());
+        long[] split = split(voucher.getStock(), segments);
+        for (int i = 0; i < segments; i++) {
+            if (overwrite) {
+                stringRedisTemplate.opsForValue().set(stockKey(voucherId, i), String.valueOf(split[i]));
+            } else {
+                stringRedisTemplate.opsForValue().setIfAbsent(stockKey(voucherId, i), String.valueOf(split[i]));
+            }
+        }
+        // 2.再写分段信息，存在分段信息即视为预热完成
+        Map<String, String> layout = new LinkedHashMap<>();
+        layout.put("segments", String.valueOf(segments));
+        layout.put("begin", String.valueOf(beginMillis));
+        layout.put("end", String.valueOf(endMillis));
+        stringRedisTemplate.opsForHash().putAll(layoutKey, layout);
+        return true;
+    }
+
+    /**
+     * 查询秒杀券的分段信息，未分段时返回null
+     */
+    public Layout layout(Long voucherId) {
+        String layoutKey = SECKILL_SEGMENT_KEY + voucherId;
+        Layout layout = layouts.get(layoutKey);
+        if (layout == null) {
+            Map<Object, Object> fields = stringRedisTemplate.opsForHash().entries(layoutKey);
+            layout = fields.isEmpty() ? NONE : new Layout(
+                    Integer.parseInt(fields.get("segments").toString()),
+                    Long.parseLong(fields.get("begin").toString()),
+                    Long.parseLong(fields.get("end").toString()));
+            layouts.put(layoutKey, layout);
+        }
+        if (layout == NONE) {
+            return null;
+        }
+        active.put(voucherId, layout);
+        return layout;
+    }
+
+    /**
+     * 在分段库存中判断购买资格并扣减库存
+     */
+    public SeckillAdmission.Admission admit(Long voucherId, Long userId, Layout layout) {
+        // 1.时间窗口
+        long now = System.currentTimeMillis();
+        if (now < layout.getBeginMillis()) {
+            return SeckillAdmission.Admission.NOT_STARTED;
+        }
+        if (now > layout.getEndMillis()) {
+            return SeckillAdmission.Admission.ENDED;
+        }
+        // 2.在所属分段记录用户并扣减
+        int segments = layout.getSegments();
+        int home = home(userId, segments);
+        Long code = stringRedisTemplate.execute(SEGMENT_SCRIPT,
+                Arrays.asList(stockKey(voucherId, home), orderKey(voucherId, home)), userId.toString());
+        if (code != null && code == 2) {
+            return SeckillAdmission.Admission.DUPLICATE;
+        }
+        if (code != null && code == 0) {
+            return SeckillAdmission.Admission.OK;
+        }
+        layout.markEmpty(home, now + properties.getEmptyHintMillis());
+        // 3.所属分段已空，先尝试最近没有售空过的分段，再尝试其余分段，避免因为过时的标记误判售罄
+        spills.increment();
+        List<Integer> skipped = new ArrayList<>();
+        for (int offset = 1; offset < segments; offset++) {
+            int segment = (home + offset) % segments;
+            if (layout.isEmpty(segment, now)) {
+                skipped.add(segment);
+                continue;
+            }
+            if (take(voucherId, segment, layout, now)) {
+                return SeckillAdmission.Admission.OK;
+            }
+        }
+        for (int segment : skipped) {
+            if (take(voucherId, segment, layout, now)) {
+                return SeckillAdmission.Admission.OK;
+            }
+        }
+        // 4.全部售空，撤销用户记录
+        stringRedisTemplate.opsForSet().remove(orderKey(voucherId, home), userId.toString());
+        return SeckillAdmission.Admission.SOLD_OUT;
+    }
+
+    private boolean take(Long voucherId, int segment, Layout layout, long now) {
+        Long taken = stringRedisTemplate.execute(TAKE_SCRIPT,
+                Collections.singletonList(stockKey(voucherId, segment)), "1");
+        if (taken != null && taken == 1) {
+            return true;
+        }
+        layout.markEmpty(segment, now + properties.getEmptyHintMillis());
+        return false;
+    }
+
+    /**
+     * 撤销购买资格：库存归还到用户所属分段（库存不区分来源分段）
+     */
+    public void rollback(Long voucherId, Long userId, Layout layout) {
+        int home = home(userId, layout.getSegments());
+        stringRedisTemplate.execute(ROLLBACK_SCRIPT,
+                Arrays.asList(stockKey(voucherId, home), orderKey(voucherId, home)), userId.toString());
+        layout.clearEmpty(home);
+    }
+
+    /**
+     * 各分段库存之和
+     */
+    public long stock(Long voucherId, Layout layout) {
+        long total = 0;
+        for (long stock : segmentStocks(voucherId, layout)) {
+            total += stock;
+        }
+        return total;
+    }
+
+    private long[] segmentStocks(Long voucherId, Layout layout) {
+        List<String> keys = new ArrayList<>(layout.getSegments());
+        for (int i = 0; i < layout.getSegments(); i++) {
+            keys.add(stockKey(voucherId, i));
+        }
+        List<String> values = stringRedisTemplate.opsForValue().multiGet(keys);
+        long[] stocks = new long[layout.getSegments()];
+        for (int i = 0; values != null && i < values.size(); i++) {
+            stocks[i] = values.get(i) == null ? 0 : Long.parseLong(values.get(i));
+        }
+        return stocks;
+    }
+
+    /**
+     * 定时检查进行中的分段秒杀券，把库存从富余分段挪到库存不足平均值一半的分段
+     * 剩余库存少于分段数的2倍时不再挪动，由跨分段扣减兜底，避免挪动途中所有分段同时为空而误判售罄
+     */
+    @Scheduled(initialDelayString = "${hmdp.seckill.segment.rebalance-interval-ms:1000}",
+            fixedDelayString = "${hmdp.seckill.segment.rebalance-interval-ms:1000}")
+    public void rebalance() {
+        long now = System.currentTimeMillis();
+        active.forEach((voucherId, layout) -> {
+            if (now > layout.getEndMillis()) {
+                active.remove(voucherId);
+                return;
+            }
+            if (now < layout.getBeginMillis()) {
+                return;
+            }
+            try {
+                rebalance(voucherId, layout);
+            } catch (Exception e) {
+                log.error("分段库存重新分配失败, voucherId={}", voucherId, e);
+            }
+        });
+    }
+
+    private void rebalance(Long voucherId, Layout layout) {
+        int segments = layout.getSegments();
+        long[] stocks = segmentStocks(voucherId, layout);
+        long total = Arrays.stream(stocks).sum();
+        if (total < 2L * segments) {
+            return;
+        }
+        long target = total / segments;
+        if (Arrays.stream(stocks).allMatch(stock -> stock * 2 >= target)) {
+            return;
+        }
+        // 同一时刻只有一个实例挪动
+        SimpleRedisLock lock = new SimpleRedisLock("seckill:rebalance:" + voucherId, stringRedisTemplate);
+        if (!lock.tryLock(5)) {
+            return;
+        }
+        try {
+            for (int poor = 0; poor < segments; poor++) {
+                if (stocks[poor] * 2 >= target) {
+                    continue;
+                }
+                long need = target - stocks[poor];
+                for (int rich = 0; rich < segments && need > 0; rich++) {
+                    long spare = stocks[rich] - target;
+                    if (spare <= 0) {
+                        continue;
+                    }
+                    long amount = Math.min(need, spare);
+                    // 先从富余分段扣出，成功后再加到空分段，途中库存只会暂时变少，不会超卖
+                    Long taken = stringRedisTemplate.execute(TAKE_SCRIPT,
+                            Collections.singletonList(stockKey(voucherId, rich)), String.valueOf(amount));
+                    if (taken == null || taken != 1) {
+                        continue;
+                    }
+                    try {
+                        stringRedisTemplate.opsForValue().increment(stockKey(voucherId, poor), amount);
+                    } catch (RuntimeException e) {
+                        // 加到空分段失败，归还给富余分段，否则这部分库存永久丢失
+                        restore(voucherId, rich, amount);
+                        throw e;
+                    }
+                    stocks[rich] -= amount;
+                    stocks[poor] += amount;
+                    need -= amount;
+                    moved.add(amount);
+                }
+                layout.clearEmpty(poor);
+            }
+            rebalances.increment();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void restore(Long voucherId, int segment, long amount) {
+        try {
+            stringRedisTemplate.opsForValue().increment(stockKey(voucherId, segment), amount);
+        } catch (RuntimeException e) {
+            log.error("分段库存归还失败，需要人工补回, voucherId={}, segment={}, amount={}", voucherId, segment, amount, e);
+        }
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", properties.isEnabled());
+        stats.put("activeVouchers", active.keySet());
+        stats.put("spills", spills.sum());
+        stats.put("rebalances", rebalances.sum());
+        stats.put("moved", moved.sum());
+        return stats;
+    }
+
+    /**
+     * 用户所属分段
+     */
+    static int home(long userId, int segments) {
+        return Math.floorMod(MurmurHash.hash32(String.valueOf(userId)), segments);
+    }
+
+    /**
+     * 把库存平均拆分到各分段，余数分给前面的分段
+     */
+    static long[] split(long stock, int segments) {
+        long[] split = new long[segments];
+        for (int i = 0; i < segments; i++) {
+            split[i] = stock / segments + (i < stock % segments ? 1 : 0);
+        }
+        return split;
+    }
+
+    /**
+     * 分段key使用 {voucherId:segment} 作为hash tag，同一分段的库存与已购用户位于同一个slot
+     */
+    private static String stockKey(Long voucherId, int segment) {
+        return SECKILL_STOCK_KEY + "{" + voucherId + ":" + segment + "}";
+    }
+
+    private static String orderKey(Long voucherId, int segment) {
+        return SECKILL_ORDER_KEY + "{" + voucherId + ":" + segment + "}";
+    }
+
+    /**
+     * 分段信息，以及本地的分段售空标记（标记过期后重新尝试）
+     */
+    @Getter
+    public static class Layout {
+
+        private final int segments;
+
+        private final long beginMillis;
+
+        private final long endMillis;
+
+        @Getter(lombok.AccessLevel.NONE)
+        private final AtomicLongArray emptyUntil;
+
+        Layout(int segments, long beginMillis, long endMillis) {
+            this.segments = segments;
+            this.beginMillis = beginMillis;
+            this.endMillis = endMillis;
+            this.emptyUntil = new AtomicLongArray(Math.max(1, segments));
+        }
+
+        boolean isEmpty(int segment, long now) {
+            return emptyUntil.get(segment) > now;
+        }
+
+        void markEmpty(int segment, long until) {
+            emptyUntil.set(segment, until);
+        }
+
+        void clearEmpty(int segment) {
+            emptyUntil.set(segment, 0);
+        }
+    }
+}
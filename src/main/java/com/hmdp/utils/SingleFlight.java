@@ -0,0 +1,57 @@
+package com.hmdp.utils;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * 进程内请求合并（single-flight）
+ * 同一时刻对同一个key的并发调用只执行一次loader，其余调用等待并共享同一个结果
+ * 结果按调用方的类型强转，返回类型不同的调用方必须使用不同的key（如按方法加前缀）
+ *
+ * @className: SingleFlight
+ * @author: sutianyu
+ * @date: 2023-02-08 14:10
+ **/
+public class SingleFlight {
+
+    private final ConcurrentHashMap<String, CompletableFuture<Object>> calls = new ConcurrentHashMap<>();
+
+    @SuppressWarnings("unchecked")
+    public <T> T execute(String key, Supplier<T> loader) {
+        CompletableFuture<Object> call = new CompletableFuture<>();
+        CompletableFuture<Object> existing = calls.putIfAbsent(key, call);
+        if (existing != null) {
+            // 已有线程在加载，等待其结果
+            try {
+                return (T) existing.join();
+            } catch (CompletionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof Error) {
+                    throw (Error) cause;
+                }
+                throw cause instanceof RuntimeException ? (RuntimeException) cause : e;
+            }
+        }
+        try {
+            T value = loader.get();
+            call.complete(value);
+            return value;
+        } catch (Throwable e) {
+            // 包括 Error 与被隐式抛出的受检异常，必须结束共享调用，否则等待的线程会一直阻塞
+            call.completeExceptionally(e);
+            throw e;
+        } finally {
+            calls.remove(key, call);
+        }
+    }
+
+    /**
+     * 正在等待某个key结果的调用数，供测试确认等待方已加入
+     */
+    int waiters(String key) {
+        CompletableFuture<Object> call = calls.get(key);
+        return call == null ? 0 : call.getNumberOfDependents();
+    }
+}
@@ -0,0 +1,114 @@
+package com.hmdp.utils.codec;
+
+import com.hmdp.dto.UserDTO;
+import com.hmdp.entity.Blog;
+import com.hmdp.entity.Shop;
+import com.hmdp.entity.Voucher;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 紧凑二进制编解码器，只支持注册了结构描述的类型
+ * 新增字段时只能追加在对应结构的末尾
+ *
+ * @className: BinaryCacheCodec
+ * @author: sutianyu
+ * @date: 2023-02-13 15:40
+ **/
+public class BinaryCacheCodec implements CacheCodec {
+
+    public static final byte ID = 1;
+
+    private final Map<Class<?>, BinarySchema<?>> schemas = new HashMap<>();
+
+    public BinaryCacheCodec() {
+        register(BinarySchema.of(Shop.class, Shop::new)
+                .int64(Shop::getId, Shop::setId)
+                .string(Shop::getName, Shop::setName)
+                .int64(Shop::getTypeId, Shop::setTypeId)
+                .string(Shop::getImages, Shop::setImages)
+                .string(Shop::getArea, Shop::setArea)
+                .string(Shop::getAddress, Shop::setAddress)
+                .float64(Shop::getX, Shop::setX)
+                .float64(Shop::getY, Shop::setY)
+                .int64(Shop::getAvgPrice, Shop::setAvgPrice)
+                .int32(Shop::getSold, Shop::setSold)
+                .int32(Shop::getComments, Shop::setComments)
+                .int32(Shop::getScore, Shop::setScore)
+                .string(Shop::getOpenHours, Shop::setOpenHours)
+                .dateTime(Shop::getCreateTime, Shop::setCreateTime)
+                .dateTime(Shop::getUpdateTime, Shop::setUpdateTime)
+                .float64(Shop::getDistance, Shop::setDistance)
+                .build());
+        register(BinarySchema.of(Voucher.class, Voucher::new)
+                .int64(Voucher::getId, Voucher::setId)
+                .int64(Voucher::getShopId, Voucher::setShopId)
+                .string(Voucher::getTitle, Voucher::setTitle)
+                .string(Voucher::getSubTitle, Voucher::setSubTitle)
+                .string(Voucher::getRules, Voucher::setRules)
+                .int64(Voucher::getPayValue, Voucher::setPayValue)
+                .int64(Voucher::getActualValue, Voucher::setActualValue)
+                .int32(Voucher::getType, Voucher::setType)
+                .int32(Voucher::getStatus, Voucher::setStatus)
+                .int32(Voucher::getStock, Voucher::setStock)
+                .dateTime(Voucher::getBeginTime, Voucher::setBeginTime)
+                .dateTime(Voucher::getEndTime, Voucher::setEndTime)
+                .dateTime(Voucher::getCreateTime, Voucher::setCreateTime)
+                .dateTime(Voucher::getUpdateTime, Voucher::setUpdateTime)
+                .build());
+        register(BinarySchema.of(Blog.class, Blog::new)
+                .int64(Blog::getId, Blog::setId)
+                .int64(Blog::getShopId, Blog::setShopId)
+                .int64(Blog::getUserId, Blog::setUserId)
+                .string(Blog::getIcon, Blog::setIcon)
+                .string(Blog::getName, Blog::setName)
+                .bool(Blog::getIsLike, Blog::setIsLike)
+                .string(Blog::getTitle, Blog::setTitle)
+                .string(Blog::getImages, Blog::setImages)
+                .string(Blog::getContent, Blog::setContent)
+                .int32(Blog::getLiked, Blog::setLiked)
+                .int32(Blog::getComments, Blog::setComments)
+                .dateTime(Blog::getCreateTime, Blog::setCreateTime)
+                .dateTime(Blog::getUpdateTime, Blog::setUpdateTime)
+                .build());
+        register(BinarySchema.of(UserDTO.class, UserDTO::new)
+                .int64(UserDTO::getId, UserDTO::setId)
+                .string(UserDTO::getNickName, UserDTO::setNickName)
+                .string(UserDTO::getIcon, UserDTO::setIcon)
+                .build());
+    }
+
+    private void register(BinarySchema<?> schema) {
+        schemas.put(schema.getType(), schema);
+    }
+
+    @Override
+    public byte id() {
+        return ID;
+    }
+
+    @Override
+    public boolean supports(Class<?> type) {
+        return schemas.containsKey(type);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public byte[] encode(Object value) {
+        BinarySchema<Object> schema = (BinarySchema<Object>) schemas.get(value.getClass());
+        BinaryWriter writer = new BinaryWriter(128);
+        schema.write(value, writer);
+        return writer.toByteArray();
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T decode(byte[] bytes, int offset, int length, Class<T> type) {
+        BinarySchema<T> schema = (BinarySchema<T>) schemas.get(type);
+        if (schema == null) {
+            throw new IllegalArgumentException("未注册二进制结构: " + type.getName());
+        }
+        return schema.read(new BinaryReader(bytes, offset, length));
+    }
+}
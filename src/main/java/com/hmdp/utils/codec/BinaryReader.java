@@ -0,0 +1,74 @@
+package com.hmdp.utils.codec;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 二进制读取，与 BinaryWriter 对应
+ *
+ * @className: BinaryReader
+ * @author: sutianyu
+ * @date: 2023-02-13 15:15
+ **/
+public class BinaryReader {
+
+    private final byte[] buf;
+
+    private int pos;
+
+    private final int limit;
+
+    public BinaryReader(byte[] buf, int offset, int length) {
+        this.buf = buf;
+        this.pos = offset;
+        this.limit = offset + length;
+    }
+
+    public int readByte() {
+        check(1);
+        return buf[pos++] & 0xFF;
+    }
+
+    public long readVarLong() {
+        long result = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = readByte();
+            result |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return result;
+            }
+        }
+        throw new IllegalStateException("varint格式错误");
+    }
+
+    public long readZigZag() {
+        long value = readVarLong();
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    public long readFixedLong() {
+        check(8);
+        long value = 0;
+        for (int i = 0; i < 8; i++) {
+            value = (value << 8) | (buf[pos++] & 0xFF);
+        }
+        return value;
+    }
+
+    public double readDouble() {
+        return Double.longBitsToDouble(readFixedLong());
+    }
+
+    public String readString() {
+        int length = (int) readVarLong();
+        check(length);
+        String value = new String(buf, pos, length, StandardCharsets.UTF_8);
+        pos += length;
+        return value;
+    }
+
+    private void check(int n) {
+        if (pos + n > limit) {
+            throw new IllegalStateException("数据长度不足");
+        }
+    }
+}
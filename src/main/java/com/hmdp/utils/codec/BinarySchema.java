@@ -0,0 +1,217 @@
+package com.hmdp.utils.codec;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * 实体的二进制结构描述
+ * 格式：[字段数][非空位图][按顺序排列的非空字段值]
+ * 字段只允许在末尾追加：旧数据缺少的字段读为null，新数据多出的字段被忽略，
+ * 因此滚动发布期间新旧版本可以互相读取
+ *
+ * @className: BinarySchema
+ * @author: sutianyu
+ * @date: 2023-02-13 15:20
+ **/
+public class BinarySchema<T> {
+
+    private final Class<T> type;
+
+    private final Supplier<T> factory;
+
+    private final List<Field<T, ?>> fields;
+
+    private BinarySchema(Class<T> type, Supplier<T> factory, List<Field<T, ?>> fields) {
+        this.type = type;
+        this.factory = factory;
+        this.fields = fields;
+    }
+
+    public static <T> Builder<T> of(Class<T> type, Supplier<T> factory) {
+        return new Builder<>(type, factory);
+    }
+
+    public Class<T> getType() {
+        return type;
+    }
+
+    public void write(T value, BinaryWriter writer) {
+        long presence = 0;
+        for (int i = 0; i < fields.size(); i++) {
+            if (fields.get(i).getter.apply(value) != null) {
+                presence |= 1L << i;
+            }
+        }
+        writer.writeVarLong(fields.size());
+        writer.writeVarLong(presence);
+        for (int i = 0; i < fields.size(); i++) {
+            if ((presence & (1L << i)) != 0) {
+                fields.get(i).write(value, writer);
+            }
+        }
+    }
+
+    public T read(BinaryReader reader) {
+        T value = factory.get();
+        int count = (int) reader.readVarLong();
+        long presence = reader.readVarLong();
+        int known = Math.min(count, fields.size());
+        for (int i = 0; i < known; i++) {
+            if ((presence & (1L << i)) != 0) {
+                fields.get(i).read(value, reader);
+            }
+        }
+        // 多出的字段来自更新版本的结构，位于末尾，直接忽略
+        return value;
+    }
+
+    enum FieldType {
+        LONG {
+            @Override
+            void write(Object v, BinaryWriter w) {
+                w.writeZigZag((Long) v);
+            }
+
+            @Override
+            Object read(BinaryReader r) {
+                return r.readZigZag();
+            }
+        },
+        INT {
+            @Override
+            void write(Object v, BinaryWriter w) {
+                w.writeZigZag((Integer) v);
+            }
+
+            @Override
+            Object read(BinaryReader r) {
+                return (int) r.readZigZag();
+            }
+        },
+        DOUBLE {
+            @Override
+            void write(Object v, BinaryWriter w) {
+                w.writeDouble((Double) v);
+            }
+
+            @Override
+            Object read(BinaryReader r) {
+                return r.readDouble();
+            }
+        },
+        BOOLEAN {
+            @Override
+            void write(Object v, BinaryWriter w) {
+                w.writeByte((Boolean) v ? 1 : 0);
+            }
+
+            @Override
+            Object read(BinaryReader r) {
+                return r.readByte() != 0;
+            }
+        },
+        STRING {
+            @Override
+            void write(Object v, BinaryWriter w) {
+                w.writeString((String) v);
+            }
+
+            @Override
+            Object read(BinaryReader r) {
+                return r.readString();
+            }
+        },
+        DATE_TIME {
+            @Override
+            void write(Object v, BinaryWriter w) {
+                LocalDateTime time = (LocalDateTime) v;
+                w.writeZigZag(time.toEpochSecond(ZoneOffset.UTC));
+                w.writeVarLong(time.getNano());
+            }
+
+            @Override
+            Object read(BinaryReader r) {
+                long seconds = r.readZigZag();
+                int nanos = (int) r.readVarLong();
+                return LocalDateTime.ofEpochSecond(seconds, nanos, ZoneOffset.UTC);
+            }
+        };
+
+        abstract void write(Object value, BinaryWriter writer);
+
+        abstract Object read(BinaryReader reader);
+    }
+
+    private static class Field<T, V> {
+        private final FieldType fieldType;
+        private final Function<T, V> getter;
+        private final BiConsumer<T, V> setter;
+
+        private Field(FieldType fieldType, Function<T, V> getter, BiConsumer<T, V> setter) {
+            this.fieldType = fieldType;
+            this.getter = getter;
+            this.setter = setter;
+        }
+
+        private void write(T value, BinaryWriter writer) {
+            fieldType.write(getter.apply(value), writer);
+        }
+
+        @SuppressWarnings("unchecked")
+        private void read(T value, BinaryReader reader) {
+            setter.accept(value, (V) fieldType.read(reader));
+        }
+    }
+
+    public static class Builder<T> {
+        private final Class<T> type;
+        private final Supplier<T> factory;
+        private final List<Field<T, ?>> fields = new ArrayList<>();
+
+        private Builder(Class<T> type, Supplier<T> factory) {
+            this.type = type;
+            this.factory = factory;
+        }
+
+        public Builder<T> int64(Function<T, Long> getter, BiConsumer<T, Long> setter) {
+            return add(FieldType.LONG, getter, setter);
+        }
+
+        public Builder<T> int32(Function<T, Integer> getter, BiConsumer<T, Integer> setter) {
+            return add(FieldType.INT, getter, setter);
+        }
+
+        public Builder<T> float64(Function<T, Double> getter, BiConsumer<T, Double> setter) {
+            return add(FieldType.DOUBLE, getter, setter);
+        }
+
+        public Builder<T> bool(Function<T, Boolean> getter, BiConsumer<T, Boolean> setter) {
+            return add(FieldType.BOOLEAN, getter, setter);
+        }
+
+        public Builder<T> string(Function<T, String> getter, BiConsumer<T, String> setter) {
+            return add(FieldType.STRING, getter, setter);
+        }
+
+        public Builder<T> dateTime(Function<T, LocalDateTime> getter, BiConsumer<T, LocalDateTime> setter) {
+            return add(FieldType.DATE_TIME, getter, setter);
+        }
+
+        public BinarySchema<T> build() {
+            return new BinarySchema<>(type, factory, new ArrayList<>(fields));
+        }
+
+        private <V> Builder<T> add(FieldType fieldType, Function<T, V> getter, BiConsumer<T, V> setter) {
+            if (fields.size() >= 64) {
+                throw new IllegalStateException("字段数量超过64个: " + type.getName());
+            }
+            fields.add(new Field<>(fieldType, getter, setter));
+            return this;
+        }
+    }
+}
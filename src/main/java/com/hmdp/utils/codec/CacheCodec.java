@@ -0,0 +1,26 @@
+package com.hmdp.utils.codec;
+
+/**
+ * 缓存值编解码器
+ * 新增编码格式时实现此接口，并在 CacheCodecRegistry 中注册
+ *
+ * @className: CacheCodec
+ * @author: sutianyu
+ * @date: 2023-02-13 15:00
+ **/
+public interface CacheCodec {
+
+    /**
+     * 编码器id，写入数据头部，用于读取时选择对应的编码器
+     */
+    byte id();
+
+    /**
+     * 是否支持该类型
+     */
+    boolean supports(Class<?> type);
+
+    byte[] encode(Object value);
+
+    <T> T decode(byte[] bytes, int offset, int length, Class<T> type);
+}
@@ -0,0 +1,134 @@
+package com.hmdp.utils.codec;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.hmdp.config.CacheProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * 缓存编解码入口
+ * 带标记的数据格式：[MAGIC][编码器id][编码后的数据]；
+ * 不以MAGIC开头的数据按JSON解析，兼容历史数据与尚未升级的实例。
+ * 写入时使用配置的编码器（hmdp.cache.codec），不支持的类型回退为JSON；
+ * JSON写入时不加标记，滚动发布期间先保持json，全部实例升级后再切换为binary
+ *
+ * @className: CacheCodecRegistry
+ * @author: sutianyu
+ * @date: 2023-02-13 16:00
+ **/
+@Component
+public class CacheCodecRegistry {
+
+    /**
+     * 标记字节，JSON文本不会以此字节开头
+     */
+    public static final byte MAGIC = (byte) 0xCC;
+
+    private static final int HEADER_LENGTH = 2;
+
+    private final CacheCodec json = new JsonCacheCodec();
+
+    private final CacheCodec[] codecs = new CacheCodec[3];
+
+    private final CacheCodec writeCodec;
+
+    public CacheCodecRegistry(CacheProperties cacheProperties, ObjectMapper objectMapper) {
+        register(json);
+        register(new BinaryCacheCodec());
+        register(new JacksonCacheCodec(objectMapper));
+        this.writeCodec = cacheProperties.getCodec() == CacheProperties.CodecType.BINARY
+                ? codecs[BinaryCacheCodec.ID] : json;
+    }
+
+    private void register(CacheCodec codec) {
+        codecs[codec.id()] = codec;
+    }
+
+    public byte[] encode(Object value) {
+        return encode(value, writeCodec.supports(value.getClass()) ? writeCodec : json);
+    }
+
+    /**
+     * 按响应格式编码（Jackson），命中后可直接透传给客户端
+     */
+    public byte[] encodeForResponse(Object value) {
+        return encode(value, codecs[JacksonCacheCodec.ID]);
+    }
+
+    /**
+     * 取出响应格式的 JSON 字节；其它格式的数据先解码再按响应格式编码
+     */
+    public <T> RawJson toResponseJson(byte[] bytes, Class<T> type) {
+        if (CacheEnvelope.isEnvelope(bytes)) {
+            return toResponseJson(CacheEnvelope.wrap(bytes), type);
+        }
+        if (bytes.length >= HEADER_LENGTH && bytes[0] == MAGIC && bytes[1] == JacksonCacheCodec.ID) {
+            return new RawJson(bytes, HEADER_LENGTH, bytes.length - HEADER_LENGTH);
+        }
+        byte[] json = codecs[JacksonCacheCodec.ID].encode(decode(bytes, type));
+        return new RawJson(json, 0, json.length);
+    }
+
+    /**
+     * 取出封装格式中响应格式的数据部分，不复制也不反序列化；其它格式的数据先解码再按响应格式编码
+     */
+    public <T> RawJson toResponseJson(CacheEnvelope envelope, Class<T> type) {
+        if (envelope.getCodecId() == JacksonCacheCodec.ID) {
+            return new RawJson(envelope.getBytes(), envelope.getPayloadOffset(), envelope.getPayloadLength());
+        }
+        byte[] json = codecs[JacksonCacheCodec.ID].encode(decodePayload(envelope, type));
+        return new RawJson(json, 0, json.length);
+    }
+
+    private byte[] encode(Object value, CacheCodec codec) {
+        byte[] payload = codec.encode(value);
+        if (codec == json) {
+            return payload;
+        }
+        byte[] bytes = new byte[HEADER_LENGTH + payload.length];
+        bytes[0] = MAGIC;
+        bytes[1] = codec.id();
+        System.arraycopy(payload, 0, bytes, HEADER_LENGTH, payload.length);
+        return bytes;
+    }
+
+    /**
+     * 编码为逻辑过期封装格式
+     */
+    public byte[] encodeEnvelope(Object value, long expireAt, long deltaMillis) {
+        CacheCodec codec = writeCodec.supports(value.getClass()) ? writeCodec : json;
+        return CacheEnvelope.create(codec.id(), expireAt, deltaMillis, codec.encode(value));
+    }
+
+    /**
+     * 按响应格式（Jackson）编码为逻辑过期封装格式，命中后数据部分可直接透传给客户端
+     */
+    public byte[] encodeEnvelopeForResponse(Object value, long expireAt, long deltaMillis) {
+        return CacheEnvelope.create(JacksonCacheCodec.ID, expireAt, deltaMillis, codecs[JacksonCacheCodec.ID].encode(value));
+    }
+
+    /**
+     * 解码封装格式中的数据部分
+     */
+    public <T> T decodePayload(CacheEnvelope envelope, Class<T> type) {
+        return codec(envelope.getCodecId())
+                .decode(envelope.getBytes(), envelope.getPayloadOffset(), envelope.getPayloadLength(), type);
+    }
+
+    public <T> T decode(byte[] bytes, Class<T> type) {
+        // 逻辑过期封装格式（热点key晋升后写入），忽略头部直接解码数据部分
+        if (CacheEnvelope.isEnvelope(bytes)) {
+            return decodePayload(CacheEnvelope.wrap(bytes), type);
+        }
+        if (bytes.length >= HEADER_LENGTH && bytes[0] == MAGIC) {
+            return codec(bytes[1]).decode(bytes, HEADER_LENGTH, bytes.length - HEADER_LENGTH, type);
+        }
+        return json.decode(bytes, 0, bytes.length, type);
+    }
+
+    private CacheCodec codec(int id) {
+        if (id < 0 || id >= codecs.length || codecs[id] == null) {
+            throw new IllegalStateException("未知的缓存编码器: " + id);
+        }
+        return codecs[id];
+    }
+}
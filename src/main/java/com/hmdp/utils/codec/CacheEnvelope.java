@@ -0,0 +1,106 @@
+package com.hmdp.utils.codec;
+
+/**
+ * 逻辑过期数据的封装格式，固定16字节头部 + 编码后的数据：
+ * <pre>
+ * 0      MAGIC
+ * 1      格式版本
+ * 2      编码器id
+ * 3      保留
+ * 4-11   逻辑过期时间（epoch毫秒）
+ * 12-15  最近一次重建耗时（毫秒），XFetch使用
+ * 16-    数据
+ * </pre>
+ * 判断是否过期只读头部，不需要解析数据；数据为响应格式时可以直接透传（见 CacheCodecRegistry.toResponseJson）
+ *
+ * @className: CacheEnvelope
+ * @author: sutianyu
+ * @date: 2023-02-15 10:20
+ **/
+public final class CacheEnvelope {
+
+    public static final byte MAGIC = (byte) 0xCE;
+
+    public static final byte VERSION = 1;
+
+    public static final int HEADER_LENGTH = 16;
+
+    private final byte[] bytes;
+
+    private CacheEnvelope(byte[] bytes) {
+        this.bytes = bytes;
+    }
+
+    public static boolean isEnvelope(byte[] bytes) {
+        return bytes != null && bytes.length >= HEADER_LENGTH && bytes[0] == MAGIC;
+    }
+
+    public static CacheEnvelope wrap(byte[] bytes) {
+        if (!isEnvelope(bytes)) {
+            throw new IllegalArgumentException("不是逻辑过期封装格式");
+        }
+        if (bytes[1] != VERSION) {
+            throw new IllegalStateException("不支持的封装格式版本: " + bytes[1]);
+        }
+        return new CacheEnvelope(bytes);
+    }
+
+    public static byte[] create(byte codecId, long expireAt, long deltaMillis, byte[] payload) {
+        byte[] bytes = new byte[HEADER_LENGTH + payload.length];
+        bytes[0] = MAGIC;
+        bytes[1] = VERSION;
+        bytes[2] = codecId;
+        putLong(bytes, 4, expireAt);
+        putInt(bytes, 12, (int) Math.min(Integer.MAX_VALUE, Math.max(0, deltaMillis)));
+        System.arraycopy(payload, 0, bytes, HEADER_LENGTH, payload.length);
+        return bytes;
+    }
+
+    public byte getCodecId() {
+        return bytes[2];
+    }
+
+    public long getExpireAt() {
+        long value = 0;
+        for (int i = 4; i < 12; i++) {
+            value = (value << 8) | (bytes[i] & 0xFF);
+        }
+        return value;
+    }
+
+    public int getDelta() {
+        int value = 0;
+        for (int i = 12; i < 16; i++) {
+            value = (value << 8) | (bytes[i] & 0xFF);
+        }
+        return value;
+    }
+
+    public boolean isExpired(long nowMillis) {
+        return getExpireAt() <= nowMillis;
+    }
+
+    public byte[] getBytes() {
+        return bytes;
+    }
+
+    public int getPayloadOffset() {
+        return HEADER_LENGTH;
+    }
+
+    public int getPayloadLength() {
+        return bytes.length - HEADER_LENGTH;
+    }
+
+    private static void putLong(byte[] bytes, int offset, long value) {
+        for (int i = 7; i >= 0; i--) {
+            bytes[offset++] = (byte) (value >>> (i * 8));
+        }
+    }
+
+    private static void putInt(byte[] bytes, int offset, int value) {
+        for (int i = 3; i >= 0; i--) {
+            bytes[offset++] = (byte) (value >>> (i * 8));
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package com.hmdp.utils.codec;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+
+/**
+ * JSON编解码器（Jackson），使用与 Spring MVC 相同的 ObjectMapper，
+ * 编码结果与接口响应中的 JSON 完全一致，命中后可以直接写入响应
+ *
+ * @className: JacksonCacheCodec
+ * @author: sutianyu
+ * @date: 2023-02-16 14:10
+ **/
+public class JacksonCacheCodec implements CacheCodec {
+
+    public static final byte ID = 2;
+
+    private final ObjectMapper objectMapper;
+
+    public JacksonCacheCodec(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+    }
+
+    @Override
+    public byte id() {
+        return ID;
+    }
+
+    @Override
+    public boolean supports(Class<?> type) {
+        return true;
+    }
+
+    @Override
+    public byte[] encode(Object value) {
+        try {
+            return objectMapper.writeValueAsBytes(value);
+        } catch (IOException e) {
+            throw new IllegalStateException("JSON序列化失败", e);
+        }
+    }
+
+    @Override
+    public <T> T decode(byte[] bytes, int offset, int length, Class<T> type) {
+        try {
+            return objectMapper.readValue(bytes, offset, length, type);
+        } catch (IOException e) {
+            throw new IllegalStateException("JSON反序列化失败", e);
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package com.hmdp.utils.codec;
+
+import cn.hutool.json.JSONUtil;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * JSON编解码器（Hutool），兼容历史数据，支持任意类型
+ *
+ * @className: JsonCacheCodec
+ * @author: sutianyu
+ * @date: 2023-02-13 15:05
+ **/
+public class JsonCacheCodec implements CacheCodec {
+
+    public static final byte ID = 0;
+
+    @Override
+    public byte id() {
+        return ID;
+    }
+
+    @Override
+    public boolean supports(Class<?> type) {
+        return true;
+    }
+
+    @Override
+    public byte[] encode(Object value) {
+        return JSONUtil.toJsonStr(value).getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public <T> T decode(byte[] bytes, int offset, int length, Class<T> type) {
+        return JSONUtil.toBean(new String(bytes, offset, length, StandardCharsets.UTF_8), type);
+    }
+}
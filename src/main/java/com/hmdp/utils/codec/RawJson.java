@@ -0,0 +1,34 @@
+package com.hmdp.utils.codec;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * 已序列化好的 JSON 字节片段，直接写出，不经过反序列化
+ *
+ * @className: RawJson
+ * @author: sutianyu
+ * @date: 2023-02-16 14:20
+ **/
+public final class RawJson {
+
+    private final byte[] bytes;
+
+    private final int offset;
+
+    private final int length;
+
+    public RawJson(byte[] bytes, int offset, int length) {
+        this.bytes = bytes;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    public int length() {
+        return length;
+    }
+
+    public void writeTo(OutputStream out) throws IOException {
+        out.write(bytes, offset, length);
+    }
+}
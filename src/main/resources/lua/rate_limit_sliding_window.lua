@@ -0,0 +1,21 @@
+-- 滑动窗口限流：窗口内的每次请求记录为ZSET中的一个成员，分数为请求时间
+-- KEYS[1] 限流key
+-- ARGV[1] 当前时间（毫秒）
+-- ARGV[2] 窗口长度（毫秒）
+-- ARGV[3] 窗口内允许的请求数
+-- ARGV[4] 本次请求的成员（唯一）
+-- 返回：0 放行；大于0 被限流，为距离窗口内最早一次请求过期的毫秒数
+local now = tonumber(ARGV[1])
+local window = tonumber(ARGV[2])
+local limit = tonumber(ARGV[3])
+-- 1.移除窗口外的请求
+redis.call('zremrangebyscore', KEYS[1], '-inf', now - window)
+-- 2.窗口内请求数未达上限，记录本次请求
+if redis.call('zcard', KEYS[1]) < limit then
+    redis.call('zadd', KEYS[1], now, ARGV[4])
+    redis.call('pexpire', KEYS[1], window)
+    return 0
+end
+-- 3.已达上限，返回需要等待的时间
+local oldest = redis.call('zrange', KEYS[1], 0, 0, 'WITHSCORES')
+return math.max(1, tonumber(oldest[2]) + window - now)
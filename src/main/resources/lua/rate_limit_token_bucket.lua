@@ -0,0 +1,35 @@
+-- 令牌桶限流：桶中保存剩余令牌数与上次补充时间，按经过的时间补充令牌
+-- KEYS[1] 限流key
+-- ARGV[1] 当前时间（毫秒）
+-- ARGV[2] 桶容量（允许的突发请求数）
+-- ARGV[3] 每毫秒补充的令牌数
+-- ARGV[4] 本次请求需要的令牌数，为负数时归还令牌（不超过桶容量）
+-- 返回：0 放行；大于0 被限流，为补足令牌需要等待的毫秒数
+local now = tonumber(ARGV[1])
+local capacity = tonumber(ARGV[2])
+local rate = tonumber(ARGV[3])
+local requested = tonumber(ARGV[4])
+-- 1.查询桶，不存在时视为满桶
+local bucket = redis.call('hmget', KEYS[1], 'tokens', 'ts')
+local tokens = tonumber(bucket[1])
+local ts = tonumber(bucket[2])
+if tokens == nil or ts == nil then
+    tokens = capacity
+    ts = now
+end
+-- 2.补充令牌（各实例时钟不一致时，不倒退补充时间）
+if now > ts then
+    tokens = math.min(capacity, tokens + (now - ts) * rate)
+    ts = now
+end
+-- 3.扣减令牌
+local wait = 0
+if tokens >= requested then
+    tokens = math.min(capacity, tokens - requested)
+else
+    wait = math.ceil((requested - tokens) / rate)
+end
+redis.call('hmset', KEYS[1], 'tokens', tokens, 'ts', ts)
+-- 桶补满后不再需要保存
+redis.call('pexpire', KEYS[1], math.ceil(capacity / rate) + 1000)
+return wait
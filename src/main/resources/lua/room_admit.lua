@@ -0,0 +1,28 @@
+-- 放行：从队首取出一批用户，记录为已放行；多个实例同时调用时，每个间隔只有一个实例能放行
+-- KEYS[1] 排队队列
+-- KEYS[2] 已放行用户
+-- KEYS[3] 排队状态
+-- ARGV[1] 当前时间（毫秒）
+-- ARGV[2] 距上次放行的最小间隔（毫秒）
+-- ARGV[3] 每批放行人数
+-- ARGV[4] 购买凭证过期时间点（毫秒）
+-- 返回：-1 未到放行时间；大于等于0 本次放行人数
+local now = tonumber(ARGV[1])
+local last = tonumber(redis.call('hget', KEYS[3], 'last') or '0')
+if now - last < tonumber(ARGV[2]) then
+    return -1
+end
+redis.call('hset', KEYS[3], 'last', now)
+-- 1.清理凭证已过期的用户
+redis.call('zremrangebyscore', KEYS[2], '-inf', now)
+-- 2.取出队首的一批用户
+local users = redis.call('zrange', KEYS[1], 0, tonumber(ARGV[3]) - 1)
+if #users == 0 then
+    return 0
+end
+redis.call('zremrangebyrank', KEYS[1], 0, #users - 1)
+for i = 1, #users do
+    redis.call('zadd', KEYS[2], ARGV[4], users[i])
+end
+redis.call('hincrby', KEYS[3], 'admitted', #users)
+return #users
@@ -0,0 +1,24 @@
+-- 排队：用户按到达顺序加入秒杀券的排队队列
+-- KEYS[1] 排队队列（ZSET，分数为到达序号）
+-- KEYS[2] 已放行用户（ZSET，分数为购买凭证过期时间）
+-- KEYS[3] 排队状态（HASH：seq 到达序号、last 上次放行时间、admitted 累计放行人数）
+-- ARGV[1] 用户id
+-- ARGV[2] 当前时间（毫秒）
+-- ARGV[3] 以上key的过期时间点（毫秒）
+-- 返回：-1 已放行且凭证未过期；大于等于0 排在前面的人数
+local pass = redis.call('zscore', KEYS[2], ARGV[1])
+if pass and tonumber(pass) > tonumber(ARGV[2]) then
+    return -1
+end
+-- 1.已经在排队，返回当前位置
+local rank = redis.call('zrank', KEYS[1], ARGV[1])
+if rank then
+    return rank
+end
+-- 2.按到达顺序加入队尾（凭证过期的用户重新排队）
+local seq = redis.call('hincrby', KEYS[3], 'seq', 1)
+redis.call('zadd', KEYS[1], seq, ARGV[1])
+for i = 1, 3 do
+    redis.call('pexpireat', KEYS[i], ARGV[3])
+end
+return redis.call('zrank', KEYS[1], ARGV[1])
@@ -0,0 +1,29 @@
+-- 秒杀资格判断：时间窗口、库存、一人一单，通过后扣减库存并记录购买用户
+-- KEYS[1] 库存key  KEYS[2] 秒杀时间key（hash: begin/end，毫秒时间戳）  KEYS[3] 已购用户集合key
+-- KEYS[4] 订单消息队列key（可选，传入时获得资格后追加订单消息）
+-- ARGV[1] 用户id  ARGV[2] 当前时间（毫秒）  ARGV[3] 优惠券id  ARGV[4] 订单id
+-- 返回：0 成功；1 库存不足；2 重复下单；3 尚未开始；4 已经结束；5 库存未预热
+local stock = redis.call('get', KEYS[1])
+if not stock then
+    return 5
+end
+local now = tonumber(ARGV[2])
+local window = redis.call('hmget', KEYS[2], 'begin', 'end')
+if window[1] and now < tonumber(window[1]) then
+    return 3
+end
+if window[2] and now > tonumber(window[2]) then
+    return 4
+end
+if tonumber(stock) <= 0 then
+    return 1
+end
+if redis.call('sismember', KEYS[3], ARGV[1]) == 1 then
+    return 2
+end
+redis.call('incrby', KEYS[1], -1)
+redis.call('sadd', KEYS[3], ARGV[1])
+if KEYS[4] then
+    redis.call('xadd', KEYS[4], '*', 'id', ARGV[4], 'userId', ARGV[1], 'voucherId', ARGV[3])
+end
+return 0
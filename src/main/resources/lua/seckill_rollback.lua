@@ -0,0 +1,8 @@
+-- 撤销秒杀资格：订单写入失败时归还库存并移除购买记录
+-- KEYS[1] 库存key  KEYS[2] 已购用户集合key
+-- ARGV[1] 用户id
+if redis.call('srem', KEYS[2], ARGV[1]) == 1 then
+    redis.call('incrby', KEYS[1], 1)
+    return 1
+end
+return 0
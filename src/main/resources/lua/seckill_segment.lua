@@ -0,0 +1,15 @@
+-- 分段库存：在用户所属分段记录购买用户并尝试扣减该分段的库存
+-- 同一分段的库存key与已购用户key使用相同的hash tag，位于同一个slot
+-- KEYS[1] 分段库存key  KEYS[2] 分段已购用户集合key
+-- ARGV[1] 用户id
+-- 返回：0 成功；1 已记录用户但本分段库存为空，需要到其它分段扣减；2 重复下单
+if redis.call('sismember', KEYS[2], ARGV[1]) == 1 then
+    return 2
+end
+redis.call('sadd', KEYS[2], ARGV[1])
+local stock = tonumber(redis.call('get', KEYS[1]) or '0')
+if stock > 0 then
+    redis.call('incrby', KEYS[1], -1)
+    return 0
+end
+return 1
@@ -0,0 +1,11 @@
+-- 库存充足时扣减指定数量，不会扣成负数
+-- KEYS[1] 库存key
+-- ARGV[1] 扣减数量
+-- 返回：1 成功；0 库存不足
+local stock = tonumber(redis.call('get', KEYS[1]) or '0')
+local n = tonumber(ARGV[1])
+if stock >= n then
+    redis.call('incrby', KEYS[1], -n)
+    return 1
+end
+return 0
@@ -0,0 +1,49 @@
+package com.hmdp.utils;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 熔断器状态流转：连续失败熔断、半开探测、探测成功恢复
+ */
+class CircuitBreakerTest {
+
+    @Test
+    void tripsAndRecovers() throws InterruptedException {
+        CircuitBreaker breaker = new CircuitBreaker("test", 3, 50, 0);
+        for (int i = 0; i < 3; i++) {
+            assertTrue(breaker.tryAcquire());
+            breaker.onFailure();
+        }
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertFalse(breaker.tryAcquire());
+
+        Thread.sleep(60);
+        // 只放行一个探测请求
+        assertTrue(breaker.tryAcquire());
+        assertFalse(breaker.tryAcquire());
+        // 探测失败，重新熔断
+        breaker.onFailure();
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+
+        Thread.sleep(60);
+        assertTrue(breaker.tryAcquire());
+        breaker.onSuccess(1);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        assertTrue(breaker.tryAcquire());
+    }
+
+    @Test
+    void slowCallsCountAsFailures() {
+        CircuitBreaker breaker = new CircuitBreaker("test", 2, 1000, 100);
+        breaker.onSuccess(500);
+        breaker.onSuccess(10);
+        breaker.onSuccess(500);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        breaker.onSuccess(500);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+    }
+}
@@ -0,0 +1,55 @@
+package com.hmdp.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 一致性哈希：分布均匀性与扩容时的数据迁移量
+ */
+class ConsistentHashRingTest {
+
+    private static final int KEYS = 100000;
+
+    @Test
+    void distributesKeysEvenly() {
+        ConsistentHashRing<String> ring = ring("node-1", "node-2", "node-3");
+        Map<String, Integer> counts = new HashMap<>();
+        for (int i = 0; i < KEYS; i++) {
+            counts.merge(ring.get("cache:shop:" + i), 1, Integer::sum);
+        }
+        assertEquals(3, counts.size());
+        // 每个节点的key数量与平均值的偏差不超过 15%
+        counts.values().forEach(count -> assertTrue(Math.abs(count - KEYS / 3.0) < KEYS / 3.0 * 0.15, counts.toString()));
+    }
+
+    @Test
+    void addingNodeMovesOnlyItsShare() {
+        ConsistentHashRing<String> before = ring("node-1", "node-2", "node-3");
+        ConsistentHashRing<String> after = ring("node-1", "node-2", "node-3", "node-4");
+        int moved = 0;
+        for (int i = 0; i < KEYS; i++) {
+            String key = "cache:shop:" + i;
+            String owner = after.get(key);
+            if (!owner.equals(before.get(key))) {
+                // 只会迁移到新节点，旧节点之间不会互相搬动
+                assertEquals("node-4", owner);
+                moved++;
+            }
+        }
+        // 约 1/4 的key迁移
+        assertTrue(Math.abs(moved - KEYS / 4.0) < KEYS / 4.0 * 0.2, String.valueOf(moved));
+    }
+
+    private static ConsistentHashRing<String> ring(String... nodes) {
+        ConsistentHashRing<String> ring = new ConsistentHashRing<>(160);
+        for (String node : nodes) {
+            ring.add(node, node);
+        }
+        return ring;
+    }
+}
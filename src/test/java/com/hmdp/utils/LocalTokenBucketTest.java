@@ -0,0 +1,44 @@
+package com.hmdp.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 本地令牌桶：突发容量、按时间补充、等待时间计算
+ */
+class LocalTokenBucketTest {
+
+    private static final long MILLIS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    @Test
+    void allowsBurstThenRefills() {
+        // 每秒10个，突发20个
+        LocalTokenBucket bucket = new LocalTokenBucket(20, 10, 1000, 0);
+        for (int i = 0; i < 20; i++) {
+            assertEquals(0, bucket.tryAcquire(0));
+        }
+        // 桶空，补充一个令牌需要100毫秒
+        assertEquals(100, bucket.tryAcquire(0));
+        assertTrue(bucket.tryAcquire(50 * MILLIS) > 0);
+        assertEquals(0, bucket.tryAcquire(100 * MILLIS));
+        // 长时间空闲也不会超过容量
+        long later = 10_000 * MILLIS;
+        for (int i = 0; i < 20; i++) {
+            assertEquals(0, bucket.tryAcquire(later));
+        }
+        assertTrue(bucket.tryAcquire(later) > 0);
+    }
+
+    @Test
+    void refundReturnsToken() {
+        LocalTokenBucket bucket = new LocalTokenBucket(1, 1, 1000, 0);
+        assertEquals(0, bucket.tryAcquire(0));
+        assertTrue(bucket.tryAcquire(0) > 0);
+        bucket.refund();
+        assertEquals(0, bucket.tryAcquire(0));
+    }
+}
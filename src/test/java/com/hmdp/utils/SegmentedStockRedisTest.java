@@ -0,0 +1,177 @@
+package com.hmdp.utils;
+
+import com.hmdp.config.SeckillProperties;
+import com.hmdp.entity.SeckillVoucher;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.hmdp.utils.RedisConstants.SECKILL_ORDER_KEY;
+import static com.hmdp.utils.RedisConstants.SECKILL_SEGMENT_KEY;
+import static com.hmdp.utils.RedisConstants.SECKILL_STOCK_KEY;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 分段库存并发扣减：跨分段扣减与重新分配同时进行时不超卖、不少卖，一人只能获得一次资格
+ * 需要本地Redis（-Dredis.host / -Dredis.port，默认 127.0.0.1:6379），默认不执行，通过 mvn test -Predis 单独执行
+ */
+@Tag("redis")
+class SegmentedStockRedisTest {
+
+    private static final long VOUCHER_ID = 9_000_000_001L;
+
+    private static final int STOCK = 1000;
+
+    private static final int SEGMENTS = 8;
+
+    private LettuceConnectionFactory connectionFactory;
+
+    private StringRedisTemplate stringRedisTemplate;
+
+    private SegmentedStock segmentedStock;
+
+    @BeforeEach
+    void setUp() {
+        connectionFactory = new LettuceConnectionFactory(new RedisStandaloneConfiguration(
+                System.getProperty("redis.host", "127.0.0.1"), Integer.getInteger("redis.port", 6379)));
+        connectionFactory.afterPropertiesSet();
+        stringRedisTemplate = new StringRedisTemplate(connectionFactory);
+        stringRedisTemplate.afterPropertiesSet();
+        cleanUp();
+
+        SeckillProperties properties = new SeckillProperties();
+        properties.getSegment().setEnabled(true);
+        properties.getSegment().setSegments(SEGMENTS);
+        properties.getSegment().setMinStock(STOCK);
+        SeckillGate seckillGate = new SeckillGate(stringRedisTemplate, new RedisMessageListenerContainer(), properties);
+        segmentedStock = new SegmentedStock(stringRedisTemplate, properties, seckillGate);
+
+        SeckillVoucher voucher = new SeckillVoucher();
+        voucher.setVoucherId(VOUCHER_ID);
+        voucher.setStock(STOCK);
+        voucher.setBeginTime(LocalDateTime.now().minusMinutes(1));
+        voucher.setEndTime(LocalDateTime.now().plusMinutes(10));
+        long now = System.currentTimeMillis();
+        assertTrue(segmentedStock.preload(voucher, now - 60000, now + 600000, true));
+    }
+
+    @AfterEach
+    void tearDown() {
+        cleanUp();
+        connectionFactory.destroy();
+    }
+
+    @Test
+    void concurrentAdmissionsNeverOversell() throws Exception {
+        // 大部分用户集中在两个分段，迫使这两个分段很快售空，触发跨分段扣减与重新分配
+        List<Long> users = new ArrayList<>();
+        int crowded = 0;
+        int others = 0;
+        for (long userId = 1; crowded < 1500 || others < 500; userId++) {
+            int home = SegmentedStock.home(userId, SEGMENTS);
+            if (home < 2 && crowded < 1500) {
+                users.add(userId);
+                crowded++;
+            } else if (home >= 2 && others < 500) {
+                users.add(userId);
+                others++;
+            }
+        }
+        Collections.shuffle(users);
+        SegmentedStock.Layout layout = segmentedStock.layout(VOUCHER_ID);
+        assertNotNull(layout);
+
+        Map<Long, AtomicInteger> admitted = new ConcurrentHashMap<>();
+        AtomicInteger sold = new AtomicInteger();
+        AtomicBoolean running = new AtomicBoolean(true);
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService pool = Executors.newFixedThreadPool(32);
+        try {
+            // 下单期间持续重新分配库存
+            Future<?> rebalancer = pool.submit(() -> {
+                await(start);
+                while (running.get()) {
+                    segmentedStock.rebalance();
+                }
+            });
+            List<Future<?>> buyers = new ArrayList<>();
+            for (int t = 0; t < 31; t++) {
+                int offset = t;
+                buyers.add(pool.submit(() -> {
+                    await(start);
+                    // 每个用户请求两次，第二次必须被一人一单拦截
+                    for (int round = 0; round < 2; round++) {
+                        for (int i = offset; i < users.size(); i += 31) {
+                            Long userId = users.get(i);
+                            if (segmentedStock.admit(VOUCHER_ID, userId, layout) == SeckillAdmission.Admission.OK) {
+                                sold.incrementAndGet();
+                                admitted.computeIfAbsent(userId, k -> new AtomicInteger()).incrementAndGet();
+                            }
+                        }
+                    }
+                }));
+            }
+            start.countDown();
+            for (Future<?> buyer : buyers) {
+                buyer.get(60, TimeUnit.SECONDS);
+            }
+            running.set(false);
+            rebalancer.get(10, TimeUnit.SECONDS);
+        } finally {
+            pool.shutdownNow();
+        }
+
+        // 需求多于库存：卖出数量等于初始库存，剩余库存为0
+        assertEquals(STOCK, sold.get());
+        assertEquals(0, segmentedStock.stock(VOUCHER_ID, layout));
+        // 没有用户获得两次资格，已购用户记录与卖出数量一致
+        admitted.forEach((userId, count) -> assertEquals(1, count.get(), "userId=" + userId));
+        long recorded = 0;
+        for (int i = 0; i < SEGMENTS; i++) {
+            Set<String> members = stringRedisTemplate.opsForSet().members(SECKILL_ORDER_KEY + "{" + VOUCHER_ID + ":" + i + "}");
+            recorded += members == null ? 0 : members.size();
+        }
+        assertEquals(STOCK, recorded);
+    }
+
+    private void cleanUp() {
+        List<String> keys = new ArrayList<>();
+        keys.add(SECKILL_SEGMENT_KEY + VOUCHER_ID);
+        keys.add("lock:seckill:rebalance:" + VOUCHER_ID);
+        for (int i = 0; i < SEGMENTS; i++) {
+            keys.add(SECKILL_STOCK_KEY + "{" + VOUCHER_ID + ":" + i + "}");
+            keys.add(SECKILL_ORDER_KEY + "{" + VOUCHER_ID + ":" + i + "}");
+        }
+        stringRedisTemplate.delete(keys);
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
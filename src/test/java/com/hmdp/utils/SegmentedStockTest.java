@@ -0,0 +1,42 @@
+package com.hmdp.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 分段库存：库存拆分与用户归属分段
+ */
+class SegmentedStockTest {
+
+    @Test
+    void splitKeepsTotalAndDiffersByAtMostOne() {
+        for (long stock : new long[]{0, 7, 1000, 100003}) {
+            long[] split = SegmentedStock.split(stock, 8);
+            assertEquals(stock, Arrays.stream(split).sum());
+            long min = Arrays.stream(split).min().getAsLong();
+            long max = Arrays.stream(split).max().getAsLong();
+            assertTrue(max - min <= 1, Arrays.toString(split));
+        }
+    }
+
+    @Test
+    void usersSpreadEvenlyAcrossSegments() {
+        int segments = 8;
+        int users = 80000;
+        int[] counts = new int[segments];
+        for (long userId = 1; userId <= users; userId++) {
+            int home = SegmentedStock.home(userId, segments);
+            // 同一用户总是归属同一分段，一人一单只需检查所属分段
+            assertEquals(home, SegmentedStock.home(userId, segments));
+            counts[home]++;
+        }
+        // 每个分段的用户数与平均值的偏差不超过 5%
+        for (int count : counts) {
+            assertTrue(Math.abs(count - users / segments) < users / segments * 0.05, Arrays.toString(counts));
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package com.hmdp.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 请求合并：loader 抛出 Error 时，等待中的调用也必须结束
+ */
+class SingleFlightTest {
+
+    @Test
+    void errorReleasesWaiters() throws Exception {
+        SingleFlight singleFlight = new SingleFlight();
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<Object> leader = CompletableFuture.supplyAsync(() -> singleFlight.execute("k", () -> {
+            loading.countDown();
+            await(release);
+            throw new AssertionError("boom");
+        }));
+        assertTrue(loading.await(1, TimeUnit.SECONDS));
+        CountDownLatch started = new CountDownLatch(1);
+        CompletableFuture<Object> waiter = CompletableFuture.supplyAsync(() -> {
+            started.countDown();
+            return singleFlight.execute("k", () -> "other");
+        });
+        assertTrue(started.await(1, TimeUnit.SECONDS));
+        // 等待线程确实在等待共享结果后，再让 loader 失败
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(1);
+        while (singleFlight.waiters("k") < 1) {
+            assertTrue(System.nanoTime() < deadline, "waiter did not join the in-flight call");
+            Thread.yield();
+        }
+        release.countDown();
+
+        ExecutionException leaderError = assertThrows(ExecutionException.class, () -> leader.get(1, TimeUnit.SECONDS));
+        assertTrue(leaderError.getCause() instanceof AssertionError);
+        ExecutionException waiterError = assertThrows(ExecutionException.class, () -> waiter.get(1, TimeUnit.SECONDS));
+        assertTrue(waiterError.getCause() instanceof AssertionError);
+
+        // 失败后不残留，下一次调用重新加载
+        assertEquals("next", singleFlight.execute("k", () -> "next"));
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(1, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package com.hmdp.utils.codec;
+
+import com.hmdp.config.CacheProperties;
+import com.hmdp.entity.Shop;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 缓存编码耗时对比：二进制编解码不应明显慢于JSON
+ * 默认不执行，通过 mvn test -Pbenchmark 单独执行
+ */
+@Tag("benchmark")
+class CacheCodecBenchmarkTest {
+
+    private static final int WARMUP = 20000;
+    private static final int ITERATIONS = 100000;
+
+    @Test
+    void binaryIsNotSlowerThanJson() {
+        Shop shop = CacheCodecTest.sampleShop();
+        long json = nanosPerOp(CacheCodecTest.registry(CacheProperties.CodecType.JSON), shop);
+        long binary = nanosPerOp(CacheCodecTest.registry(CacheProperties.CodecType.BINARY), shop);
+        assertTrue(binary <= json * 2, "binary=" + binary + "ns/op, json=" + json + "ns/op");
+    }
+
+    /**
+     * 一次编码加一次解码的平均耗时
+     */
+    private static long nanosPerOp(CacheCodecRegistry registry, Shop shop) {
+        for (int i = 0; i < WARMUP; i++) {
+            registry.decode(registry.encode(shop), Shop.class);
+        }
+        long begin = System.nanoTime();
+        Shop decoded = null;
+        for (int i = 0; i < ITERATIONS; i++) {
+            decoded = registry.decode(registry.encode(shop), Shop.class);
+        }
+        long nanos = System.nanoTime() - begin;
+        assertEquals(shop, decoded);
+        return nanos / ITERATIONS;
+    }
+}
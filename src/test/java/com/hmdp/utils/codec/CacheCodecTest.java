@@ -0,0 +1,112 @@
+package com.hmdp.utils.codec;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.hmdp.config.CacheProperties;
+import com.hmdp.entity.Shop;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 缓存编码：JSON 与 二进制 互相兼容、信封头部、响应格式
+ */
+class CacheCodecTest {
+
+    @Test
+    void jsonAndBinaryAreInterchangeable() {
+        Shop shop = sampleShop();
+        CacheCodecRegistry json = registry(CacheProperties.CodecType.JSON);
+        CacheCodecRegistry binary = registry(CacheProperties.CodecType.BINARY);
+
+        byte[] jsonBytes = json.encode(shop);
+        byte[] binaryBytes = binary.encode(shop);
+        // 两种格式都能被同一个注册中心读取（滚动发布期间新旧数据共存）
+        assertEquals(shop, binary.decode(jsonBytes, Shop.class));
+        assertEquals(shop, json.decode(binaryBytes, Shop.class));
+        assertTrue(binaryBytes.length < jsonBytes.length);
+    }
+
+    @Test
+    void legacyJsonIsReadable() {
+        Shop shop = sampleShop();
+        byte[] legacy = cn.hutool.json.JSONUtil.toJsonStr(shop).getBytes(StandardCharsets.UTF_8);
+        assertEquals(shop, registry(CacheProperties.CodecType.BINARY).decode(legacy, Shop.class));
+    }
+
+    @Test
+    void envelopeHeaderIsReadableWithoutPayload() {
+        Shop shop = sampleShop();
+        CacheCodecRegistry binary = registry(CacheProperties.CodecType.BINARY);
+        long expireAt = System.currentTimeMillis() + 20000;
+        CacheEnvelope envelope = CacheEnvelope.wrap(binary.encodeEnvelope(shop, expireAt, 35));
+        assertEquals(expireAt, envelope.getExpireAt());
+        assertEquals(35, envelope.getDelta());
+        assertEquals(BinaryCacheCodec.ID, envelope.getCodecId());
+        assertTrue(envelope.isExpired(expireAt));
+        assertEquals(shop, binary.decodePayload(envelope, Shop.class));
+    }
+
+    @Test
+    void responseJsonMatchesJackson() throws Exception {
+        Shop shop = sampleShop();
+        ObjectMapper mapper = new ObjectMapper().findAndRegisterModules();
+        CacheCodecRegistry registry = registry(CacheProperties.CodecType.BINARY);
+        String expected = mapper.writeValueAsString(shop);
+        // 响应格式的数据直接截取，其它格式转码后与 Jackson 输出一致
+        RawJson raw = registry.toResponseJson(registry.encodeForResponse(shop), Shop.class);
+        assertEquals(expected, toString(raw));
+        assertEquals(expected, toString(registry.toResponseJson(registry.encode(shop), Shop.class)));
+    }
+
+    @Test
+    void responseEnvelopeIsPassedThrough() throws Exception {
+        Shop shop = sampleShop();
+        CacheCodecRegistry registry = registry(CacheProperties.CodecType.BINARY);
+        String expected = new ObjectMapper().findAndRegisterModules().writeValueAsString(shop);
+        long expireAt = System.currentTimeMillis() + 20000;
+        // 响应格式的封装数据直接截取数据部分，其它格式转码，对象读取不受影响
+        byte[] response = registry.encodeEnvelopeForResponse(shop, expireAt, 0);
+        assertEquals(expected, toString(registry.toResponseJson(response, Shop.class)));
+        assertEquals(shop, registry.decode(response, Shop.class));
+        byte[] binary = registry.encodeEnvelope(shop, expireAt, 0);
+        assertEquals(expected, toString(registry.toResponseJson(binary, Shop.class)));
+    }
+
+    private static String toString(RawJson raw) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        raw.writeTo(out);
+        assertEquals(raw.length(), out.size());
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    static CacheCodecRegistry registry(CacheProperties.CodecType codecType) {
+        CacheProperties properties = new CacheProperties();
+        properties.setCodec(codecType);
+        return new CacheCodecRegistry(properties, new ObjectMapper().findAndRegisterModules());
+    }
+
+    static Shop sampleShop() {
+        return new Shop()
+                .setId(1L)
+                .setName("103茶餐厅")
+                .setTypeId(1L)
+                .setImages("https://qcloud.dpfile.com/pc/jiclIsCKmOI2arxKN1Uf0Hx3PucIJH8q0QSz-Z8llzcN56-_QiKuOvyio1OOxsRtFoXqu0G3iT2T27qat3WhLVEuLYk00OmSS1IdNpm8K8sG4JN9RIm2mTKcbLtc2o2vmIU_8ZGOT1OjpJmLxG6urQ.jpg")
+                .setArea("大关")
+                .setAddress("金华路锦昌文华苑29号")
+                .setX(120.149192)
+                .setY(30.316078)
+                .setAvgPrice(80L)
+                .setSold(4215)
+                .setComments(3035)
+                .setScore(37)
+                .setOpenHours("10:00-22:00")
+                .setCreateTime(LocalDateTime.of(2021, 12, 22, 18, 10, 39))
+                .setUpdateTime(LocalDateTime.of(2022, 1, 13, 17, 32, 19));
+    }
+}